@@ -1,13 +1,18 @@
 package com.socialnetwork;
 
-import com.socialnetwork.repository.database.MessageDBRepository;
+import com.socialnetwork.repository.database.ConnectionRouter;
+import com.socialnetwork.repository.database.SchemaMigrations;
 import com.socialnetwork.repository.factory.FriendshipRepositoryFactory;
+import com.socialnetwork.repository.factory.MessageRepositoryFactory;
 import com.socialnetwork.repository.factory.RepositoryStrategy;
 import com.socialnetwork.repository.factory.UserRepositoryFactory;
 import com.socialnetwork.service.NetworkService;
 import com.socialnetwork.domain.validators.UserValidator;
 import com.socialnetwork.view.CLI;
 
+import java.sql.SQLException;
+import java.util.List;
+
 public class Main {
     public static void main(String[] args) {
         String userFileName = "data/test/users_test.csv";
@@ -17,11 +22,21 @@ public class Main {
         String username = "postgres";
         String password = "postgres";
 
+        try {
+            SchemaMigrations.migrate(url, username, password);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+            System.exit(1);
+        }
+        // Reads go to the read replicas, if any, except right after a write.
+        List<String> replicaUrls = List.of();
+        ConnectionRouter.getInstance(url, username, password).setReplicaUrls(replicaUrls);
+
         NetworkService networkService = NetworkService.getInstance();
         networkService.initialize(UserRepositoryFactory.getInstance().createRepository(RepositoryStrategy.database, null, url, username, password),
                 new UserValidator(),
                 FriendshipRepositoryFactory.getInstance().createRepository(RepositoryStrategy.database, null, url, username, password),
-                new MessageDBRepository(url, username, password));
+                MessageRepositoryFactory.getInstance().createRepository(RepositoryStrategy.database, null, url, username, password));
 
         CLI cli = new CLI(networkService);
         cli.run();
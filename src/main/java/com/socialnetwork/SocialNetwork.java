@@ -2,9 +2,17 @@ package com.socialnetwork;
 
 import com.socialnetwork.controller.LogInController;
 import com.socialnetwork.domain.validators.UserValidator;
+import com.socialnetwork.exceptions.RepositoryException;
 import com.socialnetwork.repository.database.FriendshipDBRepository;
 import com.socialnetwork.repository.database.MessageDBRepository;
+import com.socialnetwork.repository.database.ChangeFeed;
+import com.socialnetwork.repository.database.ConnectionRouter;
+import com.socialnetwork.repository.database.SchemaMigrations;
 import com.socialnetwork.repository.database.UserDBRepository;
+import com.socialnetwork.repository.writebehind.FriendshipWriteBehindRepository;
+import com.socialnetwork.repository.writebehind.MessageWriteBehindRepository;
+import com.socialnetwork.repository.writebehind.WriteBehindOptions;
+import com.socialnetwork.repository.writebehind.WriteBehindRepository;
 import com.socialnetwork.service.NetworkService;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -12,9 +20,14 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
 
 public class SocialNetwork extends Application {
     private NetworkService networkService;
+    private ChangeFeed changeFeed;
+    private FriendshipWriteBehindRepository friendshipRepository;
+    private MessageWriteBehindRepository messageRepository;
 
     public static void main(String[] args) {
         launch(args);
@@ -28,16 +41,55 @@ public class SocialNetwork extends Application {
         String url = "jdbc:postgresql://localhost:5432/social-network";
         String username = "postgres";
         String password = "postgres";
+        try {
+            SchemaMigrations.migrate(url, username, password);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+            System.exit(1);
+        }
+        // Reads go to the read replicas, if any, except right after a write.
+        List<String> replicaUrls = List.of();
+        ConnectionRouter.getInstance(url, username, password).setReplicaUrls(replicaUrls);
+
+        friendshipRepository = new FriendshipWriteBehindRepository(new FriendshipDBRepository(url, username, password),
+                new WriteBehindOptions());
+        messageRepository = new MessageWriteBehindRepository(new MessageDBRepository(url, username, password),
+                new WriteBehindOptions());
         networkService = NetworkService.getInstance();
         networkService.initialize(new UserDBRepository(url, username, password),
-                new UserValidator(),
-               new FriendshipDBRepository(url, username, password),
-                new MessageDBRepository(url, username, password));
+                new UserValidator(), friendshipRepository, messageRepository);
+
+        // Changes made by other clients refresh the views they concern.
+        changeFeed = new ChangeFeed(url, username, password, networkService::notifyObservers);
+        changeFeed.start();
 
         initView(primaryStage);
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        close(friendshipRepository);
+        close(messageRepository);
+        if (changeFeed != null) {
+            changeFeed.close();
+        }
+    }
+
+    /**
+     * Applies the writes still queued in a repository before the application exits.
+     */
+    private void close(WriteBehindRepository<?, ?> repository) {
+        if (repository == null) {
+            return;
+        }
+        try {
+            repository.close();
+        } catch (RepositoryException exception) {
+            exception.printStackTrace();
+        }
+    }
+
     private void initView(Stage primaryStage) throws IOException {
         FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("views/login-view.fxml"));
         Scene scene = new Scene(fxmlLoader.load(), 420, 260);
@@ -3,7 +3,9 @@ package com.socialnetwork.controller;
 import com.socialnetwork.domain.User;
 import com.socialnetwork.exceptions.RepositoryException;
 import com.socialnetwork.service.NetworkService;
+import com.socialnetwork.utils.observer.Change;
 import com.socialnetwork.utils.observer.Observer;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -47,6 +49,13 @@ public class AddFriendController implements Observer {
         initModel();
     }
 
+    @Override
+    public void update(Change change) {
+        if (change.concernsUsers()) {
+            Platform.runLater(this::initModel);
+        }
+    }
+
     @FXML
     private void initModel() {
         List<User> userList = new ArrayList<>();
@@ -2,15 +2,22 @@ package com.socialnetwork.controller;
 
 import com.socialnetwork.domain.Message;
 import com.socialnetwork.service.NetworkService;
+import com.socialnetwork.utils.Constants;
+import com.socialnetwork.utils.observer.Change;
+import com.socialnetwork.utils.observer.Observer;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
 
-public class MessagesController {
+import java.util.List;
+
+public class MessagesController implements Observer {
     private NetworkService networkService;
     private String username;
     private ObservableList<Message> modelMessage = FXCollections.observableArrayList();
@@ -30,15 +37,46 @@ public class MessagesController {
     @FXML
     private Label labelText;
 
+    @FXML
+    private Button buttonLoadMore;
+
     public void setData(NetworkService networkService, String username) {
         this.networkService = networkService;
         this.username = username;
+        networkService.addObserver(this);
         initModel();
     }
 
+    @Override
+    public void update() {
+        initModel();
+    }
+
+    @Override
+    public void update(Change change) {
+        if (change.concernsMessagesOf(username)) {
+            Platform.runLater(this::initModel);
+        }
+    }
+
     @FXML
     private void initModel() {
-        modelMessage.setAll(networkService.getAllMessagesForSomeone(username));
+        // Only the most recent messages are loaded; older ones are loaded on demand.
+        modelMessage.clear();
+        loadNextPage();
+    }
+
+    private void loadNextPage() {
+        Message last = modelMessage.isEmpty() ? null : modelMessage.get(modelMessage.size() - 1);
+        List<Message> page = networkService.getInboxPage(username, last);
+        modelMessage.addAll(page);
+        // A short page means there is nothing older left.
+        buttonLoadMore.setDisable(page.size() < Constants.INBOX_PAGE_SIZE);
+    }
+
+    @FXML
+    protected void handleLoadMore() {
+        loadNextPage();
     }
 
     @FXML
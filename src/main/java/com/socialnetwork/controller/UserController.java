@@ -5,7 +5,9 @@ import com.socialnetwork.domain.User;
 import com.socialnetwork.domain.dto.FriendshipDto;
 import com.socialnetwork.exceptions.RepositoryException;
 import com.socialnetwork.service.NetworkService;
+import com.socialnetwork.utils.observer.Change;
 import com.socialnetwork.utils.observer.Observer;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -64,6 +66,13 @@ public class UserController implements Observer {
         initModel();
     }
 
+    @Override
+    public void update(Change change) {
+        if (change.concernsFriendshipsOf(user.getID())) {
+            Platform.runLater(this::initModel);
+        }
+    }
+
     @FXML
     private void initModel() {
         modelFriends.setAll(networkService.getFriendships(user));
@@ -163,6 +172,7 @@ public class UserController implements Observer {
 
             MessagesController messagesController = fxmlLoader.getController();
             messagesController.setData(networkService, user.getUsername());
+            stage.setOnHidden(event -> networkService.removeObserver(messagesController));
 
             stage.show();
         } catch (IOException exception) {
@@ -8,6 +8,9 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class UserValidator implements Validator<User> {
+    // Compiled once, since users are validated for every row loaded from a file or database.
+    private static final Pattern EMAIL_PATTERN = Pattern.compile("^.+@.+[.].+$");
+
     /**
      * Validates a User.
      * @param user - The User to be validated
@@ -29,10 +32,7 @@ public class UserValidator implements Validator<User> {
         } else if (user.getEmail().contains(",")) {
             message += "Not allowed character in email!\n";
         } else {
-            String regex = "^.+@.+[.].+$";
-            Pattern pattern = Pattern.compile(regex);
-
-            Matcher matcher = pattern.matcher(user.getEmail());
+            Matcher matcher = EMAIL_PATTERN.matcher(user.getEmail());
             if (!matcher.find()) {
                 message += "Invalid email!\n";
             }
@@ -0,0 +1,59 @@
+package com.socialnetwork.repository;
+
+import com.socialnetwork.domain.Friendship;
+import com.socialnetwork.domain.FriendshipStatus;
+import com.socialnetwork.domain.User;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public interface FriendshipRepository extends Repository<Friendship, Set<User>> {
+    /**
+     * Gets the friendships and friend requests a user is part of.
+     * @param user - The user
+     * @return the friendships, whatever their status.
+     */
+    List<Friendship> getAllOf(User user);
+
+    /**
+     * Gets the accepted friendships of a user.
+     * @param user - The user
+     * @return the friendships.
+     */
+    default List<Friendship> getFriendshipsOf(User user) {
+        return getAllOf(user).stream()
+                .filter(friendship -> friendship.getStatus().equals(FriendshipStatus.accepted))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the pending friend requests sent to a user.
+     * @param user - The user
+     * @return the friend requests.
+     */
+    default List<Friendship> getRequestsTo(User user) {
+        return getAllOf(user).stream()
+                .filter(friendship -> friendship.getStatus().equals(FriendshipStatus.sent) && friendship.getU2().equals(user))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the pending friend requests sent by a user.
+     * @param user - The user
+     * @return the friend requests.
+     */
+    default List<Friendship> getRequestsSentBy(User user) {
+        return getAllOf(user).stream()
+                .filter(friendship -> friendship.getStatus().equals(FriendshipStatus.sent) && friendship.getU1().equals(user))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Checks whether two users are friends or one of them has sent a friend request to the other.
+     * @param u1 - The first user
+     * @param u2 - The second user
+     * @return true if there is a friendship between the two users, false otherwise.
+     */
+    boolean exists(User u1, User u2);
+}
@@ -0,0 +1,28 @@
+package com.socialnetwork.repository;
+
+import com.socialnetwork.domain.Message;
+import com.socialnetwork.exceptions.RepositoryException;
+
+import java.util.List;
+
+public interface MessageRepository extends Repository<Message, Long> {
+    /**
+     * Gets the messages received by a user.
+     * @param receiver - The username of the receiver
+     * @return the messages, in the order in which they were sent.
+     * @throws RepositoryException if the messages could not be read.
+     */
+    List<Message> getAllForSomeone(String receiver) throws RepositoryException;
+
+    /**
+     * Gets a page of the messages received by a user, the most recent first.
+     * Pages are keyed on (sentAt, ID): a page starts right after the last message of the previous one,
+     * so getting a page does not depend on how many messages come before it.
+     * @param receiver - The username of the receiver
+     * @param after - The last message of the previous page, or null for the first page
+     * @param pageSize - The maximum number of messages in the page
+     * @return the messages, from the most recently sent to the least recently sent.
+     * @throws RepositoryException if the messages could not be read.
+     */
+    List<Message> getInboxPage(String receiver, Message after, int pageSize) throws RepositoryException;
+}
@@ -3,7 +3,10 @@ package com.socialnetwork.repository;
 import com.socialnetwork.domain.Entity;
 import com.socialnetwork.exceptions.RepositoryException;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public interface Repository<E extends Entity<ID>, ID> {
     /**
@@ -18,6 +21,27 @@ public interface Repository<E extends Entity<ID>, ID> {
      */
     List<E> getAll();
 
+    /**
+     * Gets all the entities in the repository lazily, without loading them all into memory
+     * where the storage allows it. The stream must be closed after use.
+     * @return a stream of all the entities.
+     */
+    default Stream<E> stream() {
+        return getAll().stream();
+    }
+
+    /**
+     * Gets a page of the entities in the repository.
+     * @param offset - The number of entities to skip
+     * @param limit - The maximum number of entities in the page
+     * @return at most limit entities, starting from the given offset.
+     */
+    default List<E> page(int offset, int limit) {
+        try (Stream<E> entities = stream()) {
+            return entities.skip(offset).limit(limit).collect(Collectors.toList());
+        }
+    }
+
     /**
      * Adds an entity to the repository.
      * @param entity - The entitity to be added
@@ -32,6 +56,48 @@ public interface Repository<E extends Entity<ID>, ID> {
      */
     void remove(E entity) throws RepositoryException;
 
+    /**
+     * Adds several entities to the repository at once.
+     * @param entities - The entities to be added
+     * @throws RepositoryException if one of the entities has already been added.
+     */
+    default void addAll(Collection<E> entities) throws RepositoryException {
+        for (E entity : entities) {
+            add(entity);
+        }
+    }
+
+    /**
+     * Removes several entities from the repository at once.
+     * @param entities - The entities to be removed
+     * @throws RepositoryException if one of the entities has not yet been added.
+     */
+    default void removeAll(Collection<E> entities) throws RepositoryException {
+        for (E entity : entities) {
+            remove(entity);
+        }
+    }
+
+    /**
+     * Updates several entities in the repository at once.
+     * @param entities - The entities to be updated
+     * @throws RepositoryException if one of the entities has not yet been added.
+     */
+    default void updateAll(Collection<E> entities) throws RepositoryException {
+        for (E entity : entities) {
+            update(entity);
+        }
+    }
+
+    /**
+     * Tells whether addAll, removeAll and updateAll are all-or-nothing: if one of them fails, none of its
+     * entities has been written. The default bulk methods write one entity at a time, so they are not.
+     * @return true if the bulk writes are atomic.
+     */
+    default boolean hasAtomicBulkWrites() {
+        return false;
+    }
+
     /**
      * Finds an entity in the repository by its ID.
      * @param id - The ID by which to find the entity
@@ -0,0 +1,32 @@
+package com.socialnetwork.repository;
+
+import com.socialnetwork.domain.User;
+import com.socialnetwork.exceptions.RepositoryException;
+
+public interface UserRepository extends Repository<User, Long> {
+    /**
+     * Finds a user by its ID, given as a primitive.
+     * @param id - The ID of the user
+     * @return the user with the given ID.
+     * @throws RepositoryException if there is no user with the given ID.
+     */
+    default User find(long id) throws RepositoryException {
+        return find(Long.valueOf(id));
+    }
+
+    /**
+     * Finds a user by its username.
+     * @param username - The username
+     * @return the user with the given username.
+     * @throws RepositoryException if there is no user with the given username.
+     */
+    User findByUsername(String username) throws RepositoryException;
+
+    /**
+     * Finds a user by its email.
+     * @param email - The email
+     * @return the user with the given email.
+     * @throws RepositoryException if there is no user with the given email.
+     */
+    User findByEmail(String email) throws RepositoryException;
+}
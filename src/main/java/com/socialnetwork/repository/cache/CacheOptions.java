@@ -0,0 +1,34 @@
+package com.socialnetwork.repository.cache;
+
+public class CacheOptions {
+    private EvictionPolicy evictionPolicy = EvictionPolicy.lru;
+    // The maximum number of entities, and separately of query results, kept in the cache.
+    private int maximumSize = 1000;
+    // How long a cached value is used before it is read again from the repository; 0 keeps values until evicted.
+    // Only changes made through the cache invalidate it, so this bounds how stale values changed by others can be.
+    private long timeToLiveMillis = 30_000;
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    public void setTimeToLiveMillis(long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+}
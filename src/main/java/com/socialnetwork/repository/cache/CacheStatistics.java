@@ -0,0 +1,17 @@
+package com.socialnetwork.repository.cache;
+
+/**
+ * A snapshot of the counters of a caching repository.
+ * @param hits - The number of reads answered from the cache
+ * @param misses - The number of reads that went to the repository
+ * @param evictions - The number of values dropped because the cache was full
+ * @param expirations - The number of values dropped because they were too old
+ * @param invalidations - The number of writes that invalidated cached values
+ * @param size - The number of values in the cache
+ */
+public record CacheStatistics(long hits, long misses, long evictions, long expirations, long invalidations, int size) {
+    public double hitRate() {
+        long reads = hits + misses;
+        return reads == 0 ? 0 : (double) hits / reads;
+    }
+}
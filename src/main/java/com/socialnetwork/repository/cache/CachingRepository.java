@@ -0,0 +1,225 @@
+package com.socialnetwork.repository.cache;
+
+import com.socialnetwork.domain.Entity;
+import com.socialnetwork.exceptions.RepositoryException;
+import com.socialnetwork.repository.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache in front of any repository. Entities found by ID are cached by ID; the results of
+ * queries (getAll, size, and the queries of subclasses) are cached by a key naming the query.
+ * Writes go straight to the repository and then invalidate what they may have changed: the entity written
+ * and every query result. Changes made to the repository by others are seen once the cached values expire.
+ */
+public class CachingRepository<E extends Entity<ID>, ID> implements Repository<E, ID> {
+    /**
+     * Reads a value from the repository on a cache miss.
+     * @param <T> - The type of the value
+     */
+    protected interface Loader<T> {
+        T load() throws RepositoryException;
+    }
+
+    private static final String ALL = "getAll";
+    private static final String SIZE = "size";
+
+    private final Repository<E, ID> repository;
+    // A value read before a write is not cached after it: each cache refuses values read before its last invalidation.
+    private final ExpiringCache<ID, E> entities;
+    private final ExpiringCache<String, Object> queries;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Puts a cache in front of a repository.
+     * @param repository - The cached repository
+     * @param options - The size, time to live and eviction policy of the cache
+     */
+    public CachingRepository(Repository<E, ID> repository, CacheOptions options) {
+        this.repository = repository;
+        this.entities = new ExpiringCache<>(options);
+        this.queries = new ExpiringCache<>(options);
+    }
+
+    /**
+     * Gets the result of a query from the cache, or runs it and caches the result.
+     * @param key - Names the query and its parameters
+     * @param loader - Runs the query on the repository
+     * @return the result of the query.
+     * @throws RepositoryException if the query failed; failures are not cached.
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> T query(String key, Loader<T> loader) throws RepositoryException {
+        T value = (T) queries.get(key);
+        if (value == null) {
+            long seen = queries.getGeneration();
+            value = loader.load();
+            if (value != null) {
+                queries.putIfValid(key, value, seen);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Like query(), for queries that cannot fail.
+     */
+    protected <T> T safeQuery(String key, Loader<T> loader) {
+        try {
+            return query(key, loader);
+        } catch (RepositoryException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Invalidates the cached version of a written entity and all the query results.
+     * @param entity - The written entity
+     */
+    private void invalidate(E entity) {
+        invalidations.incrementAndGet();
+        entities.invalidate(entity.getID());
+        queries.invalidateAll();
+    }
+
+    private void invalidate(Collection<E> written) {
+        invalidations.incrementAndGet();
+        written.forEach(entity -> entities.invalidate(entity.getID()));
+        queries.invalidateAll();
+    }
+
+    /**
+     * Gets the cached repository.
+     * @return the repository.
+     */
+    protected Repository<E, ID> getRepository() {
+        return repository;
+    }
+
+    /**
+     * Gets the counters of the cache, added up over the cached entities and query results.
+     * @return the statistics.
+     */
+    public CacheStatistics getStatistics() {
+        CacheStatistics byID = entities.getStatistics();
+        CacheStatistics byQuery = queries.getStatistics();
+        return new CacheStatistics(byID.hits() + byQuery.hits(), byID.misses() + byQuery.misses(),
+                byID.evictions() + byQuery.evictions(), byID.expirations() + byQuery.expirations(),
+                invalidations.get(), byID.size() + byQuery.size());
+    }
+
+    /**
+     * Empties the cache, e.g. after the repository was changed by someone else.
+     */
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        entities.invalidateAll();
+        queries.invalidateAll();
+    }
+
+    @Override
+    public int size() {
+        return safeQuery(SIZE, repository::size);
+    }
+
+    /**
+     * Gets all the entities, from a cached snapshot if there is one.
+     * @return a copy of the snapshot, which the caller may change.
+     */
+    @Override
+    public List<E> getAll() {
+        return new ArrayList<>(safeQuery(ALL, repository::getAll));
+    }
+
+    /**
+     * Streams the cached snapshot if there is one, and the repository otherwise, without caching it.
+     * @return a stream of the entities, which must be closed after use.
+     */
+    @Override
+    public Stream<E> stream() {
+        @SuppressWarnings("unchecked")
+        List<E> snapshot = (List<E>) queries.get(ALL);
+        return snapshot != null ? snapshot.stream() : repository.stream();
+    }
+
+    @Override
+    public List<E> page(int offset, int limit) {
+        return repository.page(offset, limit);
+    }
+
+    @Override
+    public E find(ID id) throws RepositoryException {
+        E entity = entities.get(id);
+        if (entity == null) {
+            long seen = entities.getGeneration();
+            entity = repository.find(id);
+            if (entity != null) {
+                entities.putIfValid(id, entity, seen);
+            }
+        }
+        return entity;
+    }
+
+    @Override
+    public void add(E entity) throws RepositoryException {
+        try {
+            repository.add(entity);
+        } finally {
+            invalidate(entity);
+        }
+    }
+
+    @Override
+    public void remove(E entity) throws RepositoryException {
+        try {
+            repository.remove(entity);
+        } finally {
+            invalidate(entity);
+        }
+    }
+
+    @Override
+    public void update(E entity) throws RepositoryException {
+        try {
+            repository.update(entity);
+        } finally {
+            invalidate(entity);
+        }
+    }
+
+    @Override
+    public boolean hasAtomicBulkWrites() {
+        return repository.hasAtomicBulkWrites();
+    }
+
+    @Override
+    public void addAll(Collection<E> entities) throws RepositoryException {
+        try {
+            repository.addAll(entities);
+        } finally {
+            invalidate(entities);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<E> entities) throws RepositoryException {
+        try {
+            repository.removeAll(entities);
+        } finally {
+            invalidate(entities);
+        }
+    }
+
+    @Override
+    public void updateAll(Collection<E> entities) throws RepositoryException {
+        try {
+            repository.updateAll(entities);
+        } finally {
+            invalidate(entities);
+        }
+    }
+}
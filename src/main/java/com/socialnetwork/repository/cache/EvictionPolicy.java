@@ -0,0 +1,8 @@
+package com.socialnetwork.repository.cache;
+
+public enum EvictionPolicy {
+    // When the cache is full, drop the entry that was used least recently.
+    lru,
+    // When the cache is full, drop the entry that was cached first, however often it is used.
+    fifo
+}
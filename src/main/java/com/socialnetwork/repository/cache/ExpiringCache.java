@@ -0,0 +1,103 @@
+package com.socialnetwork.repository.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded map whose entries expire some time after they were put.
+ * When it is full, the eldest entry is dropped: the least recently used one, or the first one put.
+ * Every invalidation starts a new generation, so that a value read before it can be refused afterwards.
+ */
+class ExpiringCache<K, V> {
+    private record Entry<V>(V value, long expiresAt) {}
+
+    private final long timeToLiveNanos;
+    private final Map<K, Entry<V>> entries;
+    private long generation = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long expirations = 0;
+
+    /**
+     * Creates a cache.
+     * @param options - The size, time to live and eviction policy of the cache
+     */
+    ExpiringCache(CacheOptions options) {
+        int maximumSize = options.getMaximumSize();
+        this.timeToLiveNanos = options.getTimeToLiveMillis() * 1_000_000;
+        boolean accessOrder = options.getEvictionPolicy().equals(EvictionPolicy.lru);
+        this.entries = new LinkedHashMap<>(16, 0.75f, accessOrder) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() <= maximumSize) {
+                    return false;
+                }
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets a cached value.
+     * @param key - The key
+     * @return the value, or null if it is not cached or has expired.
+     */
+    synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (timeToLiveNanos > 0 && System.nanoTime() - entry.expiresAt() > 0) {
+            entries.remove(key);
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value();
+    }
+
+    /**
+     * Gets the current generation, to be passed to putIfValid() with a value read afterwards.
+     * @return the generation.
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches a value, unless the cache was invalidated since it was read.
+     * @param key - The key
+     * @param value - The value
+     * @param readGeneration - The generation before the value was read
+     * @return true if the value was cached.
+     */
+    synchronized boolean putIfValid(K key, V value, long readGeneration) {
+        if (generation != readGeneration) {
+            return false;
+        }
+        entries.put(key, new Entry<>(value, System.nanoTime() + timeToLiveNanos));
+        return true;
+    }
+
+    synchronized void invalidate(K key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    /**
+     * Gets the counters of the cache.
+     * @return the statistics, with no invalidations, which are counted by the repository.
+     */
+    synchronized CacheStatistics getStatistics() {
+        return new CacheStatistics(hits, misses, evictions, expirations, 0, entries.size());
+    }
+}
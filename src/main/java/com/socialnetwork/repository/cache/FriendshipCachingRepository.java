@@ -0,0 +1,49 @@
+package com.socialnetwork.repository.cache;
+
+import com.socialnetwork.domain.Friendship;
+import com.socialnetwork.domain.User;
+import com.socialnetwork.repository.FriendshipRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Caches the per-user friendship queries too, so that refreshing a user's page does not reread
+ * the same friendships and requests.
+ */
+public class FriendshipCachingRepository extends CachingRepository<Friendship, Set<User>> implements FriendshipRepository {
+    private final FriendshipRepository repository;
+
+    public FriendshipCachingRepository(FriendshipRepository repository, CacheOptions options) {
+        super(repository, options);
+        this.repository = repository;
+    }
+
+    @Override
+    public List<Friendship> getAllOf(User user) {
+        return new ArrayList<>(safeQuery("getAllOf:" + user.getID(), () -> repository.getAllOf(user)));
+    }
+
+    @Override
+    public List<Friendship> getFriendshipsOf(User user) {
+        return new ArrayList<>(safeQuery("getFriendshipsOf:" + user.getID(), () -> repository.getFriendshipsOf(user)));
+    }
+
+    @Override
+    public List<Friendship> getRequestsTo(User user) {
+        return new ArrayList<>(safeQuery("getRequestsTo:" + user.getID(), () -> repository.getRequestsTo(user)));
+    }
+
+    @Override
+    public List<Friendship> getRequestsSentBy(User user) {
+        return new ArrayList<>(safeQuery("getRequestsSentBy:" + user.getID(), () -> repository.getRequestsSentBy(user)));
+    }
+
+    @Override
+    public boolean exists(User u1, User u2) {
+        long id1 = Math.min(u1.getID(), u2.getID());
+        long id2 = Math.max(u1.getID(), u2.getID());
+        return safeQuery("exists:" + id1 + "," + id2, () -> repository.exists(u1, u2));
+    }
+}
@@ -0,0 +1,24 @@
+package com.socialnetwork.repository.cache;
+
+import com.socialnetwork.domain.User;
+import com.socialnetwork.exceptions.RepositoryException;
+import com.socialnetwork.repository.UserRepository;
+
+public class UserCachingRepository extends CachingRepository<User, Long> implements UserRepository {
+    private final UserRepository repository;
+
+    public UserCachingRepository(UserRepository repository, CacheOptions options) {
+        super(repository, options);
+        this.repository = repository;
+    }
+
+    @Override
+    public User findByUsername(String username) throws RepositoryException {
+        return query("findByUsername:" + username, () -> repository.findByUsername(username));
+    }
+
+    @Override
+    public User findByEmail(String email) throws RepositoryException {
+        return query("findByEmail:" + email, () -> repository.findByEmail(email));
+    }
+}
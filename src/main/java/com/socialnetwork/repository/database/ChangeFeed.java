@@ -0,0 +1,170 @@
+package com.socialnetwork.repository.database;
+
+import com.socialnetwork.utils.Constants;
+import com.socialnetwork.utils.observer.Change;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Listens to the changes announced by the triggers of the database and passes them on as Changes,
+ * whichever client made them. Listening needs a connection of its own, to the primary database,
+ * since notifications are not replicated. Changes made while the connection was lost are unknown,
+ * so after reconnecting the feed announces that anything may have changed; it does the same
+ * for a burst of changes too large to be worth refreshing one by one.
+ */
+public class ChangeFeed implements AutoCloseable {
+    private static final String CHANNEL = "social_network_changes";
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final Consumer<Change> listener;
+    private final Thread listenerThread;
+    private volatile boolean running = false;
+    private Connection connection;
+
+    /**
+     * Creates a feed, which starts listening once started.
+     * @param url - The URL of the primary database
+     * @param username - The username of the database
+     * @param password - The password of the database
+     * @param listener - Receives the changes, on the thread of the feed
+     */
+    public ChangeFeed(String url, String username, String password, Consumer<Change> listener) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.listener = listener;
+        this.listenerThread = new Thread(this::listen, "change-feed");
+        this.listenerThread.setDaemon(true);
+    }
+
+    /**
+     * Starts listening to the changes.
+     */
+    public void start() {
+        running = true;
+        listenerThread.start();
+    }
+
+    private void listen() {
+        boolean connectedBefore = false;
+        while (running) {
+            try {
+                if (connection == null) {
+                    connect();
+                    if (connectedBefore) {
+                        listener.accept(Change.ofAll());
+                    }
+                    connectedBefore = true;
+                }
+                PGNotification[] notifications = connection.unwrap(PGConnection.class)
+                        .getNotifications(Constants.CHANGE_FEED_POLL_MILLIS);
+                if (notifications != null && notifications.length > 0) {
+                    dispatch(notifications);
+                }
+            } catch (SQLException exception) {
+                if (!running) {
+                    break;
+                }
+                exception.printStackTrace();
+                disconnect();
+                try {
+                    Thread.sleep(Constants.CHANGE_FEED_RECONNECT_MILLIS);
+                } catch (InterruptedException interruptedException) {
+                    break;
+                }
+            }
+        }
+        disconnect();
+    }
+
+    private void connect() throws SQLException {
+        connection = DriverManager.getConnection(url, username, password);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LISTEN " + CHANNEL);
+        }
+    }
+
+    private void disconnect() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        connection = null;
+    }
+
+    /**
+     * Passes on the changes of a batch of notifications, each distinct change once.
+     */
+    private void dispatch(PGNotification[] notifications) {
+        Set<Change> changes = new LinkedHashSet<>();
+        for (PGNotification notification : notifications) {
+            Change change = parse(notification.getParameter());
+            if (change != null) {
+                changes.add(change);
+            }
+        }
+        if (changes.size() > Constants.CHANGE_FEED_MAXIMUM_CHANGES) {
+            listener.accept(Change.ofAll());
+            return;
+        }
+        changes.forEach(listener);
+    }
+
+    /**
+     * Parses the payload of a notification, as sent by the notify_change() trigger function.
+     * @param payload - The payload
+     * @return the change, or null if the payload is not understood.
+     */
+    static Change parse(String payload) {
+        String[] fields = payload.split(",", 2);
+        if (fields.length != 2) {
+            return null;
+        }
+        try {
+            switch (fields[0]) {
+                case "users" -> {
+                    return Change.ofUser(Long.parseLong(fields[1]));
+                }
+                case "friendships" -> {
+                    String[] ids = fields[1].split(",");
+                    return ids.length == 2 ? Change.ofFriendship(Long.parseLong(ids[0]), Long.parseLong(ids[1])) : null;
+                }
+                case "messages" -> {
+                    return Change.ofMessage(fields[1]);
+                }
+                default -> {
+                    return null;
+                }
+            }
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Stops listening and waits for the feed to close its connection.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            listenerThread.join(Constants.CHANGE_FEED_POLL_MILLIS * 4L);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.socialnetwork.repository.database;
+
+import com.socialnetwork.utils.Constants;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of JDBC connections to one database, shared by all the repositories that use it.
+ * The connections it hands out are returned to the pool, instead of being closed, when close() is called on them,
+ * so they can be used with try-with-resources exactly like connections from DriverManager.
+ */
+public class ConnectionPool {
+    /**
+     * A snapshot of the state and counters of a pool.
+     * @param active - The number of connections in use
+     * @param idle - The number of open connections waiting in the pool
+     * @param maximumSize - The maximum number of connections
+     * @param acquired - The number of connections handed out so far
+     * @param created - The number of physical connections opened so far
+     * @param discarded - The number of connections closed because they were broken
+     * @param timeouts - The number of requests that timed out waiting for a connection
+     * @param totalWaitNanos - The total time spent waiting for a connection
+     * @param maximumWaitNanos - The longest time spent waiting for a connection
+     * @param statementCacheHits - The number of prepared statements reused from a connection's cache
+     * @param statementCacheMisses - The number of prepared statements that had to be prepared
+     */
+    public record Metrics(int active, int idle, int maximumSize, long acquired, long created, long discarded,
+                          long timeouts, long totalWaitNanos, long maximumWaitNanos,
+                          long statementCacheHits, long statementCacheMisses) {
+        public double averageWaitMillis() {
+            return acquired == 0 ? 0 : totalWaitNanos / 1e6 / acquired;
+        }
+    }
+
+    /**
+     * A physical connection and the prepared statements cached on it.
+     */
+    private record PhysicalConnection(Connection connection, StatementCache statements) {}
+
+    /**
+     * An open connection waiting in the pool.
+     */
+    private record IdleConnection(PhysicalConnection connection, long idleSince) {}
+
+    // Idle connections older than this are checked with isValid() before being handed out.
+    private static final long VALIDATION_IDLE_MILLIS = 5000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private static final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maximumSize;
+    private final long timeoutMillis;
+    private final long validationIdleNanos;
+    // One permit per connection that may be handed out.
+    private final Semaphore permits;
+    // Most recently used first, so that the warmest connections are reused.
+    private final Deque<IdleConnection> idleConnections;
+    private volatile boolean closed = false;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maximumWaitNanos = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    /**
+     * Creates a pool.
+     * @param url - The URL of the database
+     * @param username - The username of the database
+     * @param password - The password of the database
+     * @param maximumSize - The maximum number of connections open at the same time
+     * @param timeoutMillis - How long to wait for a connection when all of them are in use
+     */
+    public ConnectionPool(String url, String username, String password, int maximumSize, long timeoutMillis) {
+        this(url, username, password, maximumSize, timeoutMillis, VALIDATION_IDLE_MILLIS);
+    }
+
+    /**
+     * Creates a pool that checks the connections idle for longer than the given time before handing them out.
+     * @param url - The URL of the database
+     * @param username - The username of the database
+     * @param password - The password of the database
+     * @param maximumSize - The maximum number of connections open at the same time
+     * @param timeoutMillis - How long to wait for a connection when all of them are in use
+     * @param validationIdleMillis - How long a connection may stay idle without being checked
+     */
+    ConnectionPool(String url, String username, String password, int maximumSize, long timeoutMillis, long validationIdleMillis) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maximumSize = maximumSize;
+        this.timeoutMillis = timeoutMillis;
+        this.validationIdleNanos = TimeUnit.MILLISECONDS.toNanos(validationIdleMillis);
+        this.permits = new Semaphore(maximumSize, true);
+        this.idleConnections = new ArrayDeque<>();
+    }
+
+    /**
+     * Gets the pool shared by all the repositories of a database and user, creating it the first time.
+     * @param url - The URL of the database
+     * @param username - The username of the database
+     * @param password - The password of the database
+     * @return the pool.
+     */
+    public static ConnectionPool getInstance(String url, String username, String password) {
+        return pools.computeIfAbsent(url + "|" + username, key -> new ConnectionPool(url, username, password,
+                Constants.DATABASE_POOL_SIZE, Constants.DATABASE_POOL_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * Gets a connection from the pool, opening one if none is idle, or waiting if all of them are in use.
+     * Closing the connection returns it to the pool.
+     * @return the connection.
+     * @throws SQLTimeoutException if no connection became free in time.
+     * @throws SQLException if the pool is closed or a new connection could not be opened.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLTimeoutException("No database connection became free in " + timeoutMillis + " ms");
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", exception);
+        }
+        long wait = System.nanoTime() - start;
+        totalWaitNanos.addAndGet(wait);
+        maximumWaitNanos.accumulateAndGet(wait, Math::max);
+
+        try {
+            // The pool may have been closed while waiting.
+            if (closed) {
+                throw new SQLException("Connection pool is closed");
+            }
+            PhysicalConnection connection = takeIdleConnection();
+            if (connection == null) {
+                Connection opened = DriverManager.getConnection(url, username, password);
+                connection = new PhysicalConnection(opened, new StatementCache(opened,
+                        Constants.DATABASE_STATEMENT_CACHE_SIZE, statementCacheHits, statementCacheMisses));
+                created.incrementAndGet();
+            }
+            active.incrementAndGet();
+            acquired.incrementAndGet();
+            return wrap(connection);
+        } catch (SQLException | RuntimeException exception) {
+            permits.release();
+            throw exception;
+        }
+    }
+
+    /**
+     * Takes the most recently used idle connection that still works.
+     * @return the connection, or null if there is none.
+     */
+    private PhysicalConnection takeIdleConnection() {
+        while (true) {
+            IdleConnection idle;
+            synchronized (idleConnections) {
+                idle = idleConnections.pollFirst();
+            }
+            if (idle == null) {
+                return null;
+            }
+            if (System.nanoTime() - idle.idleSince() < validationIdleNanos || isValid(idle.connection().connection())) {
+                return idle.connection();
+            }
+            discard(idle.connection());
+        }
+    }
+
+    private static boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException exception) {
+            return false;
+        }
+    }
+
+    private void discard(PhysicalConnection connection) {
+        discarded.incrementAndGet();
+        try {
+            connection.statements().close();
+            connection.connection().close();
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Puts a connection back in the pool, undoing what its last user left behind.
+     * @param pooled - The physical connection
+     */
+    private void release(PhysicalConnection pooled) {
+        active.decrementAndGet();
+        Connection connection = pooled.connection();
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.clearWarnings();
+            if (closed) {
+                pooled.statements().close();
+                connection.close();
+                return;
+            }
+            synchronized (idleConnections) {
+                idleConnections.addFirst(new IdleConnection(pooled, System.nanoTime()));
+            }
+        } catch (SQLException exception) {
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Wraps a physical connection so that closing it returns it to the pool,
+     * and so that prepareStatement(sql) goes through its statement cache.
+     */
+    private Connection wrap(PhysicalConnection pooled) {
+        Connection connection = pooled.connection();
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean closed = false;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
+                switch (method.getName()) {
+                    case "close" -> {
+                        if (!closed) {
+                            closed = true;
+                            release(pooled);
+                        }
+                        return null;
+                    }
+                    case "isClosed" -> {
+                        return closed || connection.isClosed();
+                    }
+                    case "equals" -> {
+                        return proxy == arguments[0];
+                    }
+                    case "hashCode" -> {
+                        return System.identityHashCode(proxy);
+                    }
+                    case "toString" -> {
+                        return "Pooled " + connection;
+                    }
+                }
+                if (closed) {
+                    throw new SQLException("Connection is closed");
+                }
+                if (method.getName().equals("prepareStatement") && arguments.length == 1) {
+                    return pooled.statements().prepare((String) arguments[0], (Connection) proxy);
+                }
+                try {
+                    return method.invoke(connection, arguments);
+                } catch (InvocationTargetException exception) {
+                    throw exception.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    /**
+     * Gets the current state and counters of the pool.
+     * @return the metrics.
+     */
+    public Metrics getMetrics() {
+        int idle;
+        synchronized (idleConnections) {
+            idle = idleConnections.size();
+        }
+        return new Metrics(active.get(), idle, maximumSize, acquired.get(), created.get(), discarded.get(),
+                timeouts.get(), totalWaitNanos.get(), maximumWaitNanos.get(),
+                statementCacheHits.get(), statementCacheMisses.get());
+    }
+
+    /**
+     * Closes the idle connections. Connections in use are closed when they are returned,
+     * and no more connections are handed out.
+     */
+    public void close() {
+        closed = true;
+        synchronized (idleConnections) {
+            for (IdleConnection idle : idleConnections) {
+                try {
+                    idle.connection().statements().close();
+                    idle.connection().connection().close();
+                } catch (SQLException exception) {
+                    exception.printStackTrace();
+                }
+            }
+            idleConnections.clear();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.socialnetwork.repository.database;
+
+import com.socialnetwork.utils.Constants;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes the connections of the database repositories: writes go to the primary database, reads go to its
+ * read replicas, in turn, if any are configured. Replicas lag behind the primary, so after a write the reads stay
+ * on the primary for a while, and this session reads its own writes. The router is shared by all the repositories
+ * of a database, so the session is this application. A replica that cannot be reached is skipped, and the read
+ * goes to the next replica, or to the primary.
+ */
+public class ConnectionRouter {
+    /**
+     * A snapshot of the counters of a router.
+     * @param primaryReads - The number of reads sent to the primary
+     * @param replicaReads - The number of reads sent to a replica
+     * @param stickyReads - The number of the primary reads that were kept there after a write
+     * @param replicaFailures - The number of times a replica could not be reached
+     * @param writes - The number of write connections handed out
+     */
+    public record Metrics(long primaryReads, long replicaReads, long stickyReads, long replicaFailures, long writes) {}
+
+    private static final Map<String, ConnectionRouter> routers = new ConcurrentHashMap<>();
+
+    private final ConnectionPool primary;
+    private final String username;
+    private final String password;
+    private final long stickinessNanos;
+    private volatile List<ConnectionPool> replicas = List.of();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    // The writes in progress, and when the last one ended; reads stay on the primary while either is recent.
+    private final AtomicInteger writesInProgress = new AtomicInteger();
+    private volatile long lastWriteNanos;
+    private volatile boolean written = false;
+
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong stickyReads = new AtomicLong();
+    private final AtomicLong replicaFailures = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    /**
+     * Creates a router with no replicas.
+     * @param primary - The pool of the primary database
+     * @param username - The username of the replicas
+     * @param password - The password of the replicas
+     * @param stickinessMillis - How long the reads stay on the primary after a write
+     */
+    public ConnectionRouter(ConnectionPool primary, String username, String password, long stickinessMillis) {
+        this.primary = primary;
+        this.username = username;
+        this.password = password;
+        this.stickinessNanos = TimeUnit.MILLISECONDS.toNanos(stickinessMillis);
+    }
+
+    /**
+     * Gets the router shared by all the repositories of a database and user, creating it the first time.
+     * @param url - The URL of the primary database
+     * @param username - The username of the database
+     * @param password - The password of the database
+     * @return the router.
+     */
+    public static ConnectionRouter getInstance(String url, String username, String password) {
+        return routers.computeIfAbsent(url + "|" + username, key -> new ConnectionRouter(
+                ConnectionPool.getInstance(url, username, password), username, password,
+                Constants.DATABASE_REPLICA_STICKINESS_MILLIS));
+    }
+
+    /**
+     * Sets the read replicas of the primary database. Each replica gets its own pool.
+     * @param replicaUrls - The URLs of the replicas; none to read from the primary only
+     */
+    public void setReplicaUrls(List<String> replicaUrls) {
+        List<ConnectionPool> pools = new ArrayList<>();
+        for (String replicaUrl : replicaUrls) {
+            pools.add(ConnectionPool.getInstance(replicaUrl, username, password));
+        }
+        replicas = List.copyOf(pools);
+    }
+
+    /**
+     * Gets a connection for a query: from a replica, unless there are none or this session wrote recently.
+     * The connection must not be used to write.
+     * @return the connection.
+     * @throws SQLException if no database could be reached.
+     */
+    public Connection getReadConnection() throws SQLException {
+        List<ConnectionPool> pools = replicas;
+        if (pools.isEmpty()) {
+            primaryReads.incrementAndGet();
+            return primary.getConnection();
+        }
+        if (isSticky()) {
+            primaryReads.incrementAndGet();
+            stickyReads.incrementAndGet();
+            return primary.getConnection();
+        }
+        int first = Math.floorMod(nextReplica.getAndIncrement(), pools.size());
+        for (int i = 0; i < pools.size(); i++) {
+            try {
+                Connection connection = pools.get((first + i) % pools.size()).getConnection();
+                replicaReads.incrementAndGet();
+                return connection;
+            } catch (SQLException exception) {
+                replicaFailures.incrementAndGet();
+            }
+        }
+        primaryReads.incrementAndGet();
+        return primary.getConnection();
+    }
+
+    /**
+     * Gets a connection to the primary, for writes and for reads that must see the latest data.
+     * Reads stay on the primary until a while after the connection is closed.
+     * @return the connection.
+     * @throws SQLException if the primary could not be reached.
+     */
+    public Connection getWriteConnection() throws SQLException {
+        writesInProgress.incrementAndGet();
+        Connection connection;
+        try {
+            connection = primary.getConnection();
+        } catch (SQLException | RuntimeException exception) {
+            endWrite();
+            throw exception;
+        }
+        writes.incrementAndGet();
+        return wrapWrite(connection);
+    }
+
+    private boolean isSticky() {
+        return writesInProgress.get() > 0 || written && System.nanoTime() - lastWriteNanos < stickinessNanos;
+    }
+
+    private void endWrite() {
+        lastWriteNanos = System.nanoTime();
+        written = true;
+        writesInProgress.decrementAndGet();
+    }
+
+    /**
+     * Wraps a write connection so that closing it ends the write.
+     */
+    private Connection wrapWrite(Connection connection) {
+        boolean[] closed = {false};
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, arguments) -> {
+                    if (method.getName().equals("close")) {
+                        synchronized (closed) {
+                            if (closed[0]) {
+                                return null;
+                            }
+                            closed[0] = true;
+                        }
+                        try {
+                            connection.close();
+                        } finally {
+                            endWrite();
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, arguments);
+                    } catch (InvocationTargetException exception) {
+                        throw exception.getCause();
+                    }
+                });
+    }
+
+    /**
+     * Gets the counters of the router.
+     * @return the metrics.
+     */
+    public Metrics getMetrics() {
+        return new Metrics(primaryReads.get(), replicaReads.get(), stickyReads.get(), replicaFailures.get(), writes.get());
+    }
+}
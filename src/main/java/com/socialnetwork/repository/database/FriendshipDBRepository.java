@@ -3,72 +3,105 @@ package com.socialnetwork.repository.database;
 import com.socialnetwork.domain.Friendship;
 import com.socialnetwork.domain.FriendshipStatus;
 import com.socialnetwork.domain.User;
-import com.socialnetwork.domain.validators.UserValidator;
-import com.socialnetwork.domain.validators.Validator;
 import com.socialnetwork.exceptions.CorruptedDataException;
 import com.socialnetwork.exceptions.RepositoryException;
 import com.socialnetwork.exceptions.ValidationException;
-import com.socialnetwork.repository.Repository;
+import com.socialnetwork.repository.FriendshipRepository;
+import com.socialnetwork.repository.memory.UserIdentityMap;
 import com.socialnetwork.utils.Constants;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
-public class FriendshipDBRepository implements Repository<Friendship, Set<User>> {
-    private final String url;
-    private final String username;
-    private final String password;
+public class FriendshipDBRepository implements FriendshipRepository {
+    private static final String SELECT_FRIENDSHIPS = """
+                SELECT U1.id AS id_user_01,
+                U1.username AS username_user_01,
+                U1.password_code AS password_code_user_01,
+                U1.salt AS salt_user_01,
+                U1.email AS email_user_01,
+                U2.id AS id_user_02,
+                U2.username AS username_user_02,
+                U2.password_code AS password_code_user_02,
+                U2.salt AS salt_user_02,
+                U2.email AS email_user_02,
+                to_char(F.friends_from, ?) AS friends_from,
+                F.status AS status
+                FROM friendships F
+                INNER JOIN users U1 ON U1.id = CASE WHEN F.sent_by_user_01 THEN F.id_user_01 ELSE F.id_user_02 END
+                INNER JOIN users U2 ON U2.id = CASE WHEN F.sent_by_user_01 THEN F.id_user_02 ELSE F.id_user_01 END
+                """;
+    private static final String WHERE_USER = "WHERE F.id_user_01 = ?::int OR F.id_user_02 = ?::int";
+    private static final String WHERE_STATUS_AND_USER = "WHERE F.status = ? AND (F.id_user_01 = ?::int OR F.id_user_02 = ?::int)";
+    private static final String WHERE_STATUS_AND_RECEIVER = "WHERE F.status = ?" +
+            " AND (F.id_user_02 = ?::int AND F.sent_by_user_01 OR F.id_user_01 = ?::int AND NOT F.sent_by_user_01)";
+    private static final String WHERE_STATUS_AND_SENDER = "WHERE F.status = ?" +
+            " AND (F.id_user_01 = ?::int AND F.sent_by_user_01 OR F.id_user_02 = ?::int AND NOT F.sent_by_user_01)";
+    // A pair is stored once, lower ID first, so a pair lookup is a single probe of the (id_user_01, id_user_02) index.
+    private static final String WHERE_PAIR = " WHERE F.id_user_01 = ?::int AND F.id_user_02 = ?::int";
+    private static final String EXISTS_FRIENDSHIP = "SELECT 1 FROM friendships F" + WHERE_PAIR;
+    private static final String INSERT_FRIENDSHIP = "INSERT INTO friendships (id_user_01, id_user_02, friends_from, status, sent_by_user_01)" +
+            " VALUES (?::int, ?::int, to_timestamp(?, ?)::timestamp, ?, ?)";
+    private static final String DELETE_FRIENDSHIP = "DELETE FROM friendships F" + WHERE_PAIR;
+    private static final String UPDATE_FRIENDSHIP = "UPDATE friendships F SET friends_from = to_timestamp(?, ?)::timestamp, status = ?" + WHERE_PAIR;
+
+    private final ConnectionRouter connectionRouter;
 
     public FriendshipDBRepository(String url, String username, String password) {
-        this.url = url;
-        this.username = username;
-        this.password = password;
+        this.connectionRouter = ConnectionRouter.getInstance(url, username, password);
+    }
+
+    /**
+     * Extracts a User from an SQL result set, or gets it from the Users already read by the same query.
+     * The rows of a query are read from one snapshot, so all the rows of a User agree.
+     * @param resultSet - The SQL result set
+     * @param suffix - The suffix of the columns of the User
+     * @param users - The Users already read by the query
+     * @return the User.
+     * @throws SQLException if there was a connection error.
+     * @throws ValidationException if the User is not valid.
+     */
+    private static User extractUser(ResultSet resultSet, String suffix, UserIdentityMap users) throws SQLException, ValidationException {
+        long id = resultSet.getLong("id" + suffix);
+        User user = users.find(id);
+        if (user != null) {
+            return user;
+        }
+        return users.resolve(id, resultSet.getString("username" + suffix), resultSet.getInt("password_code" + suffix),
+                resultSet.getString("salt" + suffix), resultSet.getString("email" + suffix));
     }
 
     /**
      * Extracts a friendship from an SQL result set.
      * @param resultSet - The SQL result set
+     * @param users - The Users already read by the query, which are shared instead of read again
      * @return the friendship.
      * @throws SQLException if there was a connection error.
      * @throws CorruptedDataException if the data read from the database is corrupted.
      */
-    private Friendship extractFriendship(ResultSet resultSet) throws  SQLException, CorruptedDataException {
-        long id1 = resultSet.getLong("id_user_01");
-        String username1 = resultSet.getString("username_user_01");
-        int passwordCode1 = resultSet.getInt("password_code_user_01");
-        String salt1 = resultSet.getString("salt_user_01");
-        String email1 = resultSet.getString("email_user_01");
-
-        long id2 = resultSet.getLong("id_user_02");
-        String username2 = resultSet.getString("username_user_02");
-        int passwordCode2 = resultSet.getInt("password_code_user_02");
-        String salt2 = resultSet.getString("salt_user_02");
-        String email2 = resultSet.getString("email_user_02");
-
-        LocalDateTime friendsFrom = LocalDateTime.parse(resultSet.getString("friends_from"), Constants.DATE_TIME_FORMATTER);
-        FriendshipStatus status = FriendshipStatus.valueOf(resultSet.getString("status"));
-
-        Validator<User> userValidator = new UserValidator();
-        User u1 = new User(username1, passwordCode1, salt1, email1);
-        u1.setID(id1);
-        User u2 = new User(username2, passwordCode2, salt2, email2);
-        u2.setID(id2);
+    private static Friendship extractFriendship(ResultSet resultSet, UserIdentityMap users) throws SQLException, CorruptedDataException {
+        User u1;
+        User u2;
         try {
-            userValidator.validate(u1);
-            userValidator.validate(u2);
+            u1 = extractUser(resultSet, "_user_01", users);
+            u2 = extractUser(resultSet, "_user_02", users);
         } catch (ValidationException exception) {
             throw new CorruptedDataException("Database data is corrupted!\n");
         }
+        LocalDateTime friendsFrom = LocalDateTime.parse(resultSet.getString("friends_from"), Constants.DATE_TIME_FORMATTER);
+        FriendshipStatus status = FriendshipStatus.valueOf(resultSet.getString("status"));
         return new Friendship(u1, u2, friendsFrom, status);
     }
 
     @Override
     public int size() {
         String sql = "SELECT COUNT(*) AS size FROM friendships";
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = connectionRouter.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql);
              ResultSet resultSet = statement.executeQuery()) {
             resultSet.next();
@@ -82,29 +115,48 @@ public class FriendshipDBRepository implements Repository<Friendship, Set<User>>
     @Override
     public List<Friendship> getAll() {
         List<Friendship> friendships = new ArrayList<>();
-        String sql = """
-                SELECT U1.id AS id_user_01,
-                U1.username AS username_user_01,
-                U1.password_code AS password_code_user_01,
-                U1.salt AS salt_user_01,
-                U1.email AS email_user_01,
-                U2.id AS id_user_02,
-                U2.username AS username_user_02,
-                U2.password_code AS password_code_user_02,
-                U2.salt AS salt_user_02,
-                U2.email AS email_user_02,
-                to_char(F.friends_from, ?) AS friends_from,
-                F.status AS status
-                FROM friendships F
-                INNER JOIN users U1 ON F.id_user_01 = U1.id
-                INNER JOIN users U2 ON U2.id = F.id_user_02
-                """;
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = connectionRouter.getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_FRIENDSHIPS)) {
+            statement.setString(1, Constants.DATE_TIME_FORMAT_POSTGRESQL);
+            ResultSet resultSet = statement.executeQuery();
+            UserIdentityMap users = new UserIdentityMap();
+            while (resultSet.next()) {
+                friendships.add(extractFriendship(resultSet, users));
+            }
+        } catch (CorruptedDataException | SQLException exception) {
+            exception.printStackTrace();
+            System.exit(1);
+        }
+        return friendships;
+    }
+
+    @Override
+    public Stream<Friendship> stream() {
+        try {
+            Connection connection = connectionRouter.getReadConnection();
+            UserIdentityMap users = new UserIdentityMap();
+            return ResultSetStream.query(connection, SELECT_FRIENDSHIPS,
+                    statement -> statement.setString(1, Constants.DATE_TIME_FORMAT_POSTGRESQL),
+                    resultSet -> extractFriendship(resultSet, users));
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        return Stream.empty();
+    }
+
+    @Override
+    public List<Friendship> page(int offset, int limit) {
+        List<Friendship> friendships = new ArrayList<>();
+        String sql = SELECT_FRIENDSHIPS + "ORDER BY F.id_user_01, F.id_user_02 LIMIT ? OFFSET ?";
+        try (Connection connection = connectionRouter.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setString(1, Constants.DATE_TIME_FORMAT_POSTGRESQL);
+            statement.setInt(2, limit);
+            statement.setInt(3, offset);
             ResultSet resultSet = statement.executeQuery();
+            UserIdentityMap users = new UserIdentityMap();
             while (resultSet.next()) {
-                friendships.add(extractFriendship(resultSet));
+                friendships.add(extractFriendship(resultSet, users));
             }
         } catch (CorruptedDataException | SQLException exception) {
             exception.printStackTrace();
@@ -113,70 +165,102 @@ public class FriendshipDBRepository implements Repository<Friendship, Set<User>>
         return friendships;
     }
 
+    /**
+     * Sets the two parameters of WHERE_PAIR, lower ID first.
+     * @param statement - The statement
+     * @param index - The index of the first parameter
+     * @param u1 - One of the users
+     * @param u2 - The other user
+     */
+    private static void bindPair(PreparedStatement statement, int index, User u1, User u2) throws SQLException {
+        long id1 = u1.getID();
+        long id2 = u2.getID();
+        statement.setString(index, String.valueOf(Math.min(id1, id2)));
+        statement.setString(index + 1, String.valueOf(Math.max(id1, id2)));
+    }
+
+    private static void bindInsert(PreparedStatement statement, Friendship friendship) throws SQLException {
+        bindPair(statement, 1, friendship.getU1(), friendship.getU2());
+        statement.setString(3, friendship.getFriendsFrom().format(Constants.DATE_TIME_FORMATTER));
+        statement.setString(4, Constants.DATE_TIME_FORMAT_POSTGRESQL);
+        statement.setString(5, friendship.getStatus().name());
+        // U1 sent the request; it is stored first only if it has the lower ID.
+        statement.setBoolean(6, friendship.getU1().getID() < friendship.getU2().getID());
+    }
+
+    private static void bindDelete(PreparedStatement statement, Friendship friendship) throws SQLException {
+        bindPair(statement, 1, friendship.getU1(), friendship.getU2());
+    }
+
+    private static void bindUpdate(PreparedStatement statement, Friendship friendship) throws SQLException {
+        statement.setString(1, friendship.getFriendsFrom().format(Constants.DATE_TIME_FORMATTER));
+        statement.setString(2, Constants.DATE_TIME_FORMAT_POSTGRESQL);
+        statement.setString(3, friendship.getStatus().name());
+        bindPair(statement, 4, friendship.getU1(), friendship.getU2());
+    }
+
     @Override
     public void add(Friendship friendship) throws RepositoryException {
-        String sql = "INSERT INTO friendships (id_user_01, id_user_02, friends_from, status) VALUES (?::int, ?::int, to_timestamp(?, ?)::timestamp, ?)";
-        try(Connection connection = DriverManager.getConnection(url, username, password);
-            PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, String.valueOf(friendship.getU1().getID()));
-            statement.setString(2, String.valueOf(friendship.getU2().getID()));
-            statement.setString(3, friendship.getFriendsFrom().format(Constants.DATE_TIME_FORMATTER));
-            statement.setString(4, Constants.DATE_TIME_FORMAT_POSTGRESQL);
-            statement.setString(5, friendship.getStatus().name());
+        try(Connection connection = connectionRouter.getWriteConnection();
+            PreparedStatement statement = connection.prepareStatement(INSERT_FRIENDSHIP)) {
+            bindInsert(statement, friendship);
             statement.executeUpdate();
         } catch (SQLException exception) {
             throw new RepositoryException("Friendship already exists!\n");
         }
     }
 
+    /**
+     * The bulk writes run as one transaction.
+     * @return true.
+     */
+    @Override
+    public boolean hasAtomicBulkWrites() {
+        return true;
+    }
+
+    @Override
+    public void addAll(Collection<Friendship> friendships) throws RepositoryException {
+        try (Connection connection = connectionRouter.getWriteConnection()) {
+            StatementBatch.execute(connection, INSERT_FRIENDSHIP, friendships, FriendshipDBRepository::bindInsert);
+        } catch (SQLException exception) {
+            throw new RepositoryException("Friendship already exists!\n");
+        }
+    }
+
     @Override
     public void remove(Friendship friendship) throws RepositoryException {
-        String sql = "DELETE FROM friendships F WHERE F.id_user_01 = ?::int AND F.id_user_02 = ?::int OR F.id_user_01 = ?::int AND F.id_user_02 = ?::int";
-        try(Connection connection = DriverManager.getConnection(url, username, password);
-            PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, String.valueOf(friendship.getU1().getID()));
-            statement.setString(2, String.valueOf(friendship.getU2().getID()));
-            statement.setString(3, String.valueOf(friendship.getU2().getID()));
-            statement.setString(4, String.valueOf(friendship.getU1().getID()));
+        try(Connection connection = connectionRouter.getWriteConnection();
+            PreparedStatement statement = connection.prepareStatement(DELETE_FRIENDSHIP)) {
+            bindDelete(statement, friendship);
             statement.executeUpdate();
         } catch (SQLException exception) {
             throw new RepositoryException("Friendship does not exist!\n");
         }
     }
 
+    @Override
+    public void removeAll(Collection<Friendship> friendships) throws RepositoryException {
+        try (Connection connection = connectionRouter.getWriteConnection()) {
+            StatementBatch.execute(connection, DELETE_FRIENDSHIP, friendships, FriendshipDBRepository::bindDelete);
+        } catch (SQLException exception) {
+            throw new RepositoryException("Friendship does not exist!\n");
+        }
+    }
+
     @Override
     public Friendship find(Set<User> id) throws RepositoryException {
-        String sql = """
-                SELECT U1.id AS id_user_01,
-                U1.username AS username_user_01,
-                U1.password_code AS password_code_user_01,
-                U1.salt AS salt_user_01,
-                U1.email AS email_user_01,
-                U2.id AS id_user_02,
-                U2.username AS username_user_02,
-                U2.password_code AS password_code_user_02,
-                U2.salt AS salt_user_02,
-                U2.email AS email_user_02,
-                to_char(F.friends_from, ?) AS friends_from,
-                F.status AS status
-                FROM friendships F
-                INNER JOIN users U1 ON F.id_user_01 = U1.id
-                INNER JOIN users U2 ON U2.id = F.id_user_02
-                WHERE U1.id = ?::int AND U2.id = ?::int OR U1.id = ?::int AND U2.id = ?::int
-                """;
-        try(Connection connection = DriverManager.getConnection(url, username, password);
+        String sql = SELECT_FRIENDSHIPS + WHERE_PAIR;
+        try(Connection connection = connectionRouter.getReadConnection();
             PreparedStatement statement = connection.prepareStatement(sql)) {
             List<User> users = new ArrayList<>(id);
             statement.setString(1, Constants.DATE_TIME_FORMAT_POSTGRESQL);
-            statement.setString(2, String.valueOf(users.get(0).getID()));
-            statement.setString(3, String.valueOf(users.get(1).getID()));
-            statement.setString(4, String.valueOf(users.get(1).getID()));
-            statement.setString(5, String.valueOf(users.get(0).getID()));
+            bindPair(statement, 2, users.get(0), users.get(1));
             ResultSet resultSet = statement.executeQuery();
             if (!resultSet.next()) {
                 throw new RepositoryException("Friendship not found!\n");
             }
-            return extractFriendship(resultSet);
+            return extractFriendship(resultSet, new UserIdentityMap());
         } catch (CorruptedDataException exception) {
             exception.printStackTrace();
             System.exit(1);
@@ -189,21 +273,95 @@ public class FriendshipDBRepository implements Repository<Friendship, Set<User>>
 
     @Override
     public void update(Friendship friendship) throws RepositoryException {
-        String sql = "UPDATE friendships F SET friends_from = to_timestamp(?, ?)::timestamp, status = ?" +
-                " WHERE F.id_user_01 = ?::int AND F.id_user_02 = ?::int OR F.id_user_01 = ?::int AND F.id_user_02 = ?::int";
-        try(Connection connection = DriverManager.getConnection(url, username, password);
-        PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, friendship.getFriendsFrom().format(Constants.DATE_TIME_FORMATTER));
-            statement.setString(2, Constants.DATE_TIME_FORMAT_POSTGRESQL);
-            statement.setString(3, friendship.getStatus().name());
-            statement.setString(4, String.valueOf(friendship.getU1().getID()));
-            statement.setString(5, String.valueOf(friendship.getU2().getID()));
-            statement.setString(6, String.valueOf(friendship.getU2().getID()));
-            statement.setString(7, String.valueOf(friendship.getU1().getID()));
-
+        try(Connection connection = connectionRouter.getWriteConnection();
+        PreparedStatement statement = connection.prepareStatement(UPDATE_FRIENDSHIP)) {
+            bindUpdate(statement, friendship);
             statement.executeUpdate();
         } catch (SQLException exception) {
             throw new RepositoryException("Friendship does not exist!\n");
         }
     }
+
+    @Override
+    public void updateAll(Collection<Friendship> friendships) throws RepositoryException {
+        try (Connection connection = connectionRouter.getWriteConnection()) {
+            StatementBatch.execute(connection, UPDATE_FRIENDSHIP, friendships, FriendshipDBRepository::bindUpdate);
+        } catch (SQLException exception) {
+            throw new RepositoryException("Friendship does not exist!\n");
+        }
+    }
+
+    /**
+     * Runs SELECT_FRIENDSHIPS with a condition and collects the friendships it finds.
+     * @param condition - The WHERE clause
+     * @param binder - Sets the parameters of the condition, which start at index 2
+     * @return the friendships.
+     */
+    private List<Friendship> queryFriendships(String condition, ResultSetStream.ParameterBinder binder) {
+        List<Friendship> friendships = new ArrayList<>();
+        try (Connection connection = connectionRouter.getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_FRIENDSHIPS + condition)) {
+            statement.setString(1, Constants.DATE_TIME_FORMAT_POSTGRESQL);
+            binder.bind(statement);
+            ResultSet resultSet = statement.executeQuery();
+            UserIdentityMap users = new UserIdentityMap();
+            while (resultSet.next()) {
+                friendships.add(extractFriendship(resultSet, users));
+            }
+        } catch (CorruptedDataException exception) {
+            exception.printStackTrace();
+            System.exit(1);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        return friendships;
+    }
+
+    @Override
+    public List<Friendship> getAllOf(User user) {
+        return queryFriendships(WHERE_USER, statement -> {
+            statement.setString(2, String.valueOf(user.getID()));
+            statement.setString(3, String.valueOf(user.getID()));
+        });
+    }
+
+    @Override
+    public List<Friendship> getFriendshipsOf(User user) {
+        return queryFriendships(WHERE_STATUS_AND_USER, statement -> {
+            statement.setString(2, FriendshipStatus.accepted.name());
+            statement.setString(3, String.valueOf(user.getID()));
+            statement.setString(4, String.valueOf(user.getID()));
+        });
+    }
+
+    @Override
+    public List<Friendship> getRequestsTo(User user) {
+        return queryFriendships(WHERE_STATUS_AND_RECEIVER, statement -> {
+            statement.setString(2, FriendshipStatus.sent.name());
+            statement.setString(3, String.valueOf(user.getID()));
+            statement.setString(4, String.valueOf(user.getID()));
+        });
+    }
+
+    @Override
+    public List<Friendship> getRequestsSentBy(User user) {
+        return queryFriendships(WHERE_STATUS_AND_SENDER, statement -> {
+            statement.setString(2, FriendshipStatus.sent.name());
+            statement.setString(3, String.valueOf(user.getID()));
+            statement.setString(4, String.valueOf(user.getID()));
+        });
+    }
+
+    @Override
+    public boolean exists(User u1, User u2) {
+        try (Connection connection = connectionRouter.getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(EXISTS_FRIENDSHIP)) {
+            bindPair(statement, 1, u1, u2);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next();
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        return false;
+    }
 }
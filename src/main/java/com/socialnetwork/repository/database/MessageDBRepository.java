@@ -2,23 +2,43 @@ package com.socialnetwork.repository.database;
 
 import com.socialnetwork.domain.Message;
 import com.socialnetwork.exceptions.RepositoryException;
-import com.socialnetwork.repository.Repository;
+import com.socialnetwork.repository.MessageRepository;
 import com.socialnetwork.utils.Constants;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
-public class MessageDBRepository implements Repository<Message, Long> {
-    private final String url;
-    private final String username;
-    private final String password;
+public class MessageDBRepository implements MessageRepository {
+    private static final String SELECT_MESSAGES = """
+                SELECT M.id AS id,
+                to_char(M.sent_at, ?) AS sent_at,
+                M.subject AS subject,
+                M.text AS text,
+                M.sender AS sender,
+                M.receiver AS receiver
+                FROM messages M
+            """;
+    // The messages are read back with minute precision, so the exact key of the last message of a page
+    // is looked up by its ID; the minute is only used if that message has been removed meanwhile.
+    private static final String FIRST_INBOX_PAGE = SELECT_MESSAGES + " WHERE M.receiver = ? ORDER BY M.sent_at DESC, M.id DESC LIMIT ?";
+    private static final String NEXT_INBOX_PAGE = SELECT_MESSAGES + """
+                WHERE M.receiver = ?
+                AND (M.sent_at, M.id) < (COALESCE((SELECT C.sent_at FROM messages C WHERE C.id = ?::int), to_timestamp(?, ?)::timestamp), ?::int)
+                ORDER BY M.sent_at DESC, M.id DESC
+                LIMIT ?
+            """;
+    private static final String INSERT_MESSAGE = "INSERT INTO messages (sent_at, subject, text, sender, receiver) VALUES (to_timestamp(?, ?)::timestamp, ?, ?, ?, ?)";
+    private static final String DELETE_MESSAGE = "DELETE FROM messages WHERE messages.id = ?::int";
+    private static final String UPDATE_MESSAGE = "UPDATE messages SET sent_at = to_timestamp(?, ?)::timestamp, subject = ?, text = ?, sender = ?, receiver = ? WHERE messages.id = ?::int";
+
+    private final ConnectionRouter connectionRouter;
 
     public MessageDBRepository(String url, String username, String password) {
-        this.url = url;
-        this.username = username;
-        this.password = password;
+        this.connectionRouter = ConnectionRouter.getInstance(url, username, password);
     }
 
     private Message extractMessage(ResultSet resultSet) throws SQLException {
@@ -38,7 +58,7 @@ public class MessageDBRepository implements Repository<Message, Long> {
     @Override
     public int size() {
         String sql = "SELECT COUNT(*) AS size FROM messages";
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = connectionRouter.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql);
              ResultSet resultSet = statement.executeQuery()) {
             resultSet.next();
@@ -52,18 +72,42 @@ public class MessageDBRepository implements Repository<Message, Long> {
     @Override
     public List<Message> getAll() {
         List<Message> messages = new ArrayList<>();
-        String sql = """
-                SELECT M.id AS id,
-                to_char(M.sent_at, ?) AS sent_at,
-                M.subject AS subject,
-                M.text AS text,
-                M.sender AS sender,
-                M.receiver AS receiver
-                FROM messages M
-            """;
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = connectionRouter.getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_MESSAGES)) {
+            statement.setString(1, Constants.DATE_TIME_FORMAT_POSTGRESQL);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                messages.add(extractMessage(resultSet));
+            }
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+            System.exit(1);
+        }
+        return messages;
+    }
+
+    @Override
+    public Stream<Message> stream() {
+        try {
+            Connection connection = connectionRouter.getReadConnection();
+            return ResultSetStream.query(connection, SELECT_MESSAGES,
+                    statement -> statement.setString(1, Constants.DATE_TIME_FORMAT_POSTGRESQL),
+                    this::extractMessage);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        return Stream.empty();
+    }
+
+    @Override
+    public List<Message> page(int offset, int limit) {
+        List<Message> messages = new ArrayList<>();
+        String sql = SELECT_MESSAGES + " ORDER BY M.id LIMIT ? OFFSET ?";
+        try (Connection connection = connectionRouter.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setString(1, Constants.DATE_TIME_FORMAT_POSTGRESQL);
+            statement.setInt(2, limit);
+            statement.setInt(3, offset);
             ResultSet resultSet = statement.executeQuery();
             while (resultSet.next()) {
                 messages.add(extractMessage(resultSet));
@@ -75,41 +119,85 @@ public class MessageDBRepository implements Repository<Message, Long> {
         return messages;
     }
 
+    private static void bindInsert(PreparedStatement statement, Message entity) throws SQLException {
+        statement.setString(1, entity.getSentAt().format(Constants.DATE_TIME_FORMATTER));
+        statement.setString(2, Constants.DATE_TIME_FORMAT_POSTGRESQL);
+        statement.setString(3, entity.getSubject());
+        statement.setString(4, entity.getText());
+        statement.setString(5, entity.getSender());
+        statement.setString(6, entity.getReceiver());
+    }
+
+    private static void bindDelete(PreparedStatement statement, Message entity) throws SQLException {
+        statement.setString(1, String.valueOf(entity.getID()));
+    }
+
+    private static void bindUpdate(PreparedStatement statement, Message entity) throws SQLException {
+        statement.setString(1, entity.getSentAt().format(Constants.DATE_TIME_FORMATTER));
+        statement.setString(2, Constants.DATE_TIME_FORMAT_POSTGRESQL);
+        statement.setString(3, entity.getSubject());
+        statement.setString(4, entity.getText());
+        statement.setString(5, entity.getSender());
+        statement.setString(6, entity.getReceiver());
+        statement.setString(7, String.valueOf(entity.getID()));
+    }
+
     @Override
     public void add(Message entity) throws RepositoryException {
-        String sql = "INSERT INTO messages (sent_at, subject, text, sender, receiver) VALUES (to_timestamp(?, ?)::timestamp, ?, ?, ?, ?)";
-        try(Connection connection = DriverManager.getConnection(url, username, password);
-            PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, entity.getSentAt().format(Constants.DATE_TIME_FORMATTER));
-            statement.setString(2, Constants.DATE_TIME_FORMAT_POSTGRESQL);
-            statement.setString(3, entity.getSubject());
-            statement.setString(4, entity.getText());
-            statement.setString(5, entity.getSender());
-            statement.setString(6, entity.getReceiver());
+        try(Connection connection = connectionRouter.getWriteConnection();
+            PreparedStatement statement = connection.prepareStatement(INSERT_MESSAGE)) {
+            bindInsert(statement, entity);
             statement.executeUpdate();
         } catch (SQLException exception) {
             throw new RepositoryException("Message already exists!\n");
         }
     }
 
+    /**
+     * The bulk writes run as one transaction.
+     * @return true.
+     */
+    @Override
+    public boolean hasAtomicBulkWrites() {
+        return true;
+    }
+
+    @Override
+    public void addAll(Collection<Message> entities) throws RepositoryException {
+        try (Connection connection = connectionRouter.getWriteConnection()) {
+            StatementBatch.execute(connection, INSERT_MESSAGE, entities, MessageDBRepository::bindInsert);
+        } catch (SQLException exception) {
+            throw new RepositoryException("Message already exists!\n");
+        }
+    }
+
     @Override
     public void remove(Message entity) throws RepositoryException {
-        String sql = "DELETE FROM messages WHERE messages.id = ?::int";
-        try(Connection connection = DriverManager.getConnection(url, username, password);
-            PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, String.valueOf(entity.getID()));
+        try(Connection connection = connectionRouter.getWriteConnection();
+            PreparedStatement statement = connection.prepareStatement(DELETE_MESSAGE)) {
+            bindDelete(statement, entity);
             statement.executeUpdate();
         } catch (SQLException exception) {
             throw new RepositoryException("Message does not exists!\n");
         }
     }
 
+    @Override
+    public void removeAll(Collection<Message> entities) throws RepositoryException {
+        try (Connection connection = connectionRouter.getWriteConnection()) {
+            StatementBatch.execute(connection, DELETE_MESSAGE, entities, MessageDBRepository::bindDelete);
+        } catch (SQLException exception) {
+            throw new RepositoryException("Message does not exists!\n");
+        }
+    }
+
     @Override
     public Message find(Long id) throws RepositoryException {
-        String sql = "SELECT * FROM messages WHERE messages.id = ?::int";
-        try(Connection connection = DriverManager.getConnection(url, username, password);
+        String sql = SELECT_MESSAGES + " WHERE M.id = ?::int";
+        try(Connection connection = connectionRouter.getReadConnection();
             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, String.valueOf(id));
+            statement.setString(1, Constants.DATE_TIME_FORMAT_POSTGRESQL);
+            statement.setString(2, String.valueOf(id));
             ResultSet resultSet = statement.executeQuery();
             if (!resultSet.next()) {
                 throw new RepositoryException("Entity not found!\n");
@@ -124,28 +212,32 @@ public class MessageDBRepository implements Repository<Message, Long> {
 
     @Override
     public void update(Message entity) throws RepositoryException {
-        String sql = "UPDATE messages SET sent_at = to_timestamp(?, ?)::timestamp, subject = ?, text = ?, sender = ?, receiver = ? WHERE messages.id = ?::int";
-        try(Connection connection = DriverManager.getConnection(url, username, password);
-            PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, entity.getSentAt().format(Constants.DATE_TIME_FORMATTER));
-            statement.setString(2, Constants.DATE_TIME_FORMAT_POSTGRESQL);
-            statement.setString(3, entity.getSubject());
-            statement.setString(4, entity.getText());
-            statement.setString(5, entity.getSender());
-            statement.setString(6, entity.getReceiver());
-            statement.setString(7, String.valueOf(entity.getID()));
+        try(Connection connection = connectionRouter.getWriteConnection();
+            PreparedStatement statement = connection.prepareStatement(UPDATE_MESSAGE)) {
+            bindUpdate(statement, entity);
             statement.executeUpdate();
         } catch (SQLException exception) {
             throw new RepositoryException("Message does not exists!\n");
         }
     }
 
+    @Override
+    public void updateAll(Collection<Message> entities) throws RepositoryException {
+        try (Connection connection = connectionRouter.getWriteConnection()) {
+            StatementBatch.execute(connection, UPDATE_MESSAGE, entities, MessageDBRepository::bindUpdate);
+        } catch (SQLException exception) {
+            throw new RepositoryException("Message does not exists!\n");
+        }
+    }
+
+    @Override
     public List<Message> getAllForSomeone(String user) throws RepositoryException {
         List<Message> messages = new ArrayList<>();
-        String sql = "SELECT * FROM messages WHERE receiver = ? ORDER BY sent_at DESC";
-        try(Connection connection = DriverManager.getConnection(url, username, password);
+        String sql = SELECT_MESSAGES + " WHERE M.receiver = ? ORDER BY M.sent_at, M.id";
+        try(Connection connection = connectionRouter.getReadConnection();
         PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, user);
+            statement.setString(1, Constants.DATE_TIME_FORMAT_POSTGRESQL);
+            statement.setString(2, user);
             ResultSet resultSet = statement.executeQuery();
             while (resultSet.next()) {
                 messages.add(extractMessage(resultSet));
@@ -156,4 +248,30 @@ public class MessageDBRepository implements Repository<Message, Long> {
             throw new RepositoryException("No messages!\n");
         }
     }
+
+    @Override
+    public List<Message> getInboxPage(String receiver, Message after, int pageSize) throws RepositoryException {
+        List<Message> messages = new ArrayList<>();
+        try (Connection connection = connectionRouter.getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(after == null ? FIRST_INBOX_PAGE : NEXT_INBOX_PAGE)) {
+            statement.setString(1, Constants.DATE_TIME_FORMAT_POSTGRESQL);
+            statement.setString(2, receiver);
+            if (after == null) {
+                statement.setInt(3, pageSize);
+            } else {
+                statement.setString(3, String.valueOf(after.getID()));
+                statement.setString(4, after.getSentAt().format(Constants.DATE_TIME_FORMATTER));
+                statement.setString(5, Constants.DATE_TIME_FORMAT_POSTGRESQL);
+                statement.setString(6, String.valueOf(after.getID()));
+                statement.setInt(7, pageSize);
+            }
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                messages.add(extractMessage(resultSet));
+            }
+            return messages;
+        } catch (SQLException exception) {
+            throw new RepositoryException("No messages!\n");
+        }
+    }
 }
@@ -0,0 +1,131 @@
+package com.socialnetwork.repository.database;
+
+import com.socialnetwork.exceptions.CorruptedDataException;
+import com.socialnetwork.utils.Constants;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily maps the rows of a query to entities. Closing the stream closes the result set,
+ * the statement and the connection. A row that cannot be read fails the stream with an
+ * IllegalStateException, instead of ending it early as if there were no more rows.
+ */
+class ResultSetStream {
+    /**
+     * Maps the current row of a result set.
+     * @param <T> - The type of the mapped row
+     */
+    interface RowMapper<T> {
+        T map(ResultSet resultSet) throws SQLException, CorruptedDataException;
+    }
+
+    /**
+     * Sets the parameters of a statement.
+     */
+    interface ParameterBinder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    private ResultSetStream() {}
+
+    /**
+     * Runs a query through a server-side cursor and streams its rows. PostgreSQL only uses a cursor
+     * (fetching fetchSize rows per round trip) inside a transaction, so auto-commit is turned off.
+     * @param connection - The connection, closed with the stream (or right away if the query fails)
+     * @param sql - The query
+     * @param binder - Sets the parameters of the query
+     * @param mapper - Maps a row to an entity
+     * @return a lazy stream of the mapped rows, or an empty stream if the query failed.
+     */
+    static <T> Stream<T> query(Connection connection, String sql, ParameterBinder binder, RowMapper<T> mapper) {
+        PreparedStatement statement = null;
+        try {
+            connection.setAutoCommit(false);
+            statement = connection.prepareStatement(sql);
+            statement.setFetchSize(Constants.DATABASE_FETCH_SIZE);
+            binder.bind(statement);
+            return of(connection, statement, statement.executeQuery(), mapper);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackException) {
+                rollbackException.printStackTrace();
+            } finally {
+                close(statement);
+                close(connection);
+            }
+        }
+        return Stream.empty();
+    }
+
+    /**
+     * Streams the rows of an executed query.
+     * @param connection - The connection, closed with the stream
+     * @param statement - The statement, closed with the stream
+     * @param resultSet - The result set, closed with the stream
+     * @param mapper - Maps a row to an entity
+     * @return a lazy stream of the mapped rows.
+     */
+    private static <T> Stream<T> of(Connection connection, PreparedStatement statement, ResultSet resultSet, RowMapper<T> mapper) {
+        AtomicBoolean closed = new AtomicBoolean(false);
+        Runnable closer = () -> {
+            if (closed.compareAndSet(false, true)) {
+                close(connection, statement, resultSet);
+            }
+        };
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!resultSet.next()) {
+                        return false;
+                    }
+                    action.accept(mapper.map(resultSet));
+                    return true;
+                } catch (CorruptedDataException exception) {
+                    exception.printStackTrace();
+                    System.exit(1);
+                } catch (SQLException exception) {
+                    // Callers that do not close the stream still release the connection.
+                    closer.run();
+                    throw new IllegalStateException("Reading the query failed", exception);
+                }
+                return false;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(closer);
+    }
+
+    private static void close(Connection connection, PreparedStatement statement, ResultSet resultSet) {
+        try {
+            connection.commit();
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        } finally {
+            close(resultSet);
+            close(statement);
+            close(connection);
+        }
+    }
+
+    private static void close(AutoCloseable resource) {
+        if (resource == null) {
+            return;
+        }
+        try {
+            resource.close();
+        } catch (Exception exception) {
+            exception.printStackTrace();
+        }
+    }
+}
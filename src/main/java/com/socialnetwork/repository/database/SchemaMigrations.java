@@ -0,0 +1,234 @@
+package com.socialnetwork.repository.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Brings the database schema up to date. Every migration has a version and runs once, in its own transaction,
+ * and the versions that have been applied are recorded in the schema_version table.
+ * New migrations are appended to the list; applied ones are never changed. Rows of tables set up by hand that
+ * a migration could not constrain are repaired beforehand, by a step that leaves up-to-date databases alone.
+ */
+public class SchemaMigrations {
+    /**
+     * A versioned change of the schema.
+     * @param version - The version the schema has after the migration
+     * @param description - What the migration does
+     * @param sql - The statements of the migration, separated by semicolons
+     */
+    private record Migration(int version, String description, String sql) {}
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            // The tables as the repositories expect them. "IF NOT EXISTS" keeps the tables of databases
+            // that were set up by hand before the migrations existed.
+            new Migration(1, "Create the tables", """
+                CREATE TABLE IF NOT EXISTS users (
+                    id INTEGER PRIMARY KEY,
+                    username VARCHAR(255) NOT NULL,
+                    password_code INTEGER NOT NULL,
+                    salt VARCHAR(255) NOT NULL,
+                    email VARCHAR(255) NOT NULL
+                );
+                CREATE TABLE IF NOT EXISTS friendships (
+                    id_user_01 INTEGER NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+                    id_user_02 INTEGER NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+                    friends_from TIMESTAMP NOT NULL,
+                    status VARCHAR(16) NOT NULL CHECK (status IN ('sent', 'received', 'accepted'))
+                );
+                CREATE TABLE IF NOT EXISTS messages (
+                    id SERIAL PRIMARY KEY,
+                    sent_at TIMESTAMP NOT NULL,
+                    subject TEXT NOT NULL,
+                    text TEXT NOT NULL,
+                    sender VARCHAR(255) NOT NULL,
+                    receiver VARCHAR(255) NOT NULL
+                );
+                """),
+            // One index per query of the database repositories:
+            // - users: findByUsername and findByEmail, which are also unique;
+            // - friendships: the pair lookups of find/update/remove/exists, which are unique, and the
+            //   per-user lookups, filtered by status, of getAllOf, getFriendshipsOf, getRequestsTo and getRequestsSentBy;
+            // - messages: getAllForSomeone and the inbox pages, which read one receiver in (sent_at, id) order.
+            new Migration(2, "Add the unique constraints and the indexes of the queries", """
+                CREATE UNIQUE INDEX IF NOT EXISTS users_username_key ON users (username);
+                CREATE UNIQUE INDEX IF NOT EXISTS users_email_key ON users (email);
+                CREATE UNIQUE INDEX IF NOT EXISTS friendships_pair_key ON friendships (id_user_01, id_user_02);
+                CREATE INDEX IF NOT EXISTS friendships_user_01_status_idx ON friendships (id_user_01, status);
+                CREATE INDEX IF NOT EXISTS friendships_user_02_status_idx ON friendships (id_user_02, status);
+                CREATE INDEX IF NOT EXISTS messages_receiver_sent_at_idx ON messages (receiver, sent_at, id);
+                ANALYZE users;
+                ANALYZE friendships;
+                ANALYZE messages;
+                """),
+            // Every pair is stored once, lower ID first, with the direction of the request in sent_by_user_01,
+            // so pair lookups need no OR. Of a pair stored both ways, the accepted row is kept, or else the one
+            // that is already in order.
+            new Migration(3, "Store friendship pairs in canonical order", """
+                ALTER TABLE friendships ADD COLUMN IF NOT EXISTS sent_by_user_01 BOOLEAN NOT NULL DEFAULT TRUE;
+                DELETE FROM friendships F USING friendships G
+                WHERE F.id_user_01 = G.id_user_02 AND F.id_user_02 = G.id_user_01
+                AND (F.status <> 'accepted' AND G.status = 'accepted'
+                     OR (F.status = 'accepted') = (G.status = 'accepted') AND F.id_user_01 > F.id_user_02);
+                UPDATE friendships
+                SET id_user_01 = id_user_02, id_user_02 = id_user_01, sent_by_user_01 = NOT sent_by_user_01
+                WHERE id_user_01 > id_user_02;
+                ALTER TABLE friendships ADD CONSTRAINT friendships_canonical_check CHECK (id_user_01 < id_user_02);
+                ALTER TABLE friendships ALTER COLUMN sent_by_user_01 DROP DEFAULT;
+                ANALYZE friendships;
+                """),
+            // Every committed change of a row is announced on the social_network_changes channel, with what it
+            // concerns: the ID of a user, the IDs of the users of a friendship, or the receiver of a message.
+            // Identical notifications of one transaction are delivered once.
+            new Migration(4, "Notify the changes of the tables", """
+                CREATE OR REPLACE FUNCTION notify_change() RETURNS TRIGGER AS $$
+                DECLARE
+                    changed RECORD;
+                BEGIN
+                    IF TG_OP = 'DELETE' THEN
+                        changed := OLD;
+                    ELSE
+                        changed := NEW;
+                    END IF;
+                    IF TG_TABLE_NAME = 'users' THEN
+                        PERFORM pg_notify('social_network_changes', 'users,' || changed.id);
+                    ELSIF TG_TABLE_NAME = 'friendships' THEN
+                        PERFORM pg_notify('social_network_changes', 'friendships,' || changed.id_user_01 || ',' || changed.id_user_02);
+                    ELSE
+                        PERFORM pg_notify('social_network_changes', 'messages,' || changed.receiver);
+                        IF TG_OP = 'UPDATE' AND OLD.receiver <> NEW.receiver THEN
+                            PERFORM pg_notify('social_network_changes', 'messages,' || OLD.receiver);
+                        END IF;
+                    END IF;
+                    RETURN NULL;
+                END;
+                $$ LANGUAGE plpgsql;
+                DROP TRIGGER IF EXISTS users_notify_change ON users;
+                CREATE TRIGGER users_notify_change AFTER INSERT OR UPDATE OR DELETE ON users
+                    FOR EACH ROW EXECUTE FUNCTION notify_change();
+                DROP TRIGGER IF EXISTS friendships_notify_change ON friendships;
+                CREATE TRIGGER friendships_notify_change AFTER INSERT OR UPDATE OR DELETE ON friendships
+                    FOR EACH ROW EXECUTE FUNCTION notify_change();
+                DROP TRIGGER IF EXISTS messages_notify_change ON messages;
+                CREATE TRIGGER messages_notify_change AFTER INSERT OR UPDATE OR DELETE ON messages
+                    FOR EACH ROW EXECUTE FUNCTION notify_change();
+                """)
+    );
+
+    private static final String CREATE_SCHEMA_VERSION = """
+                CREATE TABLE IF NOT EXISTS schema_version (
+                    version INTEGER PRIMARY KEY,
+                    description VARCHAR(255) NOT NULL,
+                    applied_at TIMESTAMP NOT NULL DEFAULT now()
+                )
+                """;
+    // Held until the end of each migration transaction, so that two instances starting together
+    // do not apply the same migration twice.
+    private static final String LOCK_SCHEMA = "SELECT pg_advisory_xact_lock(7283201)";
+    private static final String SELECT_VERSION = "SELECT COALESCE(MAX(version), 0) AS version FROM schema_version";
+    private static final String SELECT_FRIENDSHIPS = "SELECT to_regclass('friendships') IS NOT NULL AS present";
+    // Friendship rows that tables set up by hand may hold, and that would make migrations 2 and 3 fail:
+    // rows of a user with itself, which the repositories never write, and pairs stored twice the same way,
+    // of which the accepted row is kept, or else the first one. Deleting them again changes nothing.
+    private static final String REPAIR_FRIENDSHIPS = """
+                DELETE FROM friendships WHERE id_user_01 = id_user_02;
+                DELETE FROM friendships F USING friendships G
+                WHERE F.id_user_01 = G.id_user_01 AND F.id_user_02 = G.id_user_02
+                AND (F.status <> 'accepted' AND G.status = 'accepted'
+                     OR (F.status = 'accepted') = (G.status = 'accepted') AND F.ctid > G.ctid);
+                """;
+    // The version from which the constraints keep the rows above out of the table.
+    private static final int FRIENDSHIPS_CONSTRAINED = 3;
+    private static final String INSERT_VERSION = "INSERT INTO schema_version (version, description) VALUES (?, ?)";
+
+    private SchemaMigrations() {}
+
+    /**
+     * Applies the migrations that the database does not have yet, in order.
+     * @param url - The URL of the database
+     * @param username - The username of the database
+     * @param password - The password of the database
+     * @return the version of the schema.
+     * @throws SQLException if a migration failed; the failed migration is rolled back.
+     */
+    public static int migrate(String url, String username, String password) throws SQLException {
+        try (Connection connection = ConnectionPool.getInstance(url, username, password).getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_SCHEMA_VERSION);
+            }
+            repairFriendships(connection);
+            int version = 0;
+            for (Migration migration : MIGRATIONS) {
+                version = apply(connection, migration);
+            }
+            return version;
+        }
+    }
+
+    /**
+     * Deletes the friendship rows that the constraints of the migrations do not allow, if there is a friendship
+     * table and the migrations that constrain it have not been applied yet. Runs in its own transaction, before
+     * the migrations, and can run again at any version; the applied migrations are left as they were.
+     */
+    private static void repairFriendships(Connection connection) throws SQLException {
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(LOCK_SCHEMA);
+            int version;
+            try (ResultSet resultSet = statement.executeQuery(SELECT_VERSION)) {
+                resultSet.next();
+                version = resultSet.getInt("version");
+            }
+            boolean present;
+            try (ResultSet resultSet = statement.executeQuery(SELECT_FRIENDSHIPS)) {
+                resultSet.next();
+                present = resultSet.getBoolean("present");
+            }
+            if (version < FRIENDSHIPS_CONSTRAINED && present) {
+                statement.execute(REPAIR_FRIENDSHIPS);
+            }
+            connection.commit();
+        } catch (SQLException exception) {
+            connection.rollback();
+            throw exception;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Applies a migration, unless it has already been applied.
+     * @return the version of the schema afterwards.
+     */
+    private static int apply(Connection connection, Migration migration) throws SQLException {
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(LOCK_SCHEMA);
+            int version;
+            try (ResultSet resultSet = statement.executeQuery(SELECT_VERSION)) {
+                resultSet.next();
+                version = resultSet.getInt("version");
+            }
+            if (version >= migration.version()) {
+                connection.commit();
+                return version;
+            }
+            statement.execute(migration.sql());
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_VERSION)) {
+                insert.setInt(1, migration.version());
+                insert.setString(2, migration.description());
+                insert.executeUpdate();
+            }
+            connection.commit();
+            return migration.version();
+        } catch (SQLException exception) {
+            connection.rollback();
+            throw exception;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+}
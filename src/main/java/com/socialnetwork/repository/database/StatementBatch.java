@@ -0,0 +1,48 @@
+package com.socialnetwork.repository.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+
+/**
+ * Runs the same statement for many entities as a single JDBC batch, in one transaction.
+ */
+class StatementBatch {
+    /**
+     * Sets the parameters of a statement for one entity.
+     * @param <T> - The type of the entity
+     */
+    interface EntityBinder<T> {
+        void bind(PreparedStatement statement, T entity) throws SQLException;
+    }
+
+    private StatementBatch() {}
+
+    /**
+     * Executes a statement once per entity with addBatch/executeBatch. Either every
+     * statement is committed or, if one of them fails, none is.
+     * @param connection - The connection
+     * @param sql - The statement
+     * @param entities - The entities
+     * @param binder - Sets the parameters of the statement for an entity
+     * @throws SQLException if one of the statements failed; the transaction is rolled back.
+     */
+    static <T> void execute(Connection connection, String sql, Collection<? extends T> entities, EntityBinder<T> binder) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (T entity : entities) {
+                binder.bind(statement, entity);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+        } catch (SQLException exception) {
+            connection.rollback();
+            throw exception;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+}
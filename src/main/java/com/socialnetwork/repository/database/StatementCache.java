@@ -0,0 +1,191 @@
+package com.socialnetwork.repository.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The prepared statements of one pooled connection, kept open between uses and keyed by their SQL.
+ * Reusing the same statement lets the driver switch to a server-side prepared statement, so the database
+ * stops parsing and planning hot queries on every call. At most capacity statements are kept; the least
+ * recently used one is closed when another one is needed.
+ */
+class StatementCache {
+    /**
+     * A cached statement and whether it is handed out right now.
+     */
+    private static class CachedStatement {
+        final String sql;
+        final PreparedStatement statement;
+        boolean inUse = false;
+        boolean evicted = false;
+
+        CachedStatement(String sql, PreparedStatement statement) {
+            this.sql = sql;
+            this.statement = statement;
+        }
+    }
+
+    private final Connection connection;
+    private final Map<String, CachedStatement> statements;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /**
+     * Creates the cache of a connection.
+     * @param connection - The physical connection
+     * @param capacity - The maximum number of cached statements
+     * @param hits - Counts the statements served from the cache
+     * @param misses - Counts the statements that had to be prepared
+     */
+    StatementCache(Connection connection, int capacity, AtomicLong hits, AtomicLong misses) {
+        this.connection = connection;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    private static void evict(CachedStatement cached) {
+        cached.evicted = true;
+        if (!cached.inUse) {
+            closeQuietly(cached.statement);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets a prepared statement for some SQL, from the cache if it is there and free.
+     * Closing the returned statement gives it back to the cache.
+     * @param sql - The SQL
+     * @param owner - The connection that getConnection() of the statement should return
+     * @return the statement.
+     * @throws SQLException if the statement could not be prepared.
+     */
+    synchronized PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+        CachedStatement cached = statements.get(sql);
+        if (cached != null && !cached.inUse) {
+            hits.incrementAndGet();
+            cached.inUse = true;
+            return wrap(cached, owner);
+        }
+        misses.incrementAndGet();
+        if (cached != null) {
+            // The same SQL is already in use on this connection, by an enclosing caller: prepare an uncached copy.
+            return connection.prepareStatement(sql);
+        }
+        cached = new CachedStatement(sql, connection.prepareStatement(sql));
+        cached.inUse = true;
+        statements.put(sql, cached);
+        return wrap(cached, owner);
+    }
+
+    /**
+     * Gives a statement back to the cache, cleared for its next user.
+     */
+    private synchronized void giveBack(CachedStatement cached) {
+        cached.inUse = false;
+        if (cached.evicted) {
+            closeQuietly(cached.statement);
+            return;
+        }
+        try {
+            cached.statement.clearParameters();
+            cached.statement.clearBatch();
+            cached.statement.clearWarnings();
+        } catch (SQLException exception) {
+            statements.remove(cached.sql);
+            closeQuietly(cached.statement);
+        }
+    }
+
+    /**
+     * Closes all the cached statements.
+     */
+    synchronized void close() {
+        statements.values().forEach(cached -> closeQuietly(cached.statement));
+        statements.clear();
+    }
+
+    /**
+     * Wraps a cached statement so that closing it gives it back to the cache,
+     * after closing the last result set it produced.
+     */
+    private PreparedStatement wrap(CachedStatement cached, Connection owner) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean closed = false;
+            private ResultSet resultSet = null;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
+                switch (method.getName()) {
+                    case "close" -> {
+                        if (!closed) {
+                            closed = true;
+                            try {
+                                if (resultSet != null) {
+                                    resultSet.close();
+                                }
+                            } finally {
+                                giveBack(cached);
+                            }
+                        }
+                        return null;
+                    }
+                    case "isClosed" -> {
+                        return closed;
+                    }
+                    case "getConnection" -> {
+                        return owner;
+                    }
+                    case "equals" -> {
+                        return proxy == arguments[0];
+                    }
+                    case "hashCode" -> {
+                        return System.identityHashCode(proxy);
+                    }
+                    case "toString" -> {
+                        return "Cached " + cached.statement;
+                    }
+                }
+                if (closed) {
+                    throw new SQLException("Statement is closed");
+                }
+                try {
+                    Object result = method.invoke(cached.statement, arguments);
+                    if (result instanceof ResultSet set) {
+                        resultSet = set;
+                    }
+                    return result;
+                } catch (InvocationTargetException exception) {
+                    throw exception.getCause();
+                }
+            }
+        };
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, handler);
+    }
+}
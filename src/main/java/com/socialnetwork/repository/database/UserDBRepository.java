@@ -6,21 +6,23 @@ import com.socialnetwork.domain.validators.Validator;
 import com.socialnetwork.exceptions.CorruptedDataException;
 import com.socialnetwork.exceptions.RepositoryException;
 import com.socialnetwork.exceptions.ValidationException;
-import com.socialnetwork.repository.Repository;
+import com.socialnetwork.repository.UserRepository;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
-public class UserDBRepository implements Repository<User, Long> {
-    private final String url;
-    private final String username;
-    private final String password;
+public class UserDBRepository implements UserRepository {
+    private static final String INSERT_USER = "INSERT INTO users (id, username, password_code, salt, email) VALUES (?::int, ?, ?::int, ?, ?)";
+    private static final String DELETE_USER = "DELETE FROM users WHERE users.id = ?::int";
+    private static final String UPDATE_USER = "UPDATE users SET password_code = ?::int, salt = ?, email = ? WHERE users.id = ?::int";
+
+    private final ConnectionRouter connectionRouter;
 
     public UserDBRepository(String url, String username, String password) {
-        this.url = url;
-        this.username = username;
-        this.password = password;
+        this.connectionRouter = ConnectionRouter.getInstance(url, username, password);
     }
 
     /**
@@ -51,7 +53,7 @@ public class UserDBRepository implements Repository<User, Long> {
     @Override
     public int size() {
         String sql = "SELECT COUNT(*) AS size FROM users";
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = connectionRouter.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql);
              ResultSet resultSet = statement.executeQuery()) {
             resultSet.next();
@@ -66,7 +68,7 @@ public class UserDBRepository implements Repository<User, Long> {
     public List<User> getAll() {
         List<User> users = new ArrayList<>();
         String sql = "SELECT * FROM users";
-        try (Connection connection = DriverManager.getConnection(url, username, password);
+        try (Connection connection = connectionRouter.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(sql);
              ResultSet resultSet = statement.executeQuery()) {
             while (resultSet.next()) {
@@ -79,38 +81,108 @@ public class UserDBRepository implements Repository<User, Long> {
         return users;
     }
 
+    @Override
+    public Stream<User> stream() {
+        try {
+            Connection connection = connectionRouter.getReadConnection();
+            return ResultSetStream.query(connection, "SELECT * FROM users", statement -> {}, this::extractUser);
+        } catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        return Stream.empty();
+    }
+
+    @Override
+    public List<User> page(int offset, int limit) {
+        List<User> users = new ArrayList<>();
+        String sql = "SELECT * FROM users ORDER BY users.id LIMIT ? OFFSET ?";
+        try (Connection connection = connectionRouter.getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, limit);
+            statement.setInt(2, offset);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                users.add(extractUser(resultSet));
+            }
+        } catch (CorruptedDataException | SQLException exception) {
+            exception.printStackTrace();
+            System.exit(1);
+        }
+        return users;
+    }
+
+    private static void bindInsert(PreparedStatement statement, User entity) throws SQLException {
+        statement.setString(1, String.valueOf(entity.getID()));
+        statement.setString(2, entity.getUsername());
+        statement.setString(3, String.valueOf(entity.getPasswordCode()));
+        statement.setString(4, entity.getSalt());
+        statement.setString(5, entity.getEmail());
+    }
+
+    private static void bindDelete(PreparedStatement statement, User entity) throws SQLException {
+        statement.setString(1, String.valueOf(entity.getID()));
+    }
+
+    private static void bindUpdate(PreparedStatement statement, User entity) throws SQLException {
+        statement.setString(1, String.valueOf(entity.getPasswordCode()));
+        statement.setString(2, entity.getSalt());
+        statement.setString(3, entity.getEmail());
+        statement.setString(4, String.valueOf(entity.getID()));
+    }
+
     @Override
     public void add(User entity) throws RepositoryException {
-        String sql = "INSERT INTO users (id, username, password_code, salt, email) VALUES (?::int, ?, ?::int, ?, ?)";
-        try(Connection connection = DriverManager.getConnection(url, username, password);
-        PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, String.valueOf(entity.getID()));
-            statement.setString(2, entity.getUsername());
-            statement.setString(3, String.valueOf(entity.getPasswordCode()));
-            statement.setString(4, entity.getSalt());
-            statement.setString(5, entity.getEmail());
+        try(Connection connection = connectionRouter.getWriteConnection();
+        PreparedStatement statement = connection.prepareStatement(INSERT_USER)) {
+            bindInsert(statement, entity);
             statement.executeUpdate();
         } catch (SQLException exception) {
             throw new RepositoryException("User already exists!\n");
         }
     }
 
+    /**
+     * The bulk writes run as one transaction.
+     * @return true.
+     */
+    @Override
+    public boolean hasAtomicBulkWrites() {
+        return true;
+    }
+
+    @Override
+    public void addAll(Collection<User> entities) throws RepositoryException {
+        try (Connection connection = connectionRouter.getWriteConnection()) {
+            StatementBatch.execute(connection, INSERT_USER, entities, UserDBRepository::bindInsert);
+        } catch (SQLException exception) {
+            throw new RepositoryException("User already exists!\n");
+        }
+    }
+
     @Override
     public void remove(User entity) throws RepositoryException {
-        String sql = "DELETE FROM users WHERE users.id = ?::int";
-        try(Connection connection = DriverManager.getConnection(url, username, password);
-            PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, String.valueOf(entity.getID()));
+        try(Connection connection = connectionRouter.getWriteConnection();
+            PreparedStatement statement = connection.prepareStatement(DELETE_USER)) {
+            bindDelete(statement, entity);
             statement.executeUpdate();
         } catch (SQLException exception) {
             throw new RepositoryException("User does not exists!\n");
         }
     }
 
+    @Override
+    public void removeAll(Collection<User> entities) throws RepositoryException {
+        try (Connection connection = connectionRouter.getWriteConnection()) {
+            StatementBatch.execute(connection, DELETE_USER, entities, UserDBRepository::bindDelete);
+        } catch (SQLException exception) {
+            throw new RepositoryException("User does not exists!\n");
+        }
+    }
+
     @Override
     public User find(Long id) throws RepositoryException {
         String sql = "SELECT * FROM users WHERE users.id = ?::int";
-        try(Connection connection = DriverManager.getConnection(url, username, password);
+        try(Connection connection = connectionRouter.getReadConnection();
             PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setString(1, String.valueOf(id));
             ResultSet resultSet = statement.executeQuery();
@@ -130,16 +202,58 @@ public class UserDBRepository implements Repository<User, Long> {
 
     @Override
     public void update(User entity) throws RepositoryException {
-        String sql = "UPDATE users SET password_code = ?::int, salt = ?, email = ? WHERE users.id = ?::int";
-        try(Connection connection = DriverManager.getConnection(url, username, password);
-            PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, String.valueOf(entity.getPasswordCode()));
-            statement.setString(2, entity.getSalt());
-            statement.setString(3, entity.getEmail());
-            statement.setString(4, String.valueOf(entity.getID()));
+        try(Connection connection = connectionRouter.getWriteConnection();
+            PreparedStatement statement = connection.prepareStatement(UPDATE_USER)) {
+            bindUpdate(statement, entity);
             statement.executeUpdate();
         } catch (SQLException exception) {
             throw new RepositoryException("User does not exists!\n");
         }
     }
+
+    @Override
+    public void updateAll(Collection<User> entities) throws RepositoryException {
+        try (Connection connection = connectionRouter.getWriteConnection()) {
+            StatementBatch.execute(connection, UPDATE_USER, entities, UserDBRepository::bindUpdate);
+        } catch (SQLException exception) {
+            throw new RepositoryException("User does not exists!\n");
+        }
+    }
+
+    /**
+     * Finds a user by the value of a uniquely indexed column.
+     * @param column - The column, either "username" or "email"
+     * @param value - The value being looked for
+     * @return the user.
+     * @throws RepositoryException if the user has not been found.
+     */
+    private User findByUniqueColumn(String column, String value) throws RepositoryException {
+        String sql = "SELECT * FROM users WHERE users." + column + " = ?";
+        try(Connection connection = connectionRouter.getReadConnection();
+            PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, value);
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                throw new RepositoryException("Entity not found!\n");
+            }
+            return extractUser(resultSet);
+        } catch (CorruptedDataException exception) {
+            exception.printStackTrace();
+            System.exit(1);
+        }
+        catch (SQLException exception) {
+            exception.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public User findByUsername(String username) throws RepositoryException {
+        return findByUniqueColumn("username", username);
+    }
+
+    @Override
+    public User findByEmail(String email) throws RepositoryException {
+        return findByUniqueColumn("email", email);
+    }
 }
\ No newline at end of file
@@ -2,10 +2,17 @@ package com.socialnetwork.repository.factory;
 
 import com.socialnetwork.domain.Friendship;
 import com.socialnetwork.domain.User;
-import com.socialnetwork.repository.Repository;
+import com.socialnetwork.repository.FriendshipRepository;
+import com.socialnetwork.repository.UserRepository;
+import com.socialnetwork.repository.cache.CacheOptions;
+import com.socialnetwork.repository.cache.FriendshipCachingRepository;
 import com.socialnetwork.repository.database.FriendshipDBRepository;
+import com.socialnetwork.repository.file.FriendshipBinaryFileRepository;
 import com.socialnetwork.repository.file.FriendshipFileRepository;
-import com.socialnetwork.repository.memory.InMemoryRepository;
+import com.socialnetwork.repository.memory.FriendshipConcurrentRepository;
+import com.socialnetwork.repository.memory.FriendshipInMemoryRepository;
+import com.socialnetwork.repository.writebehind.FriendshipWriteBehindRepository;
+import com.socialnetwork.repository.writebehind.WriteBehindOptions;
 
 import java.util.Set;
 
@@ -19,9 +26,12 @@ public class FriendshipRepositoryFactory implements RepositoryFactory<Friendship
     }
 
     @Override
-    public Repository<Friendship, Set<User>> createRepository(RepositoryStrategy strategy, String fileName, String url, String username, String password) {
+    public FriendshipRepository createRepository(RepositoryStrategy strategy, String fileName, String url, String username, String password) {
         if (strategy.equals(RepositoryStrategy.memory)) {
-            return new InMemoryRepository<>();
+            return new FriendshipInMemoryRepository();
+        }
+        if (strategy.equals(RepositoryStrategy.concurrent)) {
+            return new FriendshipConcurrentRepository();
         }
         if (strategy.equals(RepositoryStrategy.file)) {
             return new FriendshipFileRepository(fileName);
@@ -31,4 +41,46 @@ public class FriendshipRepositoryFactory implements RepositoryFactory<Friendship
         }
         return null;
     }
+
+    /**
+     * Creates a Repository stored in a binary file, which references the Users by ID.
+     * @param fileName - The name of the binary file
+     * @param usersRepo - The repository the Users of the friendships are looked up in
+     * @return the created repository.
+     */
+    public FriendshipRepository createBinaryRepository(String fileName, UserRepository usersRepo) {
+        return new FriendshipBinaryFileRepository(fileName, usersRepo);
+    }
+
+    /**
+     * Creates a Repository of the given strategy with a read-through cache in front of it.
+     * @param strategy - The strategy of the cached repository
+     * @param fileName - The name of the file, for the file strategy
+     * @param url - The URL of the database, for the database strategy
+     * @param username - The username of the database
+     * @param password - The password of the database
+     * @param options - The size, time to live and eviction policy of the cache
+     * @return the caching repository, or null for an unknown strategy.
+     */
+    public FriendshipCachingRepository createCachingRepository(RepositoryStrategy strategy, String fileName, String url, String username, String password,
+                                                               CacheOptions options) {
+        FriendshipRepository repository = createRepository(strategy, fileName, url, username, password);
+        return repository == null ? null : new FriendshipCachingRepository(repository, options);
+    }
+
+    /**
+     * Creates a Repository of the given strategy whose writes are queued and applied in the background.
+     * @param strategy - The strategy of the repository the writes are applied to
+     * @param fileName - The name of the file, for the file strategy
+     * @param url - The URL of the database, for the database strategy
+     * @param username - The username of the database
+     * @param password - The password of the database
+     * @param options - The size of the queue and of the batches
+     * @return the write-behind repository, or null for an unknown strategy.
+     */
+    public FriendshipWriteBehindRepository createWriteBehindRepository(RepositoryStrategy strategy, String fileName, String url, String username, String password,
+                                                                       WriteBehindOptions options) {
+        FriendshipRepository repository = createRepository(strategy, fileName, url, username, password);
+        return repository == null ? null : new FriendshipWriteBehindRepository(repository, options);
+    }
 }
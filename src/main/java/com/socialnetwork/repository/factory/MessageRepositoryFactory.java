@@ -0,0 +1,53 @@
+package com.socialnetwork.repository.factory;
+
+import com.socialnetwork.domain.Message;
+import com.socialnetwork.repository.MessageRepository;
+import com.socialnetwork.repository.database.MessageDBRepository;
+import com.socialnetwork.repository.file.MessageFileRepository;
+import com.socialnetwork.repository.memory.MessageInMemoryRepository;
+import com.socialnetwork.repository.writebehind.MessageWriteBehindRepository;
+import com.socialnetwork.repository.writebehind.WriteBehindOptions;
+
+public class MessageRepositoryFactory implements RepositoryFactory<Message, Long> {
+    private static final MessageRepositoryFactory messageRepositoryFactory = new MessageRepositoryFactory();
+
+    private MessageRepositoryFactory() {}
+
+    public static MessageRepositoryFactory getInstance() {
+        return messageRepositoryFactory;
+    }
+
+    /**
+     * Creates a MessageRepository with the given strategy.
+     * For the "file" strategy, fileName is the directory that holds the message segments.
+     */
+    @Override
+    public MessageRepository createRepository(RepositoryStrategy strategy, String fileName, String url, String username, String password) {
+        if (strategy.equals(RepositoryStrategy.memory) || strategy.equals(RepositoryStrategy.concurrent)) {
+            return new MessageInMemoryRepository();
+        }
+        if (strategy.equals(RepositoryStrategy.file)) {
+            return new MessageFileRepository(fileName);
+        }
+        if (strategy.equals(RepositoryStrategy.database)) {
+            return new MessageDBRepository(url, username, password);
+        }
+        return null;
+    }
+
+    /**
+     * Creates a MessageRepository of the given strategy whose writes are queued and applied in the background.
+     * @param strategy - The strategy of the repository the writes are applied to
+     * @param fileName - The directory of the message segments, for the file strategy
+     * @param url - The URL of the database, for the database strategy
+     * @param username - The username of the database
+     * @param password - The password of the database
+     * @param options - The size of the queue and of the batches
+     * @return the write-behind repository, or null for an unknown strategy.
+     */
+    public MessageWriteBehindRepository createWriteBehindRepository(RepositoryStrategy strategy, String fileName, String url, String username, String password,
+                                                                    WriteBehindOptions options) {
+        MessageRepository repository = createRepository(strategy, fileName, url, username, password);
+        return repository == null ? null : new MessageWriteBehindRepository(repository, options);
+    }
+}
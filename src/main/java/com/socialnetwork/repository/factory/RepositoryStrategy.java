@@ -2,6 +2,7 @@ package com.socialnetwork.repository.factory;
 
 public enum RepositoryStrategy {
     memory,
+    concurrent,
     file,
     database
 }
@@ -1,10 +1,13 @@
 package com.socialnetwork.repository.factory;
 
 import com.socialnetwork.domain.User;
-import com.socialnetwork.repository.Repository;
+import com.socialnetwork.repository.UserRepository;
+import com.socialnetwork.repository.cache.CacheOptions;
+import com.socialnetwork.repository.cache.UserCachingRepository;
 import com.socialnetwork.repository.database.UserDBRepository;
 import com.socialnetwork.repository.file.UserFileRepository;
-import com.socialnetwork.repository.memory.InMemoryRepository;
+import com.socialnetwork.repository.memory.UserConcurrentRepository;
+import com.socialnetwork.repository.memory.UserInMemoryRepository;
 
 public class UserRepositoryFactory implements RepositoryFactory<User, Long> {
     private static final UserRepositoryFactory userRepositoryFactory = new UserRepositoryFactory();
@@ -16,9 +19,12 @@ public class UserRepositoryFactory implements RepositoryFactory<User, Long> {
     }
 
     @Override
-    public Repository<User, Long> createRepository(RepositoryStrategy strategy, String fileName, String url, String username, String password) {
+    public UserRepository createRepository(RepositoryStrategy strategy, String fileName, String url, String username, String password) {
         if (strategy.equals(RepositoryStrategy.memory)) {
-            return new InMemoryRepository<>();
+            return new UserInMemoryRepository();
+        }
+        if (strategy.equals(RepositoryStrategy.concurrent)) {
+            return new UserConcurrentRepository();
         }
         if (strategy.equals(RepositoryStrategy.file)) {
             return new UserFileRepository(fileName);
@@ -28,4 +34,20 @@ public class UserRepositoryFactory implements RepositoryFactory<User, Long> {
         }
         return null;
     }
+
+    /**
+     * Creates a Repository of the given strategy with a read-through cache in front of it.
+     * @param strategy - The strategy of the cached repository
+     * @param fileName - The name of the file, for the file strategy
+     * @param url - The URL of the database, for the database strategy
+     * @param username - The username of the database
+     * @param password - The password of the database
+     * @param options - The size, time to live and eviction policy of the cache
+     * @return the caching repository, or null for an unknown strategy.
+     */
+    public UserCachingRepository createCachingRepository(RepositoryStrategy strategy, String fileName, String url, String username, String password,
+                                                         CacheOptions options) {
+        UserRepository repository = createRepository(strategy, fileName, url, username, password);
+        return repository == null ? null : new UserCachingRepository(repository, options);
+    }
 }
@@ -7,40 +7,241 @@ import com.socialnetwork.exceptions.ValidationException;
 import com.socialnetwork.repository.memory.InMemoryRepository;
 
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * File repository kept in memory. With group commit or journaling, it runs background threads and keeps files open,
+ * so it should be closed once no longer used.
+ */
+public abstract class AbstractFileRepository<E extends Entity<ID>, ID> extends InMemoryRepository<E, ID> implements AutoCloseable {
+    /**
+     * What the file looked like when it was last read or written.
+     */
+    private record FileState(FileTime lastModified, long size, Object fileKey) {
+        static FileState of(Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new FileState(attributes.lastModifiedTime(), attributes.size(), attributes.fileKey());
+            } catch (IOException exception) {
+                return null;
+            }
+        }
+    }
+
+    // Journal records are "<operation>,<entity in string format>".
+    private static final String JOURNAL_ADD = "A";
+    private static final String JOURNAL_UPDATE = "U";
+    private static final String JOURNAL_REMOVE = "R";
 
-public abstract class AbstractFileRepository<E extends Entity<ID>, ID> extends InMemoryRepository<E, ID> {
     String fileName;
+    final FileRepositoryOptions options;
+    // Also written by the group-commit writers, after each batch.
+    private volatile FileState loadedState;
+    private volatile FileState loadedJournalState;
+    private int journalRecords;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final Object compactionLock = new Object();
+    private ExecutorService compactor;
+    // Null unless group commit is enabled.
+    private GroupCommitWriter dataWriter;
+    private GroupCommitWriter journalWriter;
 
     public AbstractFileRepository(String fileName) {
+        this(fileName, new FileRepositoryOptions());
+    }
+
+    public AbstractFileRepository(String fileName, FileRepositoryOptions options) {
         super();
         this.fileName = fileName;
+        this.options = options;
         loadData();
+        if (options.isGroupCommit()) {
+            try {
+                dataWriter = new GroupCommitWriter(Paths.get(fileName), options, this::markInSync);
+                if (options.isJournaled()) {
+                    journalWriter = new GroupCommitWriter(journalPath(), options, this::markInSync);
+                }
+            } catch (IOException exception) {
+                // Appends fall back to opening the file each time.
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    private Path journalPath() {
+        return Paths.get(fileName + ".journal");
     }
 
     /**
-     * Loads the data from file into memory.
+     * Loads the data from file into memory and, if the repository is journaled, replays the journal over it.
+     * With the onChange reload policy, the in-memory copy is kept as long as the files have not changed
+     * since they were last read or written.
      */
-    private void loadData() {
+    protected synchronized void loadData() {
         Path path = Paths.get(fileName);
+        if (isInSync()) {
+            return;
+        }
+        // Appends still being written are already in memory; they must reach the file before it is reread.
+        if (flushWriters() && isInSync()) {
+            return;
+        }
+        // Taken before reading, so that a change made while reading is picked up next time.
+        loadedState = FileState.of(path);
+        loadedJournalState = options.isJournaled() ? FileState.of(journalPath()) : null;
+        beforeLoad();
         try {
-            super.entities.clear();
-            List<String> lines = Files.readAllLines(path);
-            lines.forEach(line -> {
-                try {
-                    E entity = extractEntity(Arrays.asList(line.split(",")));
+            try {
+                super.clear();
+                // Lines are parsed in parallel; duplicates are caught when the entities are added, in file order.
+                List<E> loaded = ParallelFileLoader.load(path, this::extractEntity);
+                for (E entity : loaded) {
                     super.add(entity);
-                } catch (CorruptedDataException | ValidationException | RepositoryException exception) {
-                    exception.printStackTrace();
-                    System.exit(1);
                 }
-            });
+            } catch (IOException exception) {
+                exception.printStackTrace();
+            } catch (CorruptedDataException | ValidationException | RepositoryException exception) {
+                exception.printStackTrace();
+                System.exit(1);
+            }
+            if (options.isJournaled()) {
+                replayJournal();
+            }
+        } finally {
+            afterLoad();
+        }
+    }
+
+    /**
+     * Called before the files are read, from the thread that reads them; extractEntity() may then be called
+     * from several threads at once until afterLoad(). May run during construction, before the fields of
+     * subclasses are initialized.
+     */
+    protected void beforeLoad() {}
+
+    /**
+     * Called once the files have been read, to drop what was only needed while reading them.
+     */
+    protected void afterLoad() {}
+
+    /**
+     * Checks whether the in-memory copy can be kept, because the files did not change since they were
+     * last read or written and the reload policy allows it.
+     */
+    private boolean isInSync() {
+        FileState currentState = FileState.of(Paths.get(fileName));
+        FileState currentJournalState = options.isJournaled() ? FileState.of(journalPath()) : null;
+        return options.getReloadPolicy() == ReloadPolicy.onChange && currentState != null &&
+                currentState.equals(loadedState) && Objects.equals(currentJournalState, loadedJournalState);
+    }
+
+    /**
+     * Waits until the group-commit writers have written everything appended so far.
+     * @return true if there are group-commit writers.
+     */
+    private boolean flushWriters() {
+        if (dataWriter == null) {
+            return false;
+        }
+        dataWriter.flush();
+        if (journalWriter != null) {
+            journalWriter.flush();
+        }
+        return true;
+    }
+
+    /**
+     * Waits for appended entities to be written.
+     * @param written - The future of the append
+     */
+    private static void awaitWritten(CompletableFuture<Void> written) {
+        try {
+            written.join();
+        } catch (CompletionException exception) {
+            System.out.println("Data writing error.\n");
+            exception.getCause().printStackTrace();
+        }
+    }
+
+    /**
+     * Applies the journal records, in order, over the loaded snapshot. Adds and updates overwrite and removes
+     * of missing entities are ignored, so a journal that was not emptied after a compaction can be replayed
+     * over the new snapshot. Its early records may then give an entity a unique key that the snapshot gives
+     * to another one; that other entity is evicted, since it only took the key in a later record of the
+     * journal, whose replay puts it back.
+     */
+    private void replayJournal() {
+        journalRecords = 0;
+        Path journal = journalPath();
+        if (!Files.exists(journal)) {
+            return;
+        }
+        CsvRow row = new CsvRow();
+        try {
+            for (String line : Files.readAllLines(journal)) {
+                int separator = line.indexOf(',');
+                if (separator < 0) {
+                    throw new CorruptedDataException("Journal data is corrupted!\n");
+                }
+                E entity = extractEntity(row.reset(line, separator + 1, line.length()));
+                boolean present = super.entities.containsKey(entity.getID());
+                switch (line.substring(0, separator)) {
+                    case JOURNAL_ADD, JOURNAL_UPDATE -> {
+                        evictKeyOwners(entity);
+                        if (present) {
+                            super.update(entity);
+                        } else {
+                            super.add(entity);
+                        }
+                    }
+                    case JOURNAL_REMOVE -> {
+                        if (present) {
+                            super.remove(entity);
+                        }
+                    }
+                    default -> throw new CorruptedDataException("Journal data is corrupted!\n");
+                }
+                journalRecords++;
+            }
         } catch (IOException exception) {
             exception.printStackTrace();
+        } catch (CorruptedDataException | ValidationException | RepositoryException exception) {
+            exception.printStackTrace();
+            System.exit(1);
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    /**
+     * Writes entities to a file, replacing its content.
+     * @param path - The file
+     * @param entities - The entities to write
+     * @throws IOException if the file could not be written.
+     */
+    private void writeEntities(Path path, Collection<E> entities) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            for (E entity : entities) {
+                writer.write(entityToStringFormat(entity));
+                writer.newLine();
+            }
         }
     }
 
@@ -48,9 +249,37 @@ public abstract class AbstractFileRepository<E extends Entity<ID>, ID> extends I
      * Writes the data from memory to file.
      */
     private void writeData() {
+        // Otherwise appends still waiting to be written would be written a second time, after the new content.
+        flushWriters();
         try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(fileName));
-            for (E entity : super.entities) {
+            writeEntities(Paths.get(fileName), super.entities.values());
+        } catch (IOException exception) {
+            System.out.println("Data writing error.\n");
+            exception.printStackTrace();
+        }
+        markInSync();
+    }
+
+    /**
+     * Records that the in-memory copy matches the files as they are now, after writing to them.
+     */
+    private void markInSync() {
+        loadedState = FileState.of(Paths.get(fileName));
+        loadedJournalState = options.isJournaled() ? FileState.of(journalPath()) : null;
+    }
+
+    /**
+     * Appends entities to file, through the group-commit writer or opening the file only once.
+     * @param entities - The entities to append
+     * @return a future completed once the entities are written.
+     */
+    private CompletableFuture<Void> appendData(Collection<E> entities) {
+        if (dataWriter != null) {
+            return dataWriter.append(entities.stream().map(this::entityToStringFormat).toList());
+        }
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(fileName, true));
+            for (E entity : entities) {
                 writer.write(entityToStringFormat(entity));
                 writer.newLine();
             }
@@ -59,18 +288,195 @@ public abstract class AbstractFileRepository<E extends Entity<ID>, ID> extends I
             System.out.println("Data writing error.\n");
             exception.printStackTrace();
         }
+        markInSync();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Appends one journal record per entity, through the group-commit writer or opening the journal only once.
+     * @param operation - The journaled operation
+     * @param entities - The entities the operation was applied to
+     * @return a future completed once the records are written.
+     */
+    private CompletableFuture<Void> appendJournal(String operation, Collection<E> entities) {
+        journalRecords += entities.size();
+        if (journalWriter != null) {
+            CompletableFuture<Void> written = journalWriter.append(
+                    entities.stream().map(entity -> operation + "," + entityToStringFormat(entity)).toList());
+            scheduleCompactionIfNeeded();
+            return written;
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(journalPath().toString(), true))) {
+            for (E entity : entities) {
+                writer.write(operation + "," + entityToStringFormat(entity));
+                writer.newLine();
+            }
+        } catch (IOException exception) {
+            System.out.println("Data writing error.\n");
+            exception.printStackTrace();
+        }
+        markInSync();
+        scheduleCompactionIfNeeded();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Persists added entities: appended to the journal or to the data file.
+     */
+    private CompletableFuture<Void> persistAdded(Collection<E> entities) {
+        if (options.isJournaled()) {
+            return appendJournal(JOURNAL_ADD, entities);
+        }
+        return appendData(entities);
+    }
+
+    /**
+     * Persists updated entities: appended to the journal, or by rewriting the data file.
+     */
+    private CompletableFuture<Void> persistUpdated(Collection<E> entities) {
+        if (options.isJournaled()) {
+            return appendJournal(JOURNAL_UPDATE, entities);
+        }
+        writeData();
+        return CompletableFuture.completedFuture(null);
     }
 
     /**
-     * Appends an entity to file.
-     * @param entity - The entity to append
+     * Persists removed entities: appended to the journal, or by rewriting the data file.
      */
-    private void appendData(E entity) {
+    private CompletableFuture<Void> persistRemoved(Collection<E> entities) {
+        if (options.isJournaled()) {
+            return appendJournal(JOURNAL_REMOVE, entities);
+        }
+        writeData();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        if (journalRecords > options.getCompactionThreshold() && compactionScheduled.compareAndSet(false, true)) {
+            compactor().execute(() -> {
+                try {
+                    compact();
+                } finally {
+                    compactionScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    private synchronized ExecutorService compactor() {
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "compactor-" + Paths.get(fileName).getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return compactor;
+    }
+
+    /**
+     * Waits for a running compaction, stops the compaction thread, then writes what the group-commit writers
+     * have pending and closes their files. The repository can still be used afterwards: writes then open
+     * the files each time, and a compaction starts a new thread.
+     */
+    @Override
+    public void close() {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = compactor;
+            compactor = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            close(dataWriter);
+            close(journalWriter);
+            dataWriter = null;
+            journalWriter = null;
+        }
+    }
+
+    private static void close(GroupCommitWriter writer) {
+        if (writer == null) {
+            return;
+        }
         try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(fileName, true));
-            writer.write(entityToStringFormat(entity));
-            writer.newLine();
             writer.close();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Moves a file over another one, atomically where the file system allows it.
+     */
+    private static void replaceFile(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Folds the journal into the data file: writes a new snapshot of the data and empties the journal.
+     * The snapshot is written without holding the repository lock; records journaled in the meantime
+     * are kept in the journal.
+     */
+    public void compact() {
+        if (!options.isJournaled()) {
+            return;
+        }
+        synchronized (compactionLock) {
+            compactOnce();
+        }
+    }
+
+    private void compactOnce() {
+        List<E> snapshot;
+        long journalOffset;
+        int compactedRecords;
+        synchronized (this) {
+            loadData();
+            snapshot = new ArrayList<>(super.entities.values());
+            compactedRecords = journalRecords;
+            try {
+                journalOffset = Files.exists(journalPath()) ? Files.size(journalPath()) : 0;
+            } catch (IOException exception) {
+                exception.printStackTrace();
+                return;
+            }
+        }
+
+        Path data = Paths.get(fileName);
+        Path temporaryData = Paths.get(fileName + ".compacting");
+        Path temporaryJournal = Paths.get(fileName + ".journal.compacting");
+        try {
+            writeEntities(temporaryData, snapshot);
+            synchronized (this) {
+                flushWriters();
+                byte[] journal = Files.exists(journalPath()) ? Files.readAllBytes(journalPath()) : new byte[0];
+                // Replaying a journal over a newer snapshot is harmless,
+                // so if the journal was rewritten by someone else it is kept whole.
+                int tail = journalOffset <= journal.length ? (int) journalOffset : 0;
+                Files.write(temporaryJournal, Arrays.copyOfRange(journal, tail, journal.length));
+                // If the process dies between the two moves, the old journal is replayed over the new snapshot.
+                replaceFile(temporaryData, data);
+                replaceFile(temporaryJournal, journalPath());
+                if (dataWriter != null) {
+                    dataWriter.reopen();
+                    journalWriter.reopen();
+                }
+                journalRecords -= compactedRecords;
+                markInSync();
+            }
         } catch (IOException exception) {
             System.out.println("Data writing error.\n");
             exception.printStackTrace();
@@ -79,11 +485,11 @@ public abstract class AbstractFileRepository<E extends Entity<ID>, ID> extends I
 
     /**
      * Gets a concrete Entity, being given its attributes.
-     * @param attributes - The attributes of the Entity as a List of String
+     * @param attributes - The attributes of the Entity, as a tokenized row; only valid during the call
      * @return the Entity with the given attributes.
      * @throws CorruptedDataException if the data read from file is corrupted.
      */
-    public abstract E extractEntity(List<String> attributes) throws CorruptedDataException, ValidationException;
+    public abstract E extractEntity(CsvRow attributes) throws CorruptedDataException, ValidationException;
 
     /**
      * Writes the Entity in a String format where the attributes are each separated by ','
@@ -93,41 +499,97 @@ public abstract class AbstractFileRepository<E extends Entity<ID>, ID> extends I
     public abstract String entityToStringFormat(E e);
 
     @Override
-    public int size() {
+    public synchronized int size() {
         loadData();
         return super.size();
     }
 
     @Override
-    public List<E> getAll() {
+    public synchronized List<E> getAll() {
         loadData();
         return super.getAll();
     }
 
+    /**
+     * Streams a copy of the in-memory data, taken under the lock: the data file may be rewritten in place
+     * while the stream is read, and a journaled repository's data file alone is not up to date.
+     * @return a stream of the entities.
+     */
+    @Override
+    public Stream<E> stream() {
+        return getAll().stream();
+    }
+
     @Override
     public void add(E e) throws RepositoryException {
-        loadData();
-        super.add(e);
-        appendData(e);
+        CompletableFuture<Void> written;
+        synchronized (this) {
+            loadData();
+            super.add(e);
+            written = persistAdded(List.of(e));
+        }
+        // Waiting outside the lock lets concurrent appends join the same batch.
+        awaitWritten(written);
+    }
+
+    @Override
+    public void addAll(Collection<E> entities) throws RepositoryException {
+        CompletableFuture<Void> written;
+        synchronized (this) {
+            loadData();
+            super.addAll(entities);
+            written = persistAdded(entities);
+        }
+        awaitWritten(written);
+    }
+
+    @Override
+    public void removeAll(Collection<E> entities) throws RepositoryException {
+        CompletableFuture<Void> written;
+        synchronized (this) {
+            loadData();
+            super.removeAll(entities);
+            written = persistRemoved(entities);
+        }
+        awaitWritten(written);
+    }
+
+    @Override
+    public void updateAll(Collection<E> entities) throws RepositoryException {
+        CompletableFuture<Void> written;
+        synchronized (this) {
+            loadData();
+            super.updateAll(entities);
+            written = persistUpdated(entities);
+        }
+        awaitWritten(written);
     }
 
     @Override
     public void remove(E e) throws RepositoryException {
-        loadData();
-        super.remove(e);
-        writeData();
+        CompletableFuture<Void> written;
+        synchronized (this) {
+            loadData();
+            super.remove(e);
+            written = persistRemoved(List.of(e));
+        }
+        awaitWritten(written);
     }
 
     @Override
-    public E find(ID id) throws RepositoryException {
+    public synchronized E find(ID id) throws RepositoryException {
         loadData();
         return super.find(id);
     }
 
     @Override
     public void update(E e) throws RepositoryException {
-        loadData();
-        super.update(e);
-        writeData();
+        CompletableFuture<Void> written;
+        synchronized (this) {
+            loadData();
+            super.update(e);
+            written = persistUpdated(List.of(e));
+        }
+        awaitWritten(written);
     }
 }
@@ -0,0 +1,186 @@
+package com.socialnetwork.repository.file;
+
+import com.socialnetwork.exceptions.CorruptedDataException;
+
+import java.util.Arrays;
+
+/**
+ * A line of a data file, split into its ','-separated fields without copying it.
+ * A row is reused from one line to the next: reset() tokenizes a new line in place, and fields are
+ * only turned into Strings or parsed as numbers when they are read.
+ * A row must not be shared between threads.
+ */
+public class CsvRow {
+    private CharSequence line;
+    // The field i spans [starts[i], ends[i]) of the line.
+    private int[] starts;
+    private int[] ends;
+    private int size;
+
+    public CsvRow() {
+        starts = new int[16];
+        ends = new int[16];
+    }
+
+    /**
+     * Tokenizes a whole line.
+     * @param line - The line, without the line separator
+     * @return this row.
+     */
+    public CsvRow reset(CharSequence line) {
+        return reset(line, 0, line.length());
+    }
+
+    /**
+     * Tokenizes a part of a buffer.
+     * @param buffer - The buffer holding the line
+     * @param start - The index of the first character of the line
+     * @param end - The index after the last character of the line
+     * @return this row.
+     */
+    public CsvRow reset(CharSequence buffer, int start, int end) {
+        line = buffer;
+        size = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || buffer.charAt(i) == ',') {
+                if (size == starts.length) {
+                    starts = Arrays.copyOf(starts, size * 2);
+                    ends = Arrays.copyOf(ends, size * 2);
+                }
+                starts[size] = fieldStart;
+                ends[size] = i;
+                size++;
+                fieldStart = i + 1;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Gets the number of fields.
+     * @return the size.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void checkIndex(int index) throws CorruptedDataException {
+        if (index < 0 || index >= size) {
+            throw new CorruptedDataException("File data is corrupted!\n");
+        }
+    }
+
+    /**
+     * Gets a field as a String.
+     * @param index - The index of the field
+     * @return the field.
+     * @throws CorruptedDataException if there is no such field.
+     */
+    public String getString(int index) throws CorruptedDataException {
+        checkIndex(index);
+        return line.subSequence(starts[index], ends[index]).toString();
+    }
+
+    /**
+     * Gets a field as a view of the line, for parsers that take a CharSequence.
+     * @param index - The index of the field
+     * @return the field.
+     * @throws CorruptedDataException if there is no such field.
+     */
+    public CharSequence getSequence(int index) throws CorruptedDataException {
+        checkIndex(index);
+        return line.subSequence(starts[index], ends[index]);
+    }
+
+    /**
+     * Checks whether a field is equal to a String, without copying the field.
+     * @param index - The index of the field
+     * @param value - The String
+     * @return true if they are equal.
+     * @throws CorruptedDataException if there is no such field.
+     */
+    public boolean fieldEquals(int index, String value) throws CorruptedDataException {
+        checkIndex(index);
+        int length = ends[index] - starts[index];
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(starts[index] + i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets a field as one of the constants of an enum, by name.
+     * @param index - The index of the field
+     * @param values - The constants of the enum
+     * @return the constant.
+     * @throws CorruptedDataException if there is no such field or no constant with that name.
+     */
+    public <T extends Enum<T>> T getEnum(int index, T[] values) throws CorruptedDataException {
+        for (T value : values) {
+            if (fieldEquals(index, value.name())) {
+                return value;
+            }
+        }
+        throw new CorruptedDataException("File data is corrupted!\n");
+    }
+
+    /**
+     * Parses a field as a long, in place.
+     * @param index - The index of the field
+     * @return the number.
+     * @throws CorruptedDataException if there is no such field or it is not a number.
+     */
+    public long getLong(int index) throws CorruptedDataException {
+        checkIndex(index);
+        int i = starts[index];
+        int end = ends[index];
+        boolean negative = i < end && line.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end) {
+            throw new CorruptedDataException("File data is corrupted!\n");
+        }
+        // Accumulated as a negative number, so that Long.MIN_VALUE can be parsed.
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+                throw new CorruptedDataException("File data is corrupted!\n");
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                throw new CorruptedDataException("File data is corrupted!\n");
+            }
+            result = -result;
+        }
+        return result;
+    }
+
+    /**
+     * Parses a field as an int, in place.
+     * @param index - The index of the field
+     * @return the number.
+     * @throws CorruptedDataException if there is no such field or it is not an int.
+     */
+    public int getInt(int index) throws CorruptedDataException {
+        long result = getLong(index);
+        if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+            throw new CorruptedDataException("File data is corrupted!\n");
+        }
+        return (int) result;
+    }
+
+    @Override
+    public String toString() {
+        return size == 0 ? "" : line.subSequence(starts[0], ends[size - 1]).toString();
+    }
+}
@@ -0,0 +1,13 @@
+package com.socialnetwork.repository.file;
+
+/**
+ * When the group-commit writer of a file repository forces written data to the storage device.
+ */
+public enum DurabilityMode {
+    // Never: data is handed to the operating system and written back whenever it decides.
+    none,
+    // Once per batch of coalesced appends.
+    batch,
+    // After each append, even within a batch.
+    operation
+}
@@ -0,0 +1,71 @@
+package com.socialnetwork.repository.file;
+
+public class FileRepositoryOptions {
+    private ReloadPolicy reloadPolicy = ReloadPolicy.onChange;
+    // If true, changes are appended to a journal file next to the data file instead of rewriting it.
+    private boolean journaled = false;
+    // The number of journal records after which the journal is folded into the data file.
+    private int compactionThreshold = 1000;
+    // If true, appends go through one open file per repository and concurrent appends are written together.
+    private boolean groupCommit = false;
+    private DurabilityMode durability = DurabilityMode.batch;
+    // A batch is written once it holds this many appends, or once the first of them has waited this long.
+    private int groupCommitBatchSize = 256;
+    private long groupCommitDelayMillis = 1;
+
+    public ReloadPolicy getReloadPolicy() {
+        return reloadPolicy;
+    }
+
+    public void setReloadPolicy(ReloadPolicy reloadPolicy) {
+        this.reloadPolicy = reloadPolicy;
+    }
+
+    public boolean isJournaled() {
+        return journaled;
+    }
+
+    public void setJournaled(boolean journaled) {
+        this.journaled = journaled;
+    }
+
+    public int getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    public void setCompactionThreshold(int compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    public boolean isGroupCommit() {
+        return groupCommit;
+    }
+
+    public void setGroupCommit(boolean groupCommit) {
+        this.groupCommit = groupCommit;
+    }
+
+    public DurabilityMode getDurability() {
+        return durability;
+    }
+
+    public void setDurability(DurabilityMode durability) {
+        this.durability = durability;
+    }
+
+    public int getGroupCommitBatchSize() {
+        return groupCommitBatchSize;
+    }
+
+    public void setGroupCommitBatchSize(int groupCommitBatchSize) {
+        this.groupCommitBatchSize = groupCommitBatchSize;
+    }
+
+    public long getGroupCommitDelayMillis() {
+        return groupCommitDelayMillis;
+    }
+
+    public void setGroupCommitDelayMillis(long groupCommitDelayMillis) {
+        this.groupCommitDelayMillis = groupCommitDelayMillis;
+    }
+}
@@ -0,0 +1,324 @@
+package com.socialnetwork.repository.file;
+
+import com.socialnetwork.domain.Friendship;
+import com.socialnetwork.domain.FriendshipStatus;
+import com.socialnetwork.domain.User;
+import com.socialnetwork.exceptions.CorruptedDataException;
+import com.socialnetwork.exceptions.RepositoryException;
+import com.socialnetwork.repository.FriendshipRepository;
+import com.socialnetwork.repository.UserRepository;
+import com.socialnetwork.repository.memory.FriendshipIndex;
+import com.socialnetwork.repository.memory.InMemoryRepository;
+import com.socialnetwork.utils.LongHashMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Friendship repository stored in a binary file that references the Users by ID.
+ * After a 4-byte header, the file holds one fixed-size record per Friendship:
+ * the IDs of the two Users (8 bytes each), the status (1 byte) and the date, in epoch seconds (8 bytes).
+ * The Users are resolved from the user repository when the file is loaded.
+ * Because records have a fixed size, updates are written in place and removals move the last record
+ * into the freed slot, so no change rewrites the whole file. The file is opened for each change, so no
+ * file handle is held between changes.
+ * The file is read once, when the repository is created; it should not be changed by anyone else meanwhile.
+ */
+public class FriendshipBinaryFileRepository extends InMemoryRepository<Friendship, Set<User>> implements FriendshipRepository {
+    static final int MAGIC = 0x534E4631; // "SNF1"
+    static final int HEADER_SIZE = 4;
+    static final int RECORD_SIZE = 8 + 8 + 1 + 8;
+
+    private static final FriendshipStatus[] STATUSES = FriendshipStatus.values();
+
+    /**
+     * Changes the file through an open channel.
+     */
+    private interface FileChange {
+        void apply(FileChannel channel) throws IOException;
+    }
+
+    private final UserRepository usersRepo;
+    private final Path path;
+    // The Friendship stored in each record slot of the file, and the slot of each Friendship.
+    private final List<Set<User>> slots;
+    private final Map<Set<User>, Integer> slotOf;
+    private final FriendshipIndex friendshipIndex;
+
+    /**
+     * Opens the file, creating it if needed, and loads the friendships.
+     * @param fileName - The name of the binary file
+     * @param usersRepo - The repository the Users of the friendships are looked up in
+     */
+    public FriendshipBinaryFileRepository(String fileName, UserRepository usersRepo) {
+        super();
+        this.usersRepo = usersRepo;
+        this.slots = new ArrayList<>();
+        this.slotOf = new HashMap<>();
+        this.friendshipIndex = addSecondaryIndex(new FriendshipIndex());
+        this.path = Paths.get(fileName);
+        try (FileChannel channel = open()) {
+            loadData(channel);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        } catch (CorruptedDataException | RepositoryException exception) {
+            exception.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Opens the file, applies a change to it and closes it again.
+     * @param change - The change
+     */
+    private void change(FileChange change) {
+        try (FileChannel channel = open()) {
+            change.apply(channel);
+        } catch (IOException exception) {
+            System.out.println("Data writing error.\n");
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the file header.
+     * @param buffer - The buffer to write to
+     */
+    static void writeHeader(ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+    }
+
+    /**
+     * Writes a Friendship as a record.
+     * @param buffer - The buffer to write to
+     * @param friendship - The Friendship
+     */
+    static void writeRecord(ByteBuffer buffer, Friendship friendship) {
+        buffer.putLong(friendship.getU1().getID());
+        buffer.putLong(friendship.getU2().getID());
+        buffer.put((byte) friendship.getStatus().ordinal());
+        buffer.putLong(friendship.getFriendsFrom().toEpochSecond(ZoneOffset.UTC));
+    }
+
+    private void loadData(FileChannel channel) throws IOException, CorruptedDataException, RepositoryException {
+        long size = channel.size();
+        if (size == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            writeHeader(header);
+            header.flip();
+            channel.write(header, 0);
+            return;
+        }
+        if (size < HEADER_SIZE || (size - HEADER_SIZE) % RECORD_SIZE != 0) {
+            throw new CorruptedDataException("File data is corrupted!\n");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, RECORD_SIZE * 4096L));
+        readFully(channel, buffer, 0);
+        if (buffer.getInt() != MAGIC) {
+            throw new CorruptedDataException("File data is corrupted!\n");
+        }
+        // Each User is looked up once per load, however many friendships it has.
+        LongHashMap<User> users = new LongHashMap<>();
+        long position = HEADER_SIZE;
+        while (position < size) {
+            if (buffer.remaining() < RECORD_SIZE) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), size - position));
+                readFully(channel, buffer, position);
+            }
+            Friendship friendship = readRecord(buffer, users);
+            super.add(friendship);
+            slotOf.put(friendship.getID(), slots.size());
+            slots.add(friendship.getID());
+            position += RECORD_SIZE;
+        }
+    }
+
+    private Friendship readRecord(ByteBuffer buffer, LongHashMap<User> users) throws CorruptedDataException {
+        User u1 = resolveUser(buffer.getLong(), users);
+        User u2 = resolveUser(buffer.getLong(), users);
+        int status = buffer.get();
+        if (status < 0 || status >= STATUSES.length) {
+            throw new CorruptedDataException("File data is corrupted!\n");
+        }
+        LocalDateTime friendsFrom = LocalDateTime.ofEpochSecond(buffer.getLong(), 0, ZoneOffset.UTC);
+        return new Friendship(u1, u2, friendsFrom, STATUSES[status]);
+    }
+
+    private User resolveUser(long id, LongHashMap<User> users) throws CorruptedDataException {
+        User user = users.get(id);
+        if (user == null) {
+            try {
+                user = usersRepo.find(id);
+            } catch (RepositoryException exception) {
+                throw new CorruptedDataException("File data is corrupted: unknown user " + id + "!\n");
+            }
+            users.put(id, user);
+        }
+        return user;
+    }
+
+    /**
+     * Fills the buffer from the given position of the file, then flips it.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static long offsetOf(int slot) {
+        return HEADER_SIZE + (long) slot * RECORD_SIZE;
+    }
+
+    private static void checkFriendship(Friendship friendship) throws RepositoryException {
+        if (friendship.getU1().equals(friendship.getU2())) {
+            throw new RepositoryException("Invalid friendship!\n");
+        }
+    }
+
+    /**
+     * Appends the records of the friendships to the end of the file, in one write.
+     */
+    private void appendRecords(FileChannel channel, Collection<Friendship> friendships) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(friendships.size() * RECORD_SIZE);
+        for (Friendship friendship : friendships) {
+            writeRecord(buffer, friendship);
+            slotOf.put(friendship.getID(), slots.size());
+            slots.add(friendship.getID());
+        }
+        buffer.flip();
+        writeFully(channel, buffer, offsetOf(slots.size() - friendships.size()));
+    }
+
+    /**
+     * Overwrites the record of a Friendship in place.
+     */
+    private void overwriteRecord(FileChannel channel, Friendship friendship) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        writeRecord(buffer, friendship);
+        buffer.flip();
+        writeFully(channel, buffer, offsetOf(slotOf.get(friendship.getID())));
+    }
+
+    /**
+     * Removes the record of a Friendship by moving the last record into its slot and shortening the file.
+     */
+    private void deleteRecord(FileChannel channel, Friendship friendship) throws IOException {
+        int slot = slotOf.remove(friendship.getID());
+        int last = slots.size() - 1;
+        Set<User> moved = slots.remove(last);
+        if (slot != last) {
+            slots.set(slot, moved);
+            slotOf.put(moved, slot);
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+            readFully(channel, buffer, offsetOf(last));
+            writeFully(channel, buffer, offsetOf(slot));
+        }
+        channel.truncate(offsetOf(last));
+    }
+
+    /**
+     * Adds a Friendship object to the Repository.
+     * @param friendship - the Friendship to be added
+     * @throws RepositoryException if both Users of the Friendship are the same.
+     */
+    @Override
+    public synchronized void add(Friendship friendship) throws RepositoryException {
+        checkFriendship(friendship);
+        super.add(friendship);
+        change(channel -> appendRecords(channel, List.of(friendship)));
+    }
+
+    @Override
+    public synchronized void addAll(Collection<Friendship> friendships) throws RepositoryException {
+        for (Friendship friendship : friendships) {
+            checkFriendship(friendship);
+        }
+        super.addAll(friendships);
+        change(channel -> appendRecords(channel, friendships));
+    }
+
+    @Override
+    public synchronized void remove(Friendship friendship) throws RepositoryException {
+        super.remove(friendship);
+        change(channel -> deleteRecord(channel, friendship));
+    }
+
+    @Override
+    public synchronized void removeAll(Collection<Friendship> friendships) throws RepositoryException {
+        super.removeAll(friendships);
+        change(channel -> {
+            for (Friendship friendship : friendships) {
+                deleteRecord(channel, friendship);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void update(Friendship friendship) throws RepositoryException {
+        super.update(friendship);
+        change(channel -> overwriteRecord(channel, friendship));
+    }
+
+    @Override
+    public synchronized void updateAll(Collection<Friendship> friendships) throws RepositoryException {
+        super.updateAll(friendships);
+        change(channel -> {
+            for (Friendship friendship : friendships) {
+                overwriteRecord(channel, friendship);
+            }
+        });
+    }
+
+    @Override
+    public synchronized int size() {
+        return super.size();
+    }
+
+    @Override
+    public synchronized List<Friendship> getAll() {
+        return super.getAll();
+    }
+
+    @Override
+    public synchronized Friendship find(Set<User> id) throws RepositoryException {
+        return super.find(id);
+    }
+
+    @Override
+    public synchronized List<Friendship> getAllOf(User user) {
+        return friendshipIndex.getAllOf(user);
+    }
+
+    @Override
+    public synchronized boolean exists(User u1, User u2) {
+        return friendshipIndex.exists(u1, u2);
+    }
+}
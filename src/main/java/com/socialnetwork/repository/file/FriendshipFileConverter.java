@@ -0,0 +1,55 @@
+package com.socialnetwork.repository.file;
+
+import com.socialnetwork.domain.Friendship;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Converts friendship files from the CSV format of FriendshipFileRepository
+ * to the binary format of FriendshipBinaryFileRepository.
+ */
+public class FriendshipFileConverter {
+    private FriendshipFileConverter() {}
+
+    /**
+     * Writes the friendships of a CSV file to a binary file, replacing its content.
+     * The Users are not copied: the binary file only references them by ID.
+     * @param csvFileName - The name of the CSV file
+     * @param binaryFileName - The name of the binary file
+     * @throws IOException if the binary file could not be written.
+     */
+    public static void csvToBinary(String csvFileName, String binaryFileName) throws IOException {
+        List<Friendship> friendships = new FriendshipFileRepository(csvFileName).getAll();
+        ByteBuffer buffer = ByteBuffer.allocate(FriendshipBinaryFileRepository.HEADER_SIZE +
+                friendships.size() * FriendshipBinaryFileRepository.RECORD_SIZE);
+        FriendshipBinaryFileRepository.writeHeader(buffer);
+        for (Friendship friendship : friendships) {
+            FriendshipBinaryFileRepository.writeRecord(buffer, friendship);
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(Paths.get(binaryFileName),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: FriendshipFileConverter <friendships.csv> <friendships.bin>");
+            return;
+        }
+        try {
+            csvToBinary(args[0], args[1]);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
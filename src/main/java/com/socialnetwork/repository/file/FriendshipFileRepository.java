@@ -8,15 +8,46 @@ import com.socialnetwork.domain.validators.Validator;
 import com.socialnetwork.exceptions.CorruptedDataException;
 import com.socialnetwork.exceptions.RepositoryException;
 import com.socialnetwork.exceptions.ValidationException;
+import com.socialnetwork.repository.FriendshipRepository;
+import com.socialnetwork.repository.memory.FriendshipIndex;
+import com.socialnetwork.repository.memory.UserIdentityMap;
 import com.socialnetwork.utils.Constants;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
-public class FriendshipFileRepository extends AbstractFileRepository<Friendship, Set<User>> {
+public class FriendshipFileRepository extends AbstractFileRepository<Friendship, Set<User>> implements FriendshipRepository {
+    // Stateless, so one instance is shared by all the rows read outside of a load.
+    private static final Validator<User> userValidator = new UserValidator();
+    private static final FriendshipStatus[] STATUSES = FriendshipStatus.values();
+
+    private final FriendshipIndex friendshipIndex;
+    // The Users read during the current load, or null outside of a load. Not initialized here,
+    // because the first load runs in the constructor of the superclass.
+    private UserIdentityMap loadedUsers;
+
     public FriendshipFileRepository(String fileName) {
         super(fileName);
+        friendshipIndex = addSecondaryIndex(new FriendshipIndex());
+    }
+
+    public FriendshipFileRepository(String fileName, FileRepositoryOptions options) {
+        super(fileName, options);
+        friendshipIndex = addSecondaryIndex(new FriendshipIndex());
+    }
+
+    @Override
+    public synchronized List<Friendship> getAllOf(User user) {
+        loadData();
+        return friendshipIndex.getAllOf(user);
+    }
+
+    @Override
+    public synchronized boolean exists(User u1, User u2) {
+        loadData();
+        return friendshipIndex.exists(u1, u2);
     }
 
     /**
@@ -32,19 +63,57 @@ public class FriendshipFileRepository extends AbstractFileRepository<Friendship,
         super.add(friendship);
     }
 
+    /**
+     * Adds several Friendship objects to the Repository at once.
+     * @param friendships - the Friendships to be added
+     * @throws RepositoryException if both Users of one of the Friendships are the same.
+     */
+    @Override
+    public void addAll(Collection<Friendship> friendships) throws RepositoryException {
+        for (Friendship friendship : friendships) {
+            if (friendship.getU1().equals(friendship.getU2())) {
+                throw new RepositoryException("Invalid friendship!\n");
+            }
+        }
+        super.addAll(friendships);
+    }
+
+    @Override
+    protected void beforeLoad() {
+        loadedUsers = new UserIdentityMap();
+    }
+
+    @Override
+    protected void afterLoad() {
+        loadedUsers = null;
+    }
+
+    /**
+     * Gets a User of a row, shared with the other rows of the load if there is one.
+     */
+    private User extractUser(CsvRow attributes, int first) throws CorruptedDataException, ValidationException {
+        UserIdentityMap users = loadedUsers;
+        if (users != null) {
+            return users.resolve(attributes.getLong(first), attributes.getString(first + 1), attributes.getInt(first + 2),
+                    attributes.getString(first + 3), attributes.getString(first + 4));
+        }
+        User user = new User(attributes.getString(first + 1), attributes.getInt(first + 2), attributes.getString(first + 3),
+                attributes.getString(first + 4));
+        user.setID(attributes.getLong(first));
+        userValidator.validate(user);
+        return user;
+    }
+
     @Override
-    public Friendship extractEntity(List<String> attributes) throws CorruptedDataException, ValidationException {
-        if (attributes.size() != 12) {
+    public Friendship extractEntity(CsvRow attributes) throws CorruptedDataException, ValidationException {
+        // Older files have no status column; the friendships in them are all accepted.
+        if (attributes.size() != 11 && attributes.size() != 12) {
             throw new CorruptedDataException("File data is corrupted!\n");
         }
-        Validator<User> userValidator = new UserValidator();
-        User u1 = new User(attributes.get(1), Integer.parseInt(attributes.get(2)), attributes.get(3), attributes.get(4));
-        u1.setID(Long.parseLong(attributes.get(0)));
-        userValidator.validate(u1);
-        User u2 = new User(attributes.get(6), Integer.parseInt(attributes.get(7)), attributes.get(8), attributes.get(9));
-        u2.setID(Long.parseLong(attributes.get(5)));
-        userValidator.validate(u2);
-        return new Friendship(u1, u2 , LocalDateTime.parse(attributes.get(10), Constants.DATE_TIME_FORMATTER), FriendshipStatus.valueOf(attributes.get(11)));
+        User u1 = extractUser(attributes, 0);
+        User u2 = extractUser(attributes, 5);
+        FriendshipStatus status = attributes.size() == 12 ? attributes.getEnum(11, STATUSES) : FriendshipStatus.accepted;
+        return new Friendship(u1, u2 , LocalDateTime.parse(attributes.getSequence(10), Constants.DATE_TIME_FORMATTER), status);
     }
 
     @Override
@@ -53,6 +122,6 @@ public class FriendshipFileRepository extends AbstractFileRepository<Friendship,
         User u2 = friendship.getU2();
         return u1.getID() + "," + u1.getUsername() + "," + u1.getPasswordCode() + "," + u1.getSalt() + "," + u1.getEmail() + "," +
                 u2.getID() + "," + u2.getUsername() + "," + u2.getPasswordCode() + "," + u2.getSalt() + "," + u2.getEmail() + "," +
-                friendship.getFriendsFrom().format(Constants.DATE_TIME_FORMATTER);
+                friendship.getFriendsFrom().format(Constants.DATE_TIME_FORMATTER) + "," + friendship.getStatus();
     }
 }
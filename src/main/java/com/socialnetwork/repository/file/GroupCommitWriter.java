@@ -0,0 +1,203 @@
+package com.socialnetwork.repository.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends lines to a file that is kept open, from a single background thread.
+ * Appends submitted while the previous batch is being written are coalesced into the next batch,
+ * which is written in one call and, depending on the durability mode, forced to the device once.
+ * Must be closed once no longer used, to stop the thread and close the file.
+ */
+class GroupCommitWriter implements AutoCloseable {
+    /**
+     * Lines waiting to be appended, and the future completed once they are written.
+     */
+    private record Request(byte[] data, CompletableFuture<Void> written) {}
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final Path path;
+    private final DurabilityMode durability;
+    private final int batchSize;
+    private final long delayNanos;
+    private final Runnable afterBatch;
+    private final BlockingQueue<Request> queue;
+    private final Object channelLock = new Object();
+    private final Thread thread;
+    private FileChannel channel;
+    // Guarded by the writer itself; appends made once it is set fail.
+    private boolean closed = false;
+
+    /**
+     * Opens the file for appending and starts the writing thread.
+     * @param path - The file
+     * @param options - The durability and batching options
+     * @param afterBatch - Called on the writing thread after each batch is written
+     * @throws IOException if the file could not be opened.
+     */
+    GroupCommitWriter(Path path, FileRepositoryOptions options, Runnable afterBatch) throws IOException {
+        this.path = path;
+        this.durability = options.getDurability();
+        this.batchSize = Math.max(1, options.getGroupCommitBatchSize());
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(options.getGroupCommitDelayMillis());
+        this.afterBatch = afterBatch;
+        this.queue = new LinkedBlockingQueue<>();
+        this.channel = open(path);
+
+        this.thread = new Thread(this::run, "group-commit-" + path.getFileName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Queues lines to be appended to the file.
+     * @param lines - The lines, without line separators
+     * @return a future completed once the lines are written with the configured durability,
+     *         or completed exceptionally if they could not be written or the writer is closed.
+     */
+    CompletableFuture<Void> append(Collection<String> lines) {
+        int size = 0;
+        List<byte[]> encoded = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            size += bytes.length + LINE_SEPARATOR.length;
+        }
+        ByteBuffer data = ByteBuffer.allocate(size);
+        for (byte[] bytes : encoded) {
+            data.put(bytes).put(LINE_SEPARATOR);
+        }
+        Request request = new Request(data.array(), new CompletableFuture<>());
+        synchronized (this) {
+            if (closed) {
+                request.written().completeExceptionally(new ClosedChannelException());
+                return request.written();
+            }
+            queue.add(request);
+        }
+        return request.written();
+    }
+
+    /**
+     * Waits until everything appended so far is written.
+     */
+    void flush() {
+        append(List.of()).exceptionally(exception -> null).join();
+    }
+
+    /**
+     * Writes what is pending and opens the file again, for when it was replaced by another file.
+     * @throws IOException if the file could not be opened.
+     */
+    void reopen() throws IOException {
+        flush();
+        synchronized (channelLock) {
+            channel.close();
+            channel = open(path);
+        }
+    }
+
+    /**
+     * Writes what is pending, then stops the writing thread and closes the file.
+     * Appends made afterwards fail.
+     * @throws IOException if the file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        CompletableFuture<Void> drained = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(new Request(new byte[0], drained));
+        }
+        drained.exceptionally(exception -> null).join();
+        // Nothing can be queued anymore, so the thread is waiting for the next append.
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (channelLock) {
+            channel.close();
+        }
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + delayNanos;
+                while (batch.size() < batchSize) {
+                    Request next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException exception) {
+                batch.forEach(request -> request.written().completeExceptionally(exception));
+                return;
+            }
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<Request> batch) {
+        try {
+            synchronized (channelLock) {
+                if (durability == DurabilityMode.operation) {
+                    for (Request request : batch) {
+                        writeFully(ByteBuffer.wrap(request.data()));
+                        channel.force(false);
+                    }
+                } else {
+                    int size = 0;
+                    for (Request request : batch) {
+                        size += request.data().length;
+                    }
+                    ByteBuffer buffer = ByteBuffer.allocate(size);
+                    for (Request request : batch) {
+                        buffer.put(request.data());
+                    }
+                    buffer.flip();
+                    writeFully(buffer);
+                    if (durability == DurabilityMode.batch) {
+                        channel.force(false);
+                    }
+                }
+            }
+            afterBatch.run();
+            batch.forEach(request -> request.written().complete(null));
+        } catch (IOException exception) {
+            batch.forEach(request -> request.written().completeExceptionally(exception));
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,586 @@
+package com.socialnetwork.repository.file;
+
+import com.socialnetwork.domain.Message;
+import com.socialnetwork.exceptions.RepositoryException;
+import com.socialnetwork.repository.MessageRepository;
+import com.socialnetwork.utils.LongHashMap;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Message store kept in a directory, with one append-only segment file per receiver.
+ * A segment holds the records of the messages received by one user: a message record for every
+ * version of a message and a removal record when it is removed. Reading an inbox reads that one segment.
+ * A small index file maps every message ID to its receiver and to the offset of its latest record,
+ * so that single messages are found without scanning the segments.
+ * The first inbox page of a receiver sorts the offsets of the receiver's messages by (sentAt, ID), once;
+ * later pages only read the records they return.
+ * Like the database, the repository gives new messages (those with ID 0) the next free ID.
+ * A change writes its segment records first and its index record last. On load, a record cut short by a crash
+ * is truncated away, from the index and from every segment, and the changes whose segment records were written
+ * but whose index record was not are completed, so the store reopens with every change that reached a segment.
+ */
+public class MessageFileRepository implements MessageRepository {
+    /**
+     * Where the latest record of a message is.
+     */
+    private record Location(long id, String receiver, long offset) {}
+
+    /**
+     * The sort key of a message in an inbox.
+     */
+    private record InboxKey(LocalDateTime sentAt, long id) {}
+
+    private static final Comparator<InboxKey> INBOX_ORDER = Comparator.comparing(InboxKey::sentAt).thenComparingLong(InboxKey::id);
+
+    private static final byte MESSAGE_RECORD = 'M';
+    private static final byte REMOVAL_RECORD = 'R';
+    private static final long REMOVED = -1;
+
+    private final Path directory;
+    private final LongHashMap<Location> index;
+    // The offsets of the messages of the receivers whose inbox has been paged, sorted by (sentAt, ID).
+    private final Map<String, NavigableMap<InboxKey, Long>> inboxes;
+    private long nextID;
+
+    /**
+     * Opens the message store, creating its directory if needed, and loads the index.
+     * @param directoryName - The name of the directory holding the segments and the index
+     */
+    public MessageFileRepository(String directoryName) {
+        directory = Paths.get(directoryName);
+        index = new LongHashMap<>();
+        inboxes = new HashMap<>();
+        nextID = 1;
+        try {
+            Files.createDirectories(directory);
+            loadIndex();
+            recoverSegments();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    private Path indexPath() {
+        return directory.resolve("index");
+    }
+
+    /**
+     * Gets the segment of a receiver. The file name is the hexadecimal form of the username,
+     * so that any username gives a valid and distinct file name.
+     */
+    private Path segmentPath(String receiver) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : receiver.getBytes(StandardCharsets.UTF_8)) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return directory.resolve(name.append(".segment").toString());
+    }
+
+    /**
+     * Gets the receiver whose segment a file is, from its name.
+     * @return the receiver, or null if the file is not a segment.
+     */
+    private static String receiverOf(Path segment) {
+        String name = segment.getFileName().toString();
+        if (!name.endsWith(".segment") || name.length() % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[(name.length() - ".segment".length()) / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(name.charAt(2 * i), 16);
+            int low = Character.digit(name.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the number of bytes writeUTF() writes for a string, without its 2-byte length.
+     */
+    private static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return length;
+    }
+
+    /**
+     * Cuts a file short at the end of its last complete record.
+     */
+    private static void truncate(Path path, long end) throws IOException {
+        System.out.println("Dropping an incomplete record at the end of " + path + ".\n");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(end);
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        if (!Files.exists(indexPath())) {
+            return;
+        }
+        long end = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath())))) {
+            while (true) {
+                long id;
+                long offset;
+                String receiver;
+                try {
+                    id = input.readLong();
+                    offset = input.readLong();
+                    receiver = input.readUTF();
+                } catch (EOFException exception) {
+                    // The end of the index, or a record cut short by a crash.
+                    break;
+                }
+                end += 8 + 8 + 2 + utfLength(receiver);
+                nextID = Math.max(nextID, id + 1);
+                if (offset == REMOVED) {
+                    index.remove(id);
+                } else {
+                    index.put(id, new Location(id, receiver, offset));
+                }
+            }
+        }
+        if (end < Files.size(indexPath())) {
+            truncate(indexPath(), end);
+        }
+    }
+
+    /**
+     * Scans every segment once, without reading the texts of the messages: truncates a record cut short
+     * by a crash, and completes the changes whose segment records were written but whose index record was not.
+     */
+    private void recoverSegments() throws IOException {
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.toList();
+        }
+        // The messages found last in another segment than the indexed one, by ID and segment: unindexed moves.
+        Map<Long, Map<String, Long>> moved = new HashMap<>();
+        // The messages removed from their indexed segment after their indexed record: unindexed removals or moves.
+        Set<Long> removed = new HashSet<>();
+        for (Path segment : segments) {
+            String receiver = receiverOf(segment);
+            if (receiver != null) {
+                recoverSegment(segment, receiver, moved, removed);
+            }
+        }
+        for (Map.Entry<Long, Map<String, Long>> entry : moved.entrySet()) {
+            long id = entry.getKey();
+            Location location = index.get(id);
+            if (location == null || entry.getValue().isEmpty()) {
+                continue;
+            }
+            Map.Entry<String, Long> target = entry.getValue().entrySet().iterator().next();
+            if (!removed.remove(id)) {
+                appendRemoval(location.receiver(), id);
+            }
+            appendIndex(id, target.getKey(), target.getValue());
+            index.put(id, new Location(id, target.getKey(), target.getValue()));
+        }
+        for (long id : removed) {
+            appendIndex(id, index.get(id).receiver(), REMOVED);
+            index.remove(id);
+        }
+    }
+
+    private void recoverSegment(Path segment, String receiver, Map<Long, Map<String, Long>> moved, Set<Long> removed)
+            throws IOException {
+        long end = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            while (true) {
+                long offset = end;
+                byte type;
+                long id;
+                try {
+                    type = input.readByte();
+                    id = input.readLong();
+                    end += 1 + 8;
+                    if (type == MESSAGE_RECORD) {
+                        input.skipNBytes(8 + 4);
+                        end += 8 + 4;
+                        for (int i = 0; i < 3; i++) {
+                            int length = input.readInt();
+                            input.skipNBytes(length);
+                            end += 4 + length;
+                        }
+                    } else if (type != REMOVAL_RECORD) {
+                        throw new IOException("Segment data is corrupted!");
+                    }
+                } catch (EOFException exception) {
+                    // The end of the segment, or a record cut short by a crash.
+                    end = offset;
+                    break;
+                }
+                Location location = index.get(id);
+                if (location == null) {
+                    if (type == MESSAGE_RECORD && id >= nextID) {
+                        // An unindexed add.
+                        nextID = id + 1;
+                        appendIndex(id, receiver, offset);
+                        index.put(id, new Location(id, receiver, offset));
+                    }
+                } else if (!location.receiver().equals(receiver)) {
+                    if (type == MESSAGE_RECORD) {
+                        moved.computeIfAbsent(id, key -> new HashMap<>()).put(receiver, offset);
+                    } else if (moved.containsKey(id)) {
+                        // The message was moved away from this segment after all.
+                        moved.get(id).remove(receiver);
+                    }
+                } else if (offset > location.offset()) {
+                    if (type == MESSAGE_RECORD) {
+                        // An unindexed update.
+                        appendIndex(id, receiver, offset);
+                        index.put(id, new Location(id, receiver, offset));
+                    } else {
+                        removed.add(id);
+                    }
+                }
+            }
+        }
+        if (end < Files.size(segment)) {
+            truncate(segment, end);
+        }
+    }
+
+    private void appendIndex(long id, String receiver, long offset) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(indexPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+            output.writeLong(id);
+            output.writeLong(offset);
+            output.writeUTF(receiver);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends a message record to the segment of its receiver.
+     * @param message - The message
+     * @return the offset of the record in the segment.
+     */
+    private long appendRecord(Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(MESSAGE_RECORD);
+        output.writeLong(message.getID());
+        output.writeLong(message.getSentAt().toEpochSecond(ZoneOffset.UTC));
+        output.writeInt(message.getSentAt().getNano());
+        writeString(output, message.getSender());
+        writeString(output, message.getSubject());
+        writeString(output, message.getText());
+        output.flush();
+        return append(message.getReceiver(), bytes);
+    }
+
+    /**
+     * Appends a removal record to the segment of a receiver.
+     * @param receiver - The receiver
+     * @param id - The ID of the removed message
+     */
+    private void appendRemoval(String receiver, long id) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(REMOVAL_RECORD);
+        output.writeLong(id);
+        output.flush();
+        append(receiver, bytes);
+    }
+
+    private long append(String receiver, ByteArrayOutputStream bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(receiver), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = channel.size();
+            channel.position(offset);
+            Channels.newOutputStream(channel).write(bytes.toByteArray());
+            return offset;
+        }
+    }
+
+    /**
+     * Reads the record at the current position of a segment.
+     * @return the message, or null for a removal record (whose ID is then in removedID[0]).
+     */
+    private static Message readRecord(DataInputStream input, String receiver, long[] removedID) throws IOException {
+        byte type = input.readByte();
+        long id = input.readLong();
+        if (type == REMOVAL_RECORD) {
+            removedID[0] = id;
+            return null;
+        }
+        if (type != MESSAGE_RECORD) {
+            throw new IOException("Segment data is corrupted!");
+        }
+        long epochSecond = input.readLong();
+        LocalDateTime sentAt = LocalDateTime.ofEpochSecond(epochSecond, input.readInt(), ZoneOffset.UTC);
+        String sender = readString(input);
+        String subject = readString(input);
+        String text = readString(input);
+        Message message = new Message(sentAt, subject, text, sender, receiver);
+        message.setID(id);
+        return message;
+    }
+
+    /**
+     * Reads a whole segment, keeping the latest version of every message that was not removed.
+     */
+    private List<Message> readSegment(String receiver) throws IOException {
+        Path segment = segmentPath(receiver);
+        if (!Files.exists(segment)) {
+            return new ArrayList<>();
+        }
+        Map<Long, Message> messages = new LinkedHashMap<>();
+        long[] removedID = new long[1];
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(segment)))) {
+            while (input.available() > 0) {
+                Message message = readRecord(input, receiver, removedID);
+                if (message == null) {
+                    messages.remove(removedID[0]);
+                } else {
+                    messages.put(message.getID(), message);
+                }
+            }
+        }
+        List<Message> inbox = new ArrayList<>(messages.values());
+        inbox.sort(Comparator.comparing(Message::getSentAt));
+        return inbox;
+    }
+
+    private Message readAt(Location location) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(location.receiver()), StandardOpenOption.READ)) {
+            channel.position(location.offset());
+            DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            return readRecord(input, location.receiver(), new long[1]);
+        }
+    }
+
+    /**
+     * Gets the sorted offsets of the messages of a receiver, scanning the receiver's segment the first time.
+     */
+    private NavigableMap<InboxKey, Long> inboxOf(String receiver) throws IOException {
+        NavigableMap<InboxKey, Long> inbox = inboxes.get(receiver);
+        if (inbox != null) {
+            return inbox;
+        }
+        inbox = new TreeMap<>(INBOX_ORDER);
+        Path segment = segmentPath(receiver);
+        if (Files.exists(segment)) {
+            byte[] bytes = Files.readAllBytes(segment);
+            Map<Long, InboxKey> keys = new HashMap<>();
+            long[] removedID = new long[1];
+            try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                while (input.available() > 0) {
+                    long offset = bytes.length - input.available();
+                    Message message = readRecord(input, receiver, removedID);
+                    InboxKey old = keys.remove(message == null ? removedID[0] : message.getID());
+                    if (old != null) {
+                        inbox.remove(old);
+                    }
+                    if (message != null) {
+                        InboxKey key = new InboxKey(message.getSentAt(), message.getID());
+                        keys.put(message.getID(), key);
+                        inbox.put(key, offset);
+                    }
+                }
+            }
+        }
+        inboxes.put(receiver, inbox);
+        return inbox;
+    }
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Gets all the messages, reading the segment of every receiver once.
+     * @return the messages, ordered by ID.
+     */
+    @Override
+    public synchronized List<Message> getAll() {
+        Set<String> receivers = new HashSet<>();
+        index.forEachValue(location -> receivers.add(location.receiver()));
+        List<Message> messages = new ArrayList<>(index.size());
+        try {
+            for (String receiver : receivers) {
+                messages.addAll(readSegment(receiver));
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        messages.sort(Comparator.comparingLong(Message::getID));
+        return messages;
+    }
+
+    @Override
+    public Stream<Message> stream() {
+        return getAll().stream();
+    }
+
+    @Override
+    public synchronized void add(Message message) throws RepositoryException {
+        if (message.getID() != 0 && index.containsKey(message.getID())) {
+            throw new RepositoryException("Message already exists!\n");
+        }
+        long previousNextID = nextID;
+        if (message.getID() == 0) {
+            message.setID(nextID);
+        }
+        nextID = Math.max(nextID, message.getID() + 1);
+        try {
+            long offset = appendRecord(message);
+            appendIndex(message.getID(), message.getReceiver(), offset);
+            index.put(message.getID(), new Location(message.getID(), message.getReceiver(), offset));
+            NavigableMap<InboxKey, Long> inbox = inboxes.get(message.getReceiver());
+            if (inbox != null) {
+                inbox.put(new InboxKey(message.getSentAt(), message.getID()), offset);
+            }
+        } catch (IOException exception) {
+            nextID = previousNextID;
+            exception.printStackTrace();
+            throw new RepositoryException("Message could not be saved!\n");
+        }
+    }
+
+    @Override
+    public synchronized void remove(Message message) throws RepositoryException {
+        Location location = index.get(message.getID());
+        if (location == null) {
+            throw new RepositoryException("Message does not exists!\n");
+        }
+        try {
+            appendRemoval(location.receiver(), message.getID());
+            appendIndex(message.getID(), location.receiver(), REMOVED);
+            index.remove(message.getID());
+            // The sort key of the removed message is not known here, so the inbox is sorted again when next paged.
+            inboxes.remove(location.receiver());
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            throw new RepositoryException("Message could not be saved!\n");
+        }
+    }
+
+    @Override
+    public synchronized Message find(Long id) throws RepositoryException {
+        Location location = index.get(id);
+        if (location == null) {
+            throw new RepositoryException("Entity not found!\n");
+        }
+        try {
+            return readAt(location);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            throw new RepositoryException("Entity not found!\n");
+        }
+    }
+
+    @Override
+    public synchronized void update(Message message) throws RepositoryException {
+        Location location = index.get(message.getID());
+        if (location == null) {
+            throw new RepositoryException("Message does not exists!\n");
+        }
+        try {
+            long offset = appendRecord(message);
+            if (!location.receiver().equals(message.getReceiver())) {
+                // The message moves to the segment of its new receiver; written after the new record,
+                // so that a crash in between is completed as a move on load.
+                appendRemoval(location.receiver(), message.getID());
+            }
+            appendIndex(message.getID(), message.getReceiver(), offset);
+            index.put(message.getID(), new Location(message.getID(), message.getReceiver(), offset));
+            inboxes.remove(location.receiver());
+            inboxes.remove(message.getReceiver());
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            throw new RepositoryException("Message could not be saved!\n");
+        }
+    }
+
+    /**
+     * Gets the messages received by a user, reading only that user's segment.
+     * @param receiver - The username of the receiver
+     * @return the messages, in the order in which they were sent.
+     * @throws RepositoryException if the segment could not be read.
+     */
+    @Override
+    public synchronized List<Message> getAllForSomeone(String receiver) throws RepositoryException {
+        try {
+            return readSegment(receiver);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            throw new RepositoryException("No messages!\n");
+        }
+    }
+
+    /**
+     * Gets a page of the messages received by a user, reading only the records of the page.
+     * @param receiver - The username of the receiver
+     * @param after - The last message of the previous page, or null for the first page
+     * @param pageSize - The maximum number of messages in the page
+     * @return the messages, from the most recently sent to the least recently sent.
+     * @throws RepositoryException if the segment could not be read.
+     */
+    @Override
+    public synchronized List<Message> getInboxPage(String receiver, Message after, int pageSize) throws RepositoryException {
+        List<Message> page = new ArrayList<>();
+        try {
+            NavigableMap<InboxKey, Long> inbox = inboxOf(receiver);
+            NavigableMap<InboxKey, Long> older = after == null ? inbox
+                    : inbox.headMap(new InboxKey(after.getSentAt(), after.getID()), false);
+            if (older.isEmpty()) {
+                return page;
+            }
+            try (FileChannel channel = FileChannel.open(segmentPath(receiver), StandardOpenOption.READ)) {
+                for (long offset : older.descendingMap().values()) {
+                    if (page.size() == pageSize) {
+                        break;
+                    }
+                    channel.position(offset);
+                    DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+                    page.add(readRecord(input, receiver, new long[1]));
+                }
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            throw new RepositoryException("No messages!\n");
+        }
+        return page;
+    }
+}
@@ -0,0 +1,190 @@
+package com.socialnetwork.repository.file;
+
+import com.socialnetwork.exceptions.CorruptedDataException;
+import com.socialnetwork.exceptions.ValidationException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a line-based data file in parallel. The file is split into line-aligned chunks,
+ * which are parsed on the common fork/join pool and then put back together in file order.
+ */
+class ParallelFileLoader {
+    /**
+     * Parses one line of a data file, given as a tokenized row.
+     */
+    interface LineParser<E> {
+        E parse(CsvRow row) throws CorruptedDataException, ValidationException;
+    }
+
+    // Files smaller than this are parsed on the calling thread, as one chunk.
+    private static final long PARALLEL_THRESHOLD = 1 << 20;
+    // Chunks are at least this big, so that small files are not split into too many tasks.
+    private static final long MINIMUM_CHUNK_SIZE = 256 << 10;
+    // Chunks are at most this big, so that each of them fits in one buffer.
+    private static final long MAXIMUM_CHUNK_SIZE = 256 << 20;
+    // Files at least this big are memory-mapped instead of read into the heap. Small files are not mapped,
+    // because a mapping is only released on garbage collection and, on some systems, keeps the file
+    // from being rewritten until then.
+    private static final long MAPPING_THRESHOLD = 64 << 20;
+
+    private ParallelFileLoader() {}
+
+    /**
+     * Reads all the entities of a file.
+     * @param path - The file
+     * @param parser - Turns a line into an Entity; called from several threads at once, with one row per thread
+     * @return the entities, in the order of the lines in the file.
+     * @throws IOException if the file could not be read.
+     * @throws CorruptedDataException if a line is corrupted.
+     * @throws ValidationException if a line holds an invalid Entity.
+     */
+    static <E> List<E> load(Path path, LineParser<E> parser) throws IOException, CorruptedDataException, ValidationException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < PARALLEL_THRESHOLD) {
+                List<E> entities = new ArrayList<>();
+                parseChunk(channel, 0, size, parser, entities);
+                return entities;
+            }
+
+            List<Long> boundaries = chunkBoundaries(channel, size);
+            List<Callable<List<E>>> tasks = new ArrayList<>();
+            for (int i = 0; i + 1 < boundaries.size(); i++) {
+                long start = boundaries.get(i);
+                long end = boundaries.get(i + 1);
+                tasks.add(() -> {
+                    List<E> entities = new ArrayList<>();
+                    parseChunk(channel, start, end, parser, entities);
+                    return entities;
+                });
+            }
+
+            List<E> entities = new ArrayList<>();
+            for (Future<List<E>> chunk : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                entities.addAll(join(chunk));
+            }
+            return entities;
+        }
+    }
+
+    /**
+     * Waits for a chunk to be parsed, rethrowing the exception that stopped it, if any.
+     */
+    private static <E> List<E> join(Future<List<E>> chunk) throws IOException, CorruptedDataException, ValidationException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Loading was interrupted", exception);
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof CorruptedDataException corruptedDataException) {
+                throw corruptedDataException;
+            }
+            if (cause instanceof ValidationException validationException) {
+                throw validationException;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Splits the file into chunks that each start at the beginning of a line.
+     * @return the chunk offsets, starting with 0 and ending with the file size.
+     */
+    private static List<Long> chunkBoundaries(FileChannel channel, long size) throws IOException {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long chunkSize = Math.max(MINIMUM_CHUNK_SIZE, size / (4L * parallelism));
+        chunkSize = Math.min(chunkSize, MAXIMUM_CHUNK_SIZE / 2);
+
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        long position = chunkSize;
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            long lineStart = nextLineStart(channel, position, size, buffer);
+            if (lineStart >= size) {
+                break;
+            }
+            boundaries.add(lineStart);
+            position = lineStart + chunkSize;
+        }
+        boundaries.add(size);
+        return boundaries;
+    }
+
+    /**
+     * Finds where the first line after a position begins.
+     * @return the offset just after the next '\n', or the file size if there is none.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer buffer) throws IOException {
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parses the lines of a chunk of the file. Blank lines are skipped.
+     * Every line is tokenized in place, into the same row, so no String is made for the line itself.
+     */
+    private static <E> void parseChunk(FileChannel channel, long start, long end, LineParser<E> parser, List<E> entities)
+            throws IOException, CorruptedDataException, ValidationException {
+        CharBuffer text = StandardCharsets.UTF_8.decode(readChunk(channel, start, end));
+        CsvRow row = new CsvRow();
+        int lineStart = 0;
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            if (i == length || text.charAt(i) == '\n') {
+                int lineEnd = i;
+                if (lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                if (lineEnd > lineStart) {
+                    entities.add(parser.parse(row.reset(text, lineStart, lineEnd)));
+                }
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    private static ByteBuffer readChunk(FileChannel channel, long start, long end) throws IOException {
+        if (end - start >= MAPPING_THRESHOLD) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
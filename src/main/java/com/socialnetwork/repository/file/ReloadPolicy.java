@@ -0,0 +1,8 @@
+package com.socialnetwork.repository.file;
+
+public enum ReloadPolicy {
+    // Reread and reparse the file before every operation.
+    always,
+    // Reread the file only if its modification time, size or identity changed since it was last read.
+    onChange
+}
@@ -4,23 +4,45 @@ import com.socialnetwork.domain.User;
 import com.socialnetwork.domain.validators.UserValidator;
 import com.socialnetwork.domain.validators.Validator;
 import com.socialnetwork.exceptions.CorruptedDataException;
+import com.socialnetwork.exceptions.RepositoryException;
 import com.socialnetwork.exceptions.ValidationException;
+import com.socialnetwork.repository.UserRepository;
+import com.socialnetwork.repository.memory.UniqueIndex;
 
-import java.util.List;
+public class UserFileRepository extends AbstractFileRepository<User, Long> implements UserRepository {
+    // Stateless, so one instance is shared by all the rows and loading threads.
+    private static final Validator<User> userValidator = new UserValidator();
+
+    private final UniqueIndex<User, Long, String> usernameIndex;
+    private final UniqueIndex<User, Long, String> emailIndex;
 
-public class UserFileRepository extends AbstractFileRepository<User, Long> {
     public UserFileRepository(String fileName) {
-        super(fileName);
+        this(fileName, new FileRepositoryOptions());
+    }
+
+    public UserFileRepository(String fileName, FileRepositoryOptions options) {
+        super(fileName, options);
+        UniqueIndex<User, Long, String> usernameIndex = null;
+        UniqueIndex<User, Long, String> emailIndex = null;
+        try {
+            // The file was loaded before the indexes existed, so its Users are checked against each other now.
+            usernameIndex = addUniqueIndex("Username", User::getUsername);
+            emailIndex = addUniqueIndex("Email", User::getEmail);
+        } catch (RepositoryException exception) {
+            exception.printStackTrace();
+            System.exit(1);
+        }
+        this.usernameIndex = usernameIndex;
+        this.emailIndex = emailIndex;
     }
 
     @Override
-    public User extractEntity(List<String> attributes) throws CorruptedDataException, ValidationException {
+    public User extractEntity(CsvRow attributes) throws CorruptedDataException, ValidationException {
         if (attributes.size() != 5) {
             throw new CorruptedDataException("File data is corrupted!\n");
         }
-        User user = new User(attributes.get(1), Integer.parseInt(attributes.get(2)), attributes.get(3), attributes.get(4));
-        user.setID(Long.parseLong(attributes.get(0)));
-        Validator<User> userValidator = new UserValidator();
+        User user = new User(attributes.getString(1), attributes.getInt(2), attributes.getString(3), attributes.getString(4));
+        user.setID(attributes.getLong(0));
         userValidator.validate(user);
         return user;
     }
@@ -29,4 +51,16 @@ public class UserFileRepository extends AbstractFileRepository<User, Long> {
     public String entityToStringFormat(User user) {
         return user.getID() + "," + user.getUsername() + "," + user.getPasswordCode() + "," + user.getSalt() +  "," + user.getEmail();
     }
+
+    @Override
+    public synchronized User findByUsername(String username) throws RepositoryException {
+        loadData();
+        return findByIndex(usernameIndex, username);
+    }
+
+    @Override
+    public synchronized User findByEmail(String email) throws RepositoryException {
+        loadData();
+        return findByIndex(emailIndex, email);
+    }
 }
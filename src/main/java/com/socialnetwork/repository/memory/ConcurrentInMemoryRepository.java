@@ -0,0 +1,256 @@
+package com.socialnetwork.repository.memory;
+
+import com.socialnetwork.domain.Entity;
+import com.socialnetwork.exceptions.RepositoryException;
+import com.socialnetwork.repository.Repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Thread-safe in-memory repository. Reads never block: they go straight to a ConcurrentHashMap.
+ * Writes lock only the stripe that the Entity ID hashes to, so writes to different IDs run in parallel.
+ */
+public class ConcurrentInMemoryRepository<E extends Entity<ID>, ID> implements Repository<E, ID> {
+    /**
+     * A stored Entity, together with the order in which it was added.
+     */
+    private record Slot<E>(long sequence, E entity) {}
+
+    private final ConcurrentHashMap<ID, Slot<E>> entities;
+    private final ReentrantLock[] stripes;
+    private final AtomicLong sequence;
+    private final List<UniqueIndex<E, ID, ?>> uniqueIndexes;
+    private final List<SecondaryIndex<E>> secondaryIndexes;
+
+    public ConcurrentInMemoryRepository() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates the repository.
+     * @param stripeCount - The number of write locks; rounded up to a power of two
+     */
+    public ConcurrentInMemoryRepository(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        entities = new ConcurrentHashMap<>();
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        sequence = new AtomicLong();
+        uniqueIndexes = new CopyOnWriteArrayList<>();
+        secondaryIndexes = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Adds a unique secondary index on an attribute of the entities.
+     * Should be called before the repository is shared between threads.
+     * @param name - The name of the indexed attribute
+     * @param keyExtractor - Gets the indexed attribute of an Entity
+     * @return the index.
+     */
+    protected <K> UniqueIndex<E, ID, K> addUniqueIndex(String name, Function<E, K> keyExtractor) {
+        UniqueIndex<E, ID, K> index = new UniqueIndex<>(name, keyExtractor, new ConcurrentHashMap<>());
+        for (Slot<E> slot : entities.values()) {
+            index.put(slot.entity());
+        }
+        uniqueIndexes.add(index);
+        return index;
+    }
+
+    /**
+     * Adds a non-unique secondary index and indexes the entities already stored.
+     * The index is updated under the write lock of each Entity, so it must itself be thread-safe.
+     * Should be called before the repository is shared between threads.
+     * @param index - The (empty) index
+     * @return the index.
+     */
+    protected <X extends SecondaryIndex<E>> X addSecondaryIndex(X index) {
+        for (Slot<E> slot : entities.values()) {
+            index.put(slot.entity());
+        }
+        secondaryIndexes.add(index);
+        return index;
+    }
+
+    /**
+     * Finds an Entity by a unique secondary key.
+     * @param index - The index to look in
+     * @param key - The key being looked for
+     * @return the Entity if it was found.
+     * @throws RepositoryException if the Entity has not been found.
+     */
+    protected <K> E findByIndex(UniqueIndex<E, ID, K> index, K key) throws RepositoryException {
+        ID id = index.get(key);
+        if (id == null) {
+            throw new RepositoryException("Entity not found!\n");
+        }
+        return find(id);
+    }
+
+    private ReentrantLock stripeFor(ID id) {
+        int hash = id.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    /**
+     * Claims the unique keys of an Entity, releasing the ones already claimed if one of them is taken.
+     * @param entity - The Entity
+     * @param old - The Entity being replaced, or null
+     * @throws RepositoryException if a unique key belongs to another Entity.
+     */
+    private void reserveUniqueKeys(E entity, E old) throws RepositoryException {
+        List<UniqueIndex<E, ID, ?>> reserved = new ArrayList<>();
+        for (UniqueIndex<E, ID, ?> index : uniqueIndexes) {
+            if (old != null && index.sameKey(old, entity)) {
+                continue;
+            }
+            if (!index.reserve(entity)) {
+                reserved.forEach(r -> r.remove(entity));
+                throw new RepositoryException(index.getName() + " already exists!\n");
+            }
+            reserved.add(index);
+        }
+    }
+
+    /**
+     * Gets the size of the repository.
+     * @return the size.
+     */
+    @Override
+    public int size() {
+        return entities.size();
+    }
+
+    /**
+     * Gets a consistent snapshot of all the entries, in the order in which they were added.
+     * Briefly holds every write lock, so no write is seen half-applied.
+     * @return an Entity List.
+     */
+    @Override
+    public List<E> getAll() {
+        List<Slot<E>> snapshot;
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        try {
+            snapshot = new ArrayList<>(entities.values());
+        } finally {
+            for (ReentrantLock stripe : stripes) {
+                stripe.unlock();
+            }
+        }
+        snapshot.sort(Comparator.comparingLong(Slot::sequence));
+        List<E> result = new ArrayList<>(snapshot.size());
+        for (Slot<E> slot : snapshot) {
+            result.add(slot.entity());
+        }
+        return result;
+    }
+
+    /**
+     * Streams the entries without locking. Unlike getAll(), the stream is weakly consistent
+     * (it may or may not reflect concurrent writes) and is not in insertion order.
+     * @return a stream of the entities.
+     */
+    @Override
+    public Stream<E> stream() {
+        return entities.values().stream().map(Slot::entity);
+    }
+
+    /**
+     * Adds an Entity to the repository.
+     * @param entity - The Entity to be added
+     * @throws RepositoryException if the Entity already is in the repository.
+     */
+    @Override
+    public void add(E entity) throws RepositoryException {
+        ReentrantLock stripe = stripeFor(entity.getID());
+        stripe.lock();
+        try {
+            if (entities.containsKey(entity.getID())) {
+                throw new RepositoryException("Entity already exists!\n");
+            }
+            reserveUniqueKeys(entity, null);
+            entities.put(entity.getID(), new Slot<>(sequence.getAndIncrement(), entity));
+            secondaryIndexes.forEach(index -> index.put(entity));
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Removes an Entity from the repository.
+     * @param entity - The Entity to be removed
+     * @throws RepositoryException if the Entity is not in the repository.
+     */
+    @Override
+    public void remove(E entity) throws RepositoryException {
+        ReentrantLock stripe = stripeFor(entity.getID());
+        stripe.lock();
+        try {
+            Slot<E> removed = entities.remove(entity.getID());
+            if (removed == null) {
+                throw new RepositoryException("Entity does not exist!\n");
+            }
+            uniqueIndexes.forEach(index -> index.remove(removed.entity()));
+            secondaryIndexes.forEach(index -> index.remove(removed.entity()));
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Finds an Entity by ID, without locking.
+     * @param id - The ID being looked for
+     * @return the Entity if it was found.
+     * @throws RepositoryException if the Entity has not been found.
+     */
+    @Override
+    public E find(ID id) throws RepositoryException {
+        Slot<E> slot = entities.get(id);
+        if (slot == null) {
+            throw new RepositoryException("Entity not found!\n");
+        }
+        return slot.entity();
+    }
+
+    /**
+     * Updates an entity
+     * @param entity - The new Entity.
+     * @throws RepositoryException if the Entity is not in the repository.
+     */
+    @Override
+    public void update(E entity) throws RepositoryException {
+        ReentrantLock stripe = stripeFor(entity.getID());
+        stripe.lock();
+        try {
+            Slot<E> old = entities.get(entity.getID());
+            if (old == null) {
+                throw new RepositoryException("Entity does not exist!\n");
+            }
+            reserveUniqueKeys(entity, old.entity());
+            for (UniqueIndex<E, ID, ?> index : uniqueIndexes) {
+                if (!index.sameKey(old.entity(), entity)) {
+                    index.remove(old.entity());
+                }
+            }
+            entities.put(entity.getID(), new Slot<>(old.sequence(), entity));
+            for (SecondaryIndex<E> index : secondaryIndexes) {
+                index.remove(old.entity());
+                index.put(entity);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+}
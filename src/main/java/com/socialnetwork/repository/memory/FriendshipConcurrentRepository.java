@@ -0,0 +1,28 @@
+package com.socialnetwork.repository.memory;
+
+import com.socialnetwork.domain.Friendship;
+import com.socialnetwork.domain.User;
+import com.socialnetwork.repository.FriendshipRepository;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class FriendshipConcurrentRepository extends ConcurrentInMemoryRepository<Friendship, Set<User>> implements FriendshipRepository {
+    private final FriendshipIndex friendshipIndex;
+
+    public FriendshipConcurrentRepository() {
+        super();
+        friendshipIndex = addSecondaryIndex(new FriendshipIndex(new ConcurrentHashMap<>(), ConcurrentHashMap::new));
+    }
+
+    @Override
+    public List<Friendship> getAllOf(User user) {
+        return friendshipIndex.getAllOf(user);
+    }
+
+    @Override
+    public boolean exists(User u1, User u2) {
+        return friendshipIndex.exists(u1, u2);
+    }
+}
@@ -0,0 +1,97 @@
+package com.socialnetwork.repository.memory;
+
+import com.socialnetwork.domain.Friendship;
+import com.socialnetwork.domain.User;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Adjacency index of the friendships: for every User ID, the friendships and requests of that User,
+ * keyed by the ID of the other User. Looking up the friendships of a User costs O(degree).
+ */
+public class FriendshipIndex implements SecondaryIndex<Friendship> {
+    private final Map<Long, Map<Long, Friendship>> friendshipsByUser;
+    private final Supplier<Map<Long, Friendship>> neighbourMapFactory;
+
+    /**
+     * Creates an index for a repository that is not shared between threads, or that does its own locking.
+     * The friendships of a User are kept in the order in which they were added.
+     */
+    public FriendshipIndex() {
+        this(new HashMap<>(), LinkedHashMap::new);
+    }
+
+    /**
+     * Creates an index on top of the given maps.
+     * @param friendshipsByUser - The (empty) map from User IDs to their friendships, e.g. a concurrent one
+     * @param neighbourMapFactory - Creates the map of the friendships of one User
+     */
+    public FriendshipIndex(Map<Long, Map<Long, Friendship>> friendshipsByUser, Supplier<Map<Long, Friendship>> neighbourMapFactory) {
+        this.friendshipsByUser = friendshipsByUser;
+        this.neighbourMapFactory = neighbourMapFactory;
+    }
+
+    private void link(long userID, long otherID, Friendship friendship) {
+        friendshipsByUser.compute(userID, (id, neighbours) -> {
+            if (neighbours == null) {
+                neighbours = neighbourMapFactory.get();
+            }
+            neighbours.put(otherID, friendship);
+            return neighbours;
+        });
+    }
+
+    private void unlink(long userID, long otherID) {
+        friendshipsByUser.computeIfPresent(userID, (id, neighbours) -> {
+            neighbours.remove(otherID);
+            return neighbours.isEmpty() ? null : neighbours;
+        });
+    }
+
+    @Override
+    public void put(Friendship friendship) {
+        long id1 = friendship.getU1().getID();
+        long id2 = friendship.getU2().getID();
+        link(id1, id2, friendship);
+        link(id2, id1, friendship);
+    }
+
+    @Override
+    public void remove(Friendship friendship) {
+        long id1 = friendship.getU1().getID();
+        long id2 = friendship.getU2().getID();
+        unlink(id1, id2);
+        unlink(id2, id1);
+    }
+
+    @Override
+    public void clear() {
+        friendshipsByUser.clear();
+    }
+
+    /**
+     * Gets the friendships and friend requests of a User.
+     * @param user - The User
+     * @return the friendships, whatever their status.
+     */
+    public List<Friendship> getAllOf(User user) {
+        Map<Long, Friendship> neighbours = friendshipsByUser.get(user.getID());
+        return neighbours == null ? new ArrayList<>() : new ArrayList<>(neighbours.values());
+    }
+
+    /**
+     * Checks whether two Users are friends or one of them has sent a friend request to the other.
+     * @param u1 - The first User
+     * @param u2 - The second User
+     * @return true if there is a friendship between the two Users, false otherwise.
+     */
+    public boolean exists(User u1, User u2) {
+        Map<Long, Friendship> neighbours = friendshipsByUser.get(u1.getID());
+        return neighbours != null && neighbours.containsKey(u2.getID());
+    }
+}
@@ -5,13 +5,106 @@ import com.socialnetwork.exceptions.RepositoryException;
 import com.socialnetwork.repository.Repository;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 public class InMemoryRepository<E extends Entity<ID>, ID> implements Repository<E, ID> {
-    protected List<E> entities;
+    // Keyed by the Entity ID; a linked map keeps the insertion order for getAll().
+    protected Map<ID, E> entities;
+    private final List<UniqueIndex<E, ID, ?>> uniqueIndexes;
+    private final List<SecondaryIndex<E>> secondaryIndexes;
 
     public InMemoryRepository() {
-        entities = new ArrayList<>();
+        entities = new LinkedHashMap<>();
+        uniqueIndexes = new ArrayList<>();
+        secondaryIndexes = new ArrayList<>();
+    }
+
+    /**
+     * Adds a unique secondary index on an attribute of the entities and indexes the entities already stored.
+     * @param name - The name of the indexed attribute
+     * @param keyExtractor - Gets the indexed attribute of an Entity
+     * @return the index.
+     * @throws RepositoryException if two of the entities already stored have the same key.
+     */
+    protected <K> UniqueIndex<E, ID, K> addUniqueIndex(String name, Function<E, K> keyExtractor) throws RepositoryException {
+        UniqueIndex<E, ID, K> index = new UniqueIndex<>(name, keyExtractor);
+        for (E entity : entities.values()) {
+            if (index.isTaken(entity)) {
+                throw new RepositoryException(name + " already exists!\n");
+            }
+            index.put(entity);
+        }
+        uniqueIndexes.add(index);
+        return index;
+    }
+
+    /**
+     * Adds a non-unique secondary index and indexes the entities already stored.
+     * @param index - The (empty) index
+     * @return the index.
+     */
+    protected <X extends SecondaryIndex<E>> X addSecondaryIndex(X index) {
+        for (E entity : entities.values()) {
+            index.put(entity);
+        }
+        secondaryIndexes.add(index);
+        return index;
+    }
+
+    /**
+     * Finds an Entity by a unique secondary key.
+     * @param index - The index to look in
+     * @param key - The key being looked for
+     * @return the Entity if it was found.
+     * @throws RepositoryException if the Entity has not been found.
+     */
+    protected <K> E findByIndex(UniqueIndex<E, ID, K> index, K key) throws RepositoryException {
+        ID id = index.get(key);
+        if (id == null) {
+            throw new RepositoryException("Entity not found!\n");
+        }
+        return find(id);
+    }
+
+    /**
+     * Checks that none of the unique keys of an Entity belong to another Entity.
+     * @param entity - The Entity
+     * @throws RepositoryException if a unique key is already taken.
+     */
+    private void checkUniqueIndexes(E entity) throws RepositoryException {
+        for (UniqueIndex<E, ID, ?> index : uniqueIndexes) {
+            if (index.isTaken(entity)) {
+                throw new RepositoryException(index.getName() + " already exists!\n");
+            }
+        }
+    }
+
+    /**
+     * Removes the entities that hold one of the unique keys of an Entity, so that the Entity can take them.
+     * @param entity - The Entity
+     * @throws RepositoryException if an Entity could not be removed.
+     */
+    protected void evictKeyOwners(E entity) throws RepositoryException {
+        for (UniqueIndex<E, ID, ?> index : uniqueIndexes) {
+            ID owner = index.getOtherOwner(entity);
+            if (owner != null) {
+                delete(entities.get(owner));
+            }
+        }
+    }
+
+    /**
+     * Removes all the entities from the repository.
+     */
+    protected void clear() {
+        entities.clear();
+        uniqueIndexes.forEach(UniqueIndex::clear);
+        secondaryIndexes.forEach(SecondaryIndex::clear);
     }
 
     /**
@@ -24,12 +117,60 @@ public class InMemoryRepository<E extends Entity<ID>, ID> implements Repository<
     }
 
     /**
-     * Gets all entries.
+     * Gets all entries, in the order in which they were added.
      * @return an Entity List.
      */
     @Override
     public List<E> getAll() {
-        return entities;
+        return new ArrayList<>(entities.values());
+    }
+
+    /**
+     * Streams the entries in place, without copying them.
+     * @return a stream of the entities, in the order in which they were added.
+     */
+    @Override
+    public Stream<E> stream() {
+        return entities.values().stream();
+    }
+
+    private void insert(E entity) throws RepositoryException {
+        if (entities.containsKey(entity.getID())) {
+            throw new RepositoryException("Entity already exists!\n");
+        }
+        checkUniqueIndexes(entity);
+        entities.put(entity.getID(), entity);
+        uniqueIndexes.forEach(index -> index.put(entity));
+        secondaryIndexes.forEach(index -> index.put(entity));
+    }
+
+    private E delete(E entity) throws RepositoryException {
+        E removed = entities.remove(entity.getID());
+        if (removed == null) {
+            throw new RepositoryException("Entity does not exist!\n");
+        }
+        uniqueIndexes.forEach(index -> index.remove(removed));
+        secondaryIndexes.forEach(index -> index.remove(removed));
+        return removed;
+    }
+
+    private E replace(E entity) throws RepositoryException {
+        E old = entities.get(entity.getID());
+        if (old == null) {
+            throw new RepositoryException("Entity does not exist!\n");
+        }
+        checkUniqueIndexes(entity);
+        // Replacing the value of an existing key keeps its position in the insertion order.
+        entities.put(entity.getID(), entity);
+        for (UniqueIndex<E, ID, ?> index : uniqueIndexes) {
+            index.remove(old);
+            index.put(entity);
+        }
+        for (SecondaryIndex<E> index : secondaryIndexes) {
+            index.remove(old);
+            index.put(entity);
+        }
+        return old;
     }
 
     /**
@@ -39,12 +180,7 @@ public class InMemoryRepository<E extends Entity<ID>, ID> implements Repository<
      */
     @Override
     public void add(E entity) throws RepositoryException {
-        for (E e : entities) {
-            if (e.equals(entity)) {
-                throw new RepositoryException("Entity already exists!\n");
-            }
-        }
-        entities.add(entity);
+        insert(entity);
     }
 
     /**
@@ -54,13 +190,77 @@ public class InMemoryRepository<E extends Entity<ID>, ID> implements Repository<
      */
     @Override
     public void remove(E entity) throws RepositoryException {
-        for (E e : entities) {
-            if (e.equals(entity)) {
-                entities.remove(entity);
-                return;
+        delete(entity);
+    }
+
+    /**
+     * Adds several entities as a single operation: either all of them are added or none is.
+     * @param entities - The entities to be added
+     * @throws RepositoryException if one of the entities already is in the repository.
+     */
+    @Override
+    public void addAll(Collection<E> entities) throws RepositoryException {
+        List<E> added = new ArrayList<>();
+        try {
+            for (E entity : entities) {
+                insert(entity);
+                added.add(entity);
+            }
+        } catch (RepositoryException exception) {
+            for (E entity : added) {
+                delete(entity);
             }
+            throw exception;
         }
-        throw new RepositoryException("Entity does not exist!\n");
+    }
+
+    /**
+     * Removes several entities as a single operation: either all of them are removed or none is.
+     * @param entities - The entities to be removed
+     * @throws RepositoryException if one of the entities is not in the repository.
+     */
+    @Override
+    public void removeAll(Collection<E> entities) throws RepositoryException {
+        for (E entity : entities) {
+            if (!this.entities.containsKey(entity.getID())) {
+                throw new RepositoryException("Entity does not exist!\n");
+            }
+        }
+        for (E entity : entities) {
+            if (this.entities.containsKey(entity.getID())) {
+                delete(entity);
+            }
+        }
+    }
+
+    /**
+     * Updates several entities as a single operation: either all of them are updated or none is.
+     * @param entities - The new entities
+     * @throws RepositoryException if one of the entities is not in the repository.
+     */
+    @Override
+    public void updateAll(Collection<E> entities) throws RepositoryException {
+        List<E> replaced = new ArrayList<>();
+        try {
+            for (E entity : entities) {
+                replaced.add(replace(entity));
+            }
+        } catch (RepositoryException exception) {
+            // Put the old versions back, most recent first.
+            for (int i = replaced.size() - 1; i >= 0; i--) {
+                replace(replaced.get(i));
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * The bulk writes undo what they did before failing.
+     * @return true.
+     */
+    @Override
+    public boolean hasAtomicBulkWrites() {
+        return true;
     }
 
     /**
@@ -71,12 +271,11 @@ public class InMemoryRepository<E extends Entity<ID>, ID> implements Repository<
      */
     @Override
     public E find(ID id) throws RepositoryException {
-        for (E e : entities) {
-            if (e.getID().equals(id)) {
-                return e;
-            }
+        E entity = entities.get(id);
+        if (entity == null) {
+            throw new RepositoryException("Entity not found!\n");
         }
-        throw new RepositoryException("Entity not found!\n");
+        return entity;
     }
 
     /**
@@ -84,12 +283,6 @@ public class InMemoryRepository<E extends Entity<ID>, ID> implements Repository<
      * @param entity - The new Entity.
      */
     public void update(E entity) throws RepositoryException {
-        for (int i = 0; i < entities.size(); i++) {
-            if (entities.get(i).equals(entity)) {
-                entities.set(i, entity);
-                return;
-            }
-        }
-        throw new RepositoryException("Entity does not exist!\n");
+        replace(entity);
     }
-}
\ No newline at end of file
+}
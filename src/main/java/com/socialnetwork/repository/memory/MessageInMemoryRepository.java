@@ -0,0 +1,171 @@
+package com.socialnetwork.repository.memory;
+
+import com.socialnetwork.domain.Message;
+import com.socialnetwork.exceptions.RepositoryException;
+import com.socialnetwork.repository.MessageRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * In-memory message store, indexed by receiver.
+ * The messages of each receiver are kept sorted by (sentAt, ID), so inbox pages are found without sorting.
+ * Like the database, it gives new messages (those with ID 0) the next free ID when they are added.
+ */
+public class MessageInMemoryRepository extends InMemoryRepository<Message, Long> implements MessageRepository {
+    /**
+     * Where a message is indexed: its receiver and its sort key in the receiver's inbox.
+     */
+    private record InboxKey(String receiver, LocalDateTime sentAt, long id) {}
+
+    private static final Comparator<InboxKey> INBOX_ORDER = Comparator.comparing(InboxKey::sentAt).thenComparingLong(InboxKey::id);
+
+    private final Map<String, NavigableMap<InboxKey, Message>> messagesByReceiver;
+    // The key each message was indexed under; messages can be changed in place before being updated.
+    private final Map<Long, InboxKey> keyOf;
+    private long nextID;
+
+    public MessageInMemoryRepository() {
+        super();
+        messagesByReceiver = new HashMap<>();
+        keyOf = new HashMap<>();
+        nextID = 1;
+    }
+
+    private void assignID(Message message) {
+        if (message.getID() == 0) {
+            message.setID(nextID++);
+        } else {
+            nextID = Math.max(nextID, message.getID() + 1);
+        }
+    }
+
+    private static InboxKey keyOf(Message message) {
+        return new InboxKey(message.getReceiver(), message.getSentAt(), message.getID());
+    }
+
+    private void index(Message message) {
+        InboxKey key = keyOf(message);
+        messagesByReceiver.computeIfAbsent(message.getReceiver(), receiver -> new TreeMap<>(INBOX_ORDER)).put(key, message);
+        keyOf.put(message.getID(), key);
+    }
+
+    private void unindex(Message message) {
+        InboxKey key = keyOf.remove(message.getID());
+        if (key == null) {
+            return;
+        }
+        Map<InboxKey, Message> inbox = messagesByReceiver.get(key.receiver());
+        if (inbox != null) {
+            inbox.remove(key);
+            if (inbox.isEmpty()) {
+                messagesByReceiver.remove(key.receiver());
+            }
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return super.size();
+    }
+
+    @Override
+    public synchronized List<Message> getAll() {
+        return super.getAll();
+    }
+
+    @Override
+    public Stream<Message> stream() {
+        return getAll().stream();
+    }
+
+    @Override
+    public synchronized Message find(Long id) throws RepositoryException {
+        return super.find(id);
+    }
+
+    @Override
+    public synchronized void add(Message message) throws RepositoryException {
+        assignID(message);
+        super.add(message);
+        index(message);
+    }
+
+    @Override
+    public synchronized void addAll(Collection<Message> messages) throws RepositoryException {
+        messages.forEach(this::assignID);
+        super.addAll(messages);
+        messages.forEach(this::index);
+    }
+
+    @Override
+    public synchronized void remove(Message message) throws RepositoryException {
+        super.remove(message);
+        unindex(message);
+    }
+
+    @Override
+    public synchronized void removeAll(Collection<Message> messages) throws RepositoryException {
+        super.removeAll(messages);
+        messages.forEach(this::unindex);
+    }
+
+    @Override
+    public synchronized void update(Message message) throws RepositoryException {
+        super.update(message);
+        unindex(message);
+        index(message);
+    }
+
+    @Override
+    public synchronized void updateAll(Collection<Message> messages) throws RepositoryException {
+        super.updateAll(messages);
+        messages.forEach(this::unindex);
+        messages.forEach(this::index);
+    }
+
+    /**
+     * Gets the messages received by a user, looking only at that user's messages.
+     * @param receiver - The username of the receiver
+     * @return the messages, in the order in which they were sent.
+     */
+    @Override
+    public synchronized List<Message> getAllForSomeone(String receiver) {
+        NavigableMap<InboxKey, Message> inbox = messagesByReceiver.get(receiver);
+        return inbox == null ? new ArrayList<>() : new ArrayList<>(inbox.values());
+    }
+
+    /**
+     * Gets a page of the messages received by a user, walking the user's sorted messages backwards
+     * from the end of the previous page.
+     * @param receiver - The username of the receiver
+     * @param after - The last message of the previous page, or null for the first page
+     * @param pageSize - The maximum number of messages in the page
+     * @return the messages, from the most recently sent to the least recently sent.
+     */
+    @Override
+    public synchronized List<Message> getInboxPage(String receiver, Message after, int pageSize) {
+        List<Message> page = new ArrayList<>();
+        NavigableMap<InboxKey, Message> inbox = messagesByReceiver.get(receiver);
+        if (inbox == null) {
+            return page;
+        }
+        NavigableMap<InboxKey, Message> older = after == null ? inbox
+                : inbox.headMap(new InboxKey(receiver, after.getSentAt(), after.getID()), false);
+        for (Message message : older.descendingMap().values()) {
+            if (page.size() == pageSize) {
+                break;
+            }
+            page.add(message);
+        }
+        return page;
+    }
+}
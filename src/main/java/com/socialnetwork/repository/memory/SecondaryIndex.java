@@ -0,0 +1,24 @@
+package com.socialnetwork.repository.memory;
+
+/**
+ * A non-unique index that an in-memory repository keeps up to date as its entities change.
+ * @param <E> - The type of the indexed entities
+ */
+public interface SecondaryIndex<E> {
+    /**
+     * Indexes a stored Entity.
+     * @param entity - The Entity
+     */
+    void put(E entity);
+
+    /**
+     * Removes a stored Entity from the index.
+     * @param entity - The Entity, as it was stored
+     */
+    void remove(E entity);
+
+    /**
+     * Removes all the entities from the index.
+     */
+    void clear();
+}
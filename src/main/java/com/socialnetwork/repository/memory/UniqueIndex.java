@@ -0,0 +1,106 @@
+package com.socialnetwork.repository.memory;
+
+import com.socialnetwork.domain.Entity;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+public class UniqueIndex<E extends Entity<ID>, ID, K> {
+    private final String name;
+    private final Function<E, K> keyExtractor;
+    private final Map<K, ID> index;
+
+    /**
+     * Creates a unique secondary index.
+     * @param name - The name of the indexed attribute, used in error messages
+     * @param keyExtractor - Gets the indexed attribute of an Entity
+     */
+    public UniqueIndex(String name, Function<E, K> keyExtractor) {
+        this(name, keyExtractor, new HashMap<>());
+    }
+
+    /**
+     * Creates a unique secondary index on top of the given map.
+     * @param name - The name of the indexed attribute, used in error messages
+     * @param keyExtractor - Gets the indexed attribute of an Entity
+     * @param index - The (empty) map from keys to IDs, e.g. a concurrent one
+     */
+    public UniqueIndex(String name, Function<E, K> keyExtractor, Map<K, ID> index) {
+        this.name = name;
+        this.keyExtractor = keyExtractor;
+        this.index = index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Checks whether the key of an Entity is already used by another Entity.
+     * @param entity - The Entity
+     * @return true if a different Entity has the same key, false otherwise.
+     */
+    public boolean isTaken(E entity) {
+        return getOtherOwner(entity) != null;
+    }
+
+    /**
+     * Gets the Entity that holds the key of an Entity, if it is another one.
+     * @param entity - The Entity
+     * @return the ID of the other Entity, or null if the key is free or belongs to the Entity itself.
+     */
+    public ID getOtherOwner(E entity) {
+        ID owner = index.get(keyExtractor.apply(entity));
+        return owner == null || owner.equals(entity.getID()) ? null : owner;
+    }
+
+    /**
+     * Indexes an Entity by its key.
+     * @param entity - The Entity
+     */
+    public void put(E entity) {
+        index.put(keyExtractor.apply(entity), entity.getID());
+    }
+
+    /**
+     * Atomically claims the key of an Entity, if the underlying map supports atomic putIfAbsent.
+     * @param entity - The Entity
+     * @return true if the key now belongs to the Entity, false if it belongs to another Entity.
+     */
+    public boolean reserve(E entity) {
+        ID owner = index.putIfAbsent(keyExtractor.apply(entity), entity.getID());
+        return owner == null || owner.equals(entity.getID());
+    }
+
+    /**
+     * Checks whether two entities have the same key.
+     * @param e1 - The first Entity
+     * @param e2 - The second Entity
+     * @return true if the keys are equal, false otherwise.
+     */
+    public boolean sameKey(E e1, E e2) {
+        return keyExtractor.apply(e1).equals(keyExtractor.apply(e2));
+    }
+
+    /**
+     * Removes an Entity from the index, if its key still points to it.
+     * @param entity - The Entity
+     */
+    public void remove(E entity) {
+        index.remove(keyExtractor.apply(entity), entity.getID());
+    }
+
+    /**
+     * Gets the ID of the Entity with the given key.
+     * @param key - The key
+     * @return the ID, or null if no Entity has the given key.
+     */
+    public ID get(K key) {
+        return index.get(key);
+    }
+
+    public void clear() {
+        index.clear();
+    }
+}
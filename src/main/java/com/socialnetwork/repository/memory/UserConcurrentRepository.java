@@ -0,0 +1,26 @@
+package com.socialnetwork.repository.memory;
+
+import com.socialnetwork.domain.User;
+import com.socialnetwork.exceptions.RepositoryException;
+import com.socialnetwork.repository.UserRepository;
+
+public class UserConcurrentRepository extends ConcurrentInMemoryRepository<User, Long> implements UserRepository {
+    private final UniqueIndex<User, Long, String> usernameIndex;
+    private final UniqueIndex<User, Long, String> emailIndex;
+
+    public UserConcurrentRepository() {
+        super();
+        usernameIndex = addUniqueIndex("Username", User::getUsername);
+        emailIndex = addUniqueIndex("Email", User::getEmail);
+    }
+
+    @Override
+    public User findByUsername(String username) throws RepositoryException {
+        return findByIndex(usernameIndex, username);
+    }
+
+    @Override
+    public User findByEmail(String email) throws RepositoryException {
+        return findByIndex(emailIndex, email);
+    }
+}
@@ -0,0 +1,74 @@
+package com.socialnetwork.repository.memory;
+
+import com.socialnetwork.domain.User;
+import com.socialnetwork.domain.validators.UserValidator;
+import com.socialnetwork.domain.validators.Validator;
+import com.socialnetwork.exceptions.ValidationException;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Identity map of the Users read while loading friendships: every User ID maps to one shared User,
+ * built and validated the first time the ID is read. A load of many friendships then holds one User
+ * per distinct User instead of two per friendship. Meant to live for one load; it may be used by
+ * several loading threads at once.
+ */
+public class UserIdentityMap {
+    // Stateless, so one instance is shared by all the maps.
+    private static final Validator<User> userValidator = new UserValidator();
+
+    private final Map<Long, User> users = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the User with the given attributes, the shared one if the same User has already been read.
+     * A row that disagrees with the shared User of its ID gets a User of its own.
+     * @param id - The ID of the User
+     * @param username - The username of the User
+     * @param passwordCode - The password code of the User
+     * @param salt - The salt of the User
+     * @param email - The email of the User
+     * @return the User.
+     * @throws ValidationException if the User has not been read before and is not valid.
+     */
+    public User resolve(long id, String username, int passwordCode, String salt, String email) throws ValidationException {
+        User user = users.get(id);
+        if (user != null && matches(user, username, passwordCode, salt, email)) {
+            return user;
+        }
+        User read = new User(username, passwordCode, salt, email);
+        read.setID(id);
+        userValidator.validate(read);
+        if (user == null) {
+            user = users.putIfAbsent(id, read);
+            if (user != null && matches(user, username, passwordCode, salt, email)) {
+                return user;
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Gets the shared User of an ID, for sources in which all the rows of a User agree,
+     * so that the rest of the row need not be read.
+     * @param id - The ID of the User
+     * @return the User, or null if it has not been read yet.
+     */
+    public User find(long id) {
+        return users.get(id);
+    }
+
+    private static boolean matches(User user, String username, int passwordCode, String salt, String email) {
+        return user.getPasswordCode() == passwordCode && Objects.equals(user.getUsername(), username) &&
+                Objects.equals(user.getSalt(), salt) && Objects.equals(user.getEmail(), email);
+    }
+
+    /**
+     * Gets the number of distinct Users read.
+     * @return the number of Users.
+     */
+    public int size() {
+        return users.size();
+    }
+}
@@ -0,0 +1,131 @@
+package com.socialnetwork.repository.memory;
+
+import com.socialnetwork.domain.User;
+import com.socialnetwork.exceptions.RepositoryException;
+import com.socialnetwork.repository.UserRepository;
+import com.socialnetwork.utils.LongHashMap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * In-memory user store keyed by primitive user IDs, with unique username and email indexes.
+ * Like the other in-memory repositories, it lists the Users in the order in which they were added.
+ */
+public class UserInMemoryRepository implements UserRepository {
+    private final LongHashMap<User> users;
+    private final Map<String, User> usersByUsername;
+    private final Map<String, User> usersByEmail;
+
+    public UserInMemoryRepository() {
+        users = new LongHashMap<>();
+        usersByUsername = new HashMap<>();
+        usersByEmail = new HashMap<>();
+    }
+
+    /**
+     * Checks that the username and email of a User are not used by another User.
+     * @param user - The User
+     * @throws RepositoryException if the username or the email is already taken.
+     */
+    private void checkUnique(User user) throws RepositoryException {
+        User owner = usersByUsername.get(user.getUsername());
+        if (owner != null && owner.getID().longValue() != user.getID()) {
+            throw new RepositoryException("Username already exists!\n");
+        }
+        owner = usersByEmail.get(user.getEmail());
+        if (owner != null && owner.getID().longValue() != user.getID()) {
+            throw new RepositoryException("Email already exists!\n");
+        }
+    }
+
+    @Override
+    public int size() {
+        return users.size();
+    }
+
+    @Override
+    public List<User> getAll() {
+        return users.values();
+    }
+
+    @Override
+    public Stream<User> stream() {
+        return users.stream();
+    }
+
+    @Override
+    public void add(User user) throws RepositoryException {
+        if (users.containsKey(user.getID())) {
+            throw new RepositoryException("Entity already exists!\n");
+        }
+        checkUnique(user);
+        users.put(user.getID(), user);
+        usersByUsername.put(user.getUsername(), user);
+        usersByEmail.put(user.getEmail(), user);
+    }
+
+    @Override
+    public void remove(User user) throws RepositoryException {
+        User removed = users.remove(user.getID());
+        if (removed == null) {
+            throw new RepositoryException("Entity does not exist!\n");
+        }
+        usersByUsername.remove(removed.getUsername(), removed);
+        usersByEmail.remove(removed.getEmail(), removed);
+    }
+
+    @Override
+    public User find(Long id) throws RepositoryException {
+        return find(id.longValue());
+    }
+
+    /**
+     * Finds a User by ID without boxing the ID.
+     * @param id - The ID being looked for
+     * @return the User if it was found.
+     * @throws RepositoryException if the User has not been found.
+     */
+    @Override
+    public User find(long id) throws RepositoryException {
+        User user = users.get(id);
+        if (user == null) {
+            throw new RepositoryException("Entity not found!\n");
+        }
+        return user;
+    }
+
+    @Override
+    public void update(User user) throws RepositoryException {
+        User old = users.get(user.getID());
+        if (old == null) {
+            throw new RepositoryException("Entity does not exist!\n");
+        }
+        checkUnique(user);
+        users.put(user.getID(), user);
+        usersByUsername.remove(old.getUsername(), old);
+        usersByEmail.remove(old.getEmail(), old);
+        usersByUsername.put(user.getUsername(), user);
+        usersByEmail.put(user.getEmail(), user);
+    }
+
+    @Override
+    public User findByUsername(String username) throws RepositoryException {
+        User user = usersByUsername.get(username);
+        if (user == null) {
+            throw new RepositoryException("Entity not found!\n");
+        }
+        return user;
+    }
+
+    @Override
+    public User findByEmail(String email) throws RepositoryException {
+        User user = usersByEmail.get(email);
+        if (user == null) {
+            throw new RepositoryException("Entity not found!\n");
+        }
+        return user;
+    }
+}
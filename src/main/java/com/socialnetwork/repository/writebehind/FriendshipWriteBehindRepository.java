@@ -0,0 +1,75 @@
+package com.socialnetwork.repository.writebehind;
+
+import com.socialnetwork.domain.Friendship;
+import com.socialnetwork.domain.FriendshipStatus;
+import com.socialnetwork.domain.User;
+import com.socialnetwork.exceptions.RepositoryException;
+import com.socialnetwork.repository.FriendshipRepository;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Queues friend requests, accepts and removals, and merges the pending ones into the per-user queries.
+ */
+public class FriendshipWriteBehindRepository extends WriteBehindRepository<Friendship, Set<User>> implements FriendshipRepository {
+    private final FriendshipRepository repository;
+
+    public FriendshipWriteBehindRepository(FriendshipRepository repository, WriteBehindOptions options) {
+        super(repository, options);
+        this.repository = repository;
+    }
+
+    private static boolean isOf(Friendship friendship, User user) {
+        return friendship.getU1().equals(user) || friendship.getU2().equals(user);
+    }
+
+    private static boolean isRequest(Friendship friendship) {
+        return friendship.getStatus().equals(FriendshipStatus.sent);
+    }
+
+    private List<Friendship> read(Query<Friendship> query, Predicate<Friendship> filter, String failure) {
+        try {
+            return read(query, filter);
+        } catch (RepositoryException exception) {
+            throw new IllegalStateException(failure, exception);
+        }
+    }
+
+    @Override
+    public List<Friendship> getAllOf(User user) {
+        return read(() -> repository.getAllOf(user), friendship -> isOf(friendship, user), "getAllOf");
+    }
+
+    @Override
+    public List<Friendship> getFriendshipsOf(User user) {
+        return read(() -> repository.getFriendshipsOf(user),
+                friendship -> isOf(friendship, user) && friendship.getStatus().equals(FriendshipStatus.accepted), "getFriendshipsOf");
+    }
+
+    @Override
+    public List<Friendship> getRequestsTo(User user) {
+        return read(() -> repository.getRequestsTo(user),
+                friendship -> isRequest(friendship) && friendship.getU2().equals(user), "getRequestsTo");
+    }
+
+    @Override
+    public List<Friendship> getRequestsSentBy(User user) {
+        return read(() -> repository.getRequestsSentBy(user),
+                friendship -> isRequest(friendship) && friendship.getU1().equals(user), "getRequestsSentBy");
+    }
+
+    /**
+     * Checks the pending writes of the pair first, and the repository if there are none.
+     */
+    @Override
+    public boolean exists(User u1, User u2) {
+        Set<User> pair = new HashSet<>();
+        pair.add(u1);
+        pair.add(u2);
+        Boolean pending = existsPending(pair);
+        return pending != null ? pending : repository.exists(u1, u2);
+    }
+}
@@ -0,0 +1,62 @@
+package com.socialnetwork.repository.writebehind;
+
+import com.socialnetwork.domain.Message;
+import com.socialnetwork.exceptions.RepositoryException;
+import com.socialnetwork.repository.MessageRepository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Queues sent messages. New messages get their IDs from the repository only once they are written,
+ * so until then they are told apart by identity.
+ */
+public class MessageWriteBehindRepository extends WriteBehindRepository<Message, Long> implements MessageRepository {
+    /**
+     * The key of a message that has no ID yet.
+     */
+    private record NewMessage(Message message) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof NewMessage other && other.message == message;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(message);
+        }
+    }
+
+    private final MessageRepository repository;
+
+    public MessageWriteBehindRepository(MessageRepository repository, WriteBehindOptions options) {
+        super(repository, options);
+        this.repository = repository;
+    }
+
+    @Override
+    protected Object keyOf(Message message) {
+        return message.getID() == 0 ? new NewMessage(message) : message.getID();
+    }
+
+    @Override
+    public List<Message> getAllForSomeone(String receiver) throws RepositoryException {
+        List<Message> messages = new ArrayList<>(read(() -> repository.getAllForSomeone(receiver),
+                message -> message.getReceiver().equals(receiver)));
+        messages.sort(Comparator.comparing(Message::getSentAt));
+        return messages;
+    }
+
+    /**
+     * Pages are keyed on the IDs given by the repository, so the pending messages of the receiver
+     * are written before the page is read.
+     */
+    @Override
+    public List<Message> getInboxPage(String receiver, Message after, int pageSize) throws RepositoryException {
+        if (hasPending(message -> message.getReceiver().equals(receiver))) {
+            flush();
+        }
+        return repository.getInboxPage(receiver, after, pageSize);
+    }
+}
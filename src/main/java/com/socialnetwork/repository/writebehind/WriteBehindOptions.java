@@ -0,0 +1,44 @@
+package com.socialnetwork.repository.writebehind;
+
+public class WriteBehindOptions {
+    // The maximum number of writes waiting to be applied; further writes wait for room.
+    private int queueCapacity = 10_000;
+    // How long a write waits for room in a full queue before it fails.
+    private long enqueueTimeoutMillis = 5000;
+    // The maximum number of writes applied to the repository together.
+    private int batchSize = 256;
+    // If true, the writes still waiting when the JVM exits are applied before it does.
+    private boolean drainOnShutdown = true;
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public long getEnqueueTimeoutMillis() {
+        return enqueueTimeoutMillis;
+    }
+
+    public void setEnqueueTimeoutMillis(long enqueueTimeoutMillis) {
+        this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public boolean isDrainOnShutdown() {
+        return drainOnShutdown;
+    }
+
+    public void setDrainOnShutdown(boolean drainOnShutdown) {
+        this.drainOnShutdown = drainOnShutdown;
+    }
+}
@@ -0,0 +1,498 @@
+package com.socialnetwork.repository.writebehind;
+
+import com.socialnetwork.domain.Entity;
+import com.socialnetwork.exceptions.RepositoryException;
+import com.socialnetwork.repository.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Write-behind decorator for any repository. A write returns as soon as it is queued; a background thread
+ * applies the queued writes to the repository in order, in batches, through its bulk methods.
+ * The queue is bounded: when it is full, writers wait for room, and fail if none frees up in time.
+ * Until a write is applied, reads through this repository see it anyway, from an overlay of the pending writes.
+ * Writes that the repository rejects once they are applied can no longer fail the call that made them;
+ * they are counted, dropped from the overlay, and reported by the next call to flush() or close().
+ * Bulk calls are only used if the bulk writes of the repository are atomic, since a failed bulk call is retried
+ * one write at a time; otherwise every write goes to the repository on its own.
+ */
+public class WriteBehindRepository<E extends Entity<ID>, ID> implements Repository<E, ID> {
+    private enum OperationType {
+        add,
+        update,
+        remove
+    }
+
+    /**
+     * A queued write.
+     */
+    private record Operation<E>(OperationType type, Object key, E entity, long sequence) {}
+
+    /**
+     * The latest pending state of a key: the entity, or null if it is being removed,
+     * and the number of queued writes of the key.
+     */
+    private static class Pending<E> {
+        E entity;
+        int count;
+    }
+
+    private final Repository<E, ID> repository;
+    private final WriteBehindOptions options;
+    private final BlockingQueue<Operation<E>> queue;
+    // One permit per free place in the queue; released once a write has been applied.
+    private final Semaphore room;
+    // The overlay and the queue change together under the write lock. Reads copy the overlay under the read lock
+    // and only then query the repository, without the lock: a write settled in between is in their copy, so they
+    // cannot miss a write that the repository did not show them.
+    private final ReadWriteLock lock;
+    private final Map<Object, Pending<E>> overlay;
+    private final Thread flusher;
+    private final Object applied = new Object();
+    private long lastQueued = 0;
+    private long lastApplied = 0;
+    private volatile boolean closed = false;
+    private final AtomicLong failedWrites = new AtomicLong();
+    // The failures not yet reported by flush(), guarded by applied.
+    private final List<String> failures = new ArrayList<>();
+
+    /**
+     * Puts a write-behind queue in front of a repository and starts the thread that empties it.
+     * @param repository - The repository the writes are applied to
+     * @param options - The size of the queue and of the batches
+     */
+    public WriteBehindRepository(Repository<E, ID> repository, WriteBehindOptions options) {
+        this.repository = repository;
+        this.options = options;
+        this.queue = new LinkedBlockingQueue<>();
+        this.room = new Semaphore(options.getQueueCapacity(), true);
+        this.lock = new ReentrantReadWriteLock();
+        this.overlay = new LinkedHashMap<>();
+        this.flusher = new Thread(this::flushLoop, "write-behind-" + repository.getClass().getSimpleName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+        if (options.isDrainOnShutdown()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    close();
+                } catch (RepositoryException exception) {
+                    System.out.println(exception.getMessage());
+                }
+            }));
+        }
+    }
+
+    /**
+     * Gets the key under which the pending writes of an entity are kept. Entities with the same key
+     * are the same entity; by default the key is the ID.
+     * @param entity - The entity
+     * @return the key.
+     */
+    protected Object keyOf(E entity) {
+        return entity.getID();
+    }
+
+    protected Repository<E, ID> getRepository() {
+        return repository;
+    }
+
+    /**
+     * Queues writes, waiting for room if the queue is full. More writes than fit in the queue
+     * are queued a queueful at a time.
+     * @throws RepositoryException if the repository is closed or no room freed up in time.
+     */
+    private void enqueue(OperationType type, Collection<E> entities) throws RepositoryException {
+        List<E> remaining = new ArrayList<>(entities);
+        int capacity = options.getQueueCapacity();
+        for (int start = 0; start < remaining.size(); start += capacity) {
+            enqueueChunk(type, remaining.subList(start, Math.min(start + capacity, remaining.size())));
+        }
+    }
+
+    private void enqueueChunk(OperationType type, List<E> entities) throws RepositoryException {
+        try {
+            if (!room.tryAcquire(entities.size(), options.getEnqueueTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                throw new RepositoryException("Too many pending writes!\n");
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted while waiting to write!\n");
+        }
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                room.release(entities.size());
+                throw new RepositoryException("Repository is closed!\n");
+            }
+            for (E entity : entities) {
+                Object key = keyOf(entity);
+                Pending<E> pending = overlay.computeIfAbsent(key, k -> new Pending<>());
+                pending.entity = type.equals(OperationType.remove) ? null : entity;
+                pending.count++;
+                queue.add(new Operation<>(type, key, entity, ++lastQueued));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void flushLoop() {
+        List<Operation<E>> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException exception) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            queue.drainTo(batch, options.getBatchSize() - 1);
+            applyBatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Applies a batch of writes in order: each run of writes of the same type goes to the repository
+     * as one bulk call, and if the bulk call fails, its writes are retried one by one. The retry would
+     * write a second time what a partly applied bulk call wrote, so the bulk call is skipped for
+     * repositories whose bulk writes are not atomic.
+     */
+    private void applyBatch(List<Operation<E>> batch) {
+        int start = 0;
+        while (start < batch.size()) {
+            OperationType type = batch.get(start).type();
+            int end = start;
+            List<E> run = new ArrayList<>();
+            while (end < batch.size() && batch.get(end).type().equals(type)) {
+                run.add(batch.get(end).entity());
+                end++;
+            }
+            try {
+                if (!repository.hasAtomicBulkWrites() || !tryApply(type, run)) {
+                    for (E entity : run) {
+                        try {
+                            apply(type, List.of(entity));
+                        } catch (RepositoryException exception) {
+                            fail(type, 1, exception.getMessage());
+                        }
+                    }
+                }
+            } catch (RuntimeException exception) {
+                exception.printStackTrace();
+                fail(type, run.size(), exception + "\n");
+            }
+            settle(batch.subList(start, end));
+            start = end;
+        }
+    }
+
+    /**
+     * Applies writes as one bulk call.
+     * @return false if the repository rejected them, in which case none of them was applied.
+     */
+    private boolean tryApply(OperationType type, List<E> entities) {
+        try {
+            apply(type, entities);
+            return true;
+        } catch (RepositoryException exception) {
+            return false;
+        }
+    }
+
+    private void apply(OperationType type, List<E> entities) throws RepositoryException {
+        switch (type) {
+            case add -> repository.addAll(entities);
+            case update -> repository.updateAll(entities);
+            case remove -> repository.removeAll(entities);
+        }
+    }
+
+    /**
+     * Records writes that the repository rejected, to be reported by the next flush.
+     */
+    private void fail(OperationType type, int count, String message) {
+        failedWrites.addAndGet(count);
+        synchronized (applied) {
+            failures.add(count + " queued " + type + " failed: " + message);
+        }
+    }
+
+    /**
+     * Drops applied writes from the overlay and frees their places in the queue.
+     */
+    private void settle(List<Operation<E>> operations) {
+        lock.writeLock().lock();
+        try {
+            for (Operation<E> operation : operations) {
+                Pending<E> pending = overlay.get(operation.key());
+                if (pending != null && --pending.count == 0) {
+                    overlay.remove(operation.key());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        room.release(operations.size());
+        synchronized (applied) {
+            lastApplied = operations.get(operations.size() - 1).sequence();
+            applied.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until every write queued before the call has been applied to the repository.
+     * @throws RepositoryException if queued writes failed since the last flush; they are reported once.
+     */
+    public void flush() throws RepositoryException {
+        long target;
+        lock.readLock().lock();
+        try {
+            target = lastQueued;
+        } finally {
+            lock.readLock().unlock();
+        }
+        synchronized (applied) {
+            while (lastApplied < target) {
+                try {
+                    applied.wait();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new RepositoryException("Interrupted while waiting for the pending writes!\n");
+                }
+            }
+            if (!failures.isEmpty()) {
+                String message = String.join("", failures);
+                failures.clear();
+                throw new RepositoryException(message);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting writes, applies the ones still queued and stops the background thread.
+     * Called on shutdown if drainOnShutdown is set.
+     * @throws RepositoryException if queued writes failed since the last flush.
+     */
+    public void close() throws RepositoryException {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            flush();
+        } finally {
+            // Nothing can be queued anymore, so the thread is idle, waiting for the next write.
+            flusher.interrupt();
+        }
+    }
+
+    /**
+     * Gets the number of writes that are queued and not yet applied.
+     * @return the number of pending writes.
+     */
+    public int getPendingWrites() {
+        return options.getQueueCapacity() - room.availablePermits();
+    }
+
+    /**
+     * Gets the number of queued writes that the repository rejected when they were applied.
+     * @return the number of failed writes.
+     */
+    public long getFailedWrites() {
+        return failedWrites.get();
+    }
+
+    /**
+     * Copies the latest pending state of every key with pending writes.
+     * @return the pending entities by key, null for the ones being removed.
+     */
+    private Map<Object, E> snapshot() {
+        lock.readLock().lock();
+        try {
+            if (overlay.isEmpty()) {
+                return Map.of();
+            }
+            Map<Object, E> snapshot = new LinkedHashMap<>();
+            overlay.forEach((key, pending) -> snapshot.put(key, pending.entity));
+            return snapshot;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the pending writes to some entities read from the repository.
+     * @param pendingWrites - The pending writes, copied before the entities were read
+     * @param stored - The entities read from the repository
+     * @param filter - Whether a pending entity belongs in the result
+     * @return the entities as they will be once the pending writes are applied.
+     */
+    private List<E> overlay(Map<Object, E> pendingWrites, List<E> stored, Predicate<E> filter) {
+        if (pendingWrites.isEmpty()) {
+            return stored;
+        }
+        Map<Object, E> merged = new LinkedHashMap<>();
+        for (E entity : stored) {
+            merged.put(keyOf(entity), entity);
+        }
+        pendingWrites.forEach((key, entity) -> {
+            if (entity != null && filter.test(entity)) {
+                // A new entity may have been given its ID by the repository while its write was being applied.
+                merged.remove(keyOf(entity));
+                merged.put(key, entity);
+            } else {
+                merged.remove(key);
+            }
+        });
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * Runs a query on the repository and applies the pending writes to its result.
+     * @param query - Runs the query on the repository
+     * @param filter - Whether an entity belongs in the result of the query
+     * @return the result of the query, as it will be once the pending writes are applied.
+     */
+    protected List<E> read(Query<E> query, Predicate<E> filter) throws RepositoryException {
+        Map<Object, E> pendingWrites = snapshot();
+        return overlay(pendingWrites, query.run(), filter);
+    }
+
+    /**
+     * Looks an entity up in the pending writes.
+     * @param key - The key of the entity
+     * @return null if the entity has no pending writes, otherwise whether it will exist once they are applied.
+     */
+    protected Boolean existsPending(Object key) {
+        lock.readLock().lock();
+        try {
+            Pending<E> pending = overlay.get(key);
+            return pending == null ? null : pending.entity != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether there are pending writes on the entities that match a filter.
+     * @param filter - The filter
+     * @return true if one of the pending writes matches.
+     */
+    protected boolean hasPending(Predicate<E> filter) {
+        lock.readLock().lock();
+        try {
+            for (Operation<E> operation : queue) {
+                if (filter.test(operation.entity())) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a query on the repository.
+     * @param <E> - The type of the entities
+     */
+    protected interface Query<E> {
+        List<E> run() throws RepositoryException;
+    }
+
+    @Override
+    public int size() {
+        Map<Object, E> pendingWrites = snapshot();
+        return pendingWrites.isEmpty() ? repository.size() : overlay(pendingWrites, repository.getAll(), entity -> true).size();
+    }
+
+    @Override
+    public List<E> getAll() {
+        Map<Object, E> pendingWrites = snapshot();
+        return overlay(pendingWrites, repository.getAll(), entity -> true);
+    }
+
+    /**
+     * Streams the repository directly if nothing is pending, and a merged copy otherwise.
+     * @return a stream of the entities, which must be closed after use.
+     */
+    @Override
+    public Stream<E> stream() {
+        Map<Object, E> pendingWrites = snapshot();
+        if (pendingWrites.isEmpty()) {
+            return repository.stream();
+        }
+        return overlay(pendingWrites, repository.getAll(), entity -> true).stream();
+    }
+
+    @Override
+    public E find(ID id) throws RepositoryException {
+        boolean pending;
+        E entity;
+        lock.readLock().lock();
+        try {
+            Pending<E> latest = overlay.get(id);
+            pending = latest != null;
+            entity = pending ? latest.entity : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (!pending) {
+            return repository.find(id);
+        }
+        if (entity == null) {
+            throw new RepositoryException("Entity not found!\n");
+        }
+        return entity;
+    }
+
+    @Override
+    public void add(E entity) throws RepositoryException {
+        enqueue(OperationType.add, List.of(entity));
+    }
+
+    @Override
+    public void remove(E entity) throws RepositoryException {
+        enqueue(OperationType.remove, List.of(entity));
+    }
+
+    @Override
+    public void update(E entity) throws RepositoryException {
+        enqueue(OperationType.update, List.of(entity));
+    }
+
+    @Override
+    public void addAll(Collection<E> entities) throws RepositoryException {
+        enqueue(OperationType.add, entities);
+    }
+
+    @Override
+    public void removeAll(Collection<E> entities) throws RepositoryException {
+        enqueue(OperationType.remove, entities);
+    }
+
+    @Override
+    public void updateAll(Collection<E> entities) throws RepositoryException {
+        enqueue(OperationType.update, entities);
+    }
+}
@@ -8,23 +8,29 @@ import com.socialnetwork.domain.dto.FriendshipDto;
 import com.socialnetwork.domain.validators.UserValidator;
 import com.socialnetwork.exceptions.RepositoryException;
 import com.socialnetwork.exceptions.ValidationException;
-import com.socialnetwork.repository.Repository;
+import com.socialnetwork.repository.FriendshipRepository;
+import com.socialnetwork.repository.MessageRepository;
+import com.socialnetwork.repository.UserRepository;
 import com.socialnetwork.utils.Constants;
 import com.socialnetwork.utils.Graph;
+import com.socialnetwork.utils.LongHashMap;
 import com.socialnetwork.utils.RandomString;
+import com.socialnetwork.utils.observer.Change;
 import com.socialnetwork.utils.observer.Observable;
 import com.socialnetwork.utils.observer.Observer;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class NetworkService implements Observable {
-    private Repository<User, Long> usersRepo;
+    private UserRepository usersRepo;
     private UserValidator userVal;
-    private Repository<Friendship, Set<User>> friendshipsRepo;
+    private FriendshipRepository friendshipsRepo;
     private List<Observer> observers;
-    private Repository<Message, Long> messageRepo;
+    private MessageRepository messageRepo;
 
     private static final NetworkService network = new NetworkService();
 
@@ -38,12 +44,13 @@ public class NetworkService implements Observable {
         return network;
     }
 
-    public void initialize(Repository<User, Long> usersRepo, UserValidator userVal, Repository<Friendship, Set<User>> friendshipsRepo, Repository<Message, Long> messageRepo) {
+    public void initialize(UserRepository usersRepo, UserValidator userVal, FriendshipRepository friendshipsRepo, MessageRepository messageRepo) {
         network.usersRepo = usersRepo;
         network.userVal = userVal;
         network.friendshipsRepo = friendshipsRepo;
         network.messageRepo = messageRepo;
-        network.observers = new ArrayList<>();
+        // Observers may be notified from any thread that drives the service.
+        network.observers = new CopyOnWriteArrayList<>();
     }
 
     @Override
@@ -63,6 +70,17 @@ public class NetworkService implements Observable {
         }
     }
 
+    /**
+     * Notifies the observers of a change, e.g. one made by another client, so that they refresh only what it concerns.
+     * @param change - The change
+     */
+    @Override
+    public void notifyObservers(Change change) {
+        for (Observer observer : observers) {
+            observer.update(change);
+        }
+    }
+
     private long getUserIDFromUsername(String username) {
         return Math.abs((long) Objects.hash(username));
     }
@@ -112,18 +130,10 @@ public class NetworkService implements Observable {
     public void removeUser(String username) throws RepositoryException {
         User user = usersRepo.find(getUserIDFromUsername(username));
         // Delete all Friendships of the User.
-        List<Friendship> userFriendships = new ArrayList<>();
-        for (Friendship friendship : friendshipsRepo.getAll()) {
-            if (friendship.getU1().equals(user) || friendship.getU2().equals(user)) {
-                // Add them to a list so that the iterator doesn't get confused when deleting.
-                userFriendships.add(friendship);
-            }
-        }
+        List<Friendship> userFriendships = friendshipsRepo.getAllOf(user);
 
         if (!userFriendships.isEmpty()) {
-            for (Friendship friendship : userFriendships) {
-                friendshipsRepo.remove(friendship);
-            }
+            friendshipsRepo.removeAll(userFriendships);
         }
         usersRepo.remove(user);
 
@@ -157,15 +167,17 @@ public class NetworkService implements Observable {
 
         // Update friendships.
         // NOTE: not necessary for database repository.
-        for (int i = 0; i < friendshipsRepo.size(); i++) {
-            Friendship friendship = friendshipsRepo.getAll().get(i);
+        List<Friendship> updatedFriendships = new ArrayList<>();
+        for (Friendship friendship : friendshipsRepo.getAllOf(newUser)) {
             if (friendship.getU1().equals(newUser)) {
-                friendshipsRepo.update(new Friendship(newUser, friendship.getU2(), friendship.getFriendsFrom(), friendship.getStatus()));
-            }
-            if (friendship.getU2().equals(newUser)) {
-                friendshipsRepo.update(new Friendship(friendship.getU1(), newUser, friendship.getFriendsFrom(), friendship.getStatus()));
+                updatedFriendships.add(new Friendship(newUser, friendship.getU2(), friendship.getFriendsFrom(), friendship.getStatus()));
+            } else {
+                updatedFriendships.add(new Friendship(friendship.getU1(), newUser, friendship.getFriendsFrom(), friendship.getStatus()));
             }
         }
+        if (!updatedFriendships.isEmpty()) {
+            friendshipsRepo.updateAll(updatedFriendships);
+        }
 
         notifyAllObservers();
     }
@@ -227,56 +239,40 @@ public class NetworkService implements Observable {
     }
 
     /**
-     * Initialize adjacency matrix with 0.
-     * @param adj - The adjacency matrix
-     * @param vertexCount - The number of vertexes
+     * Maps the Network to an undirected graph, so that the communities of the Network are the
+     * connected components of the graph. Vertex i is the User at index i of users, and every
+     * friendship, whatever its status, is an edge. The friendships are read once.
+     * @param users - The Users of the Network
+     * @return the graph.
      */
-    private void initAdjacencyMatrix(int[][] adj, int vertexCount) {
-        for (int i = 0; i < vertexCount; i++) {
-            for (int j = 0; j < vertexCount; j++) {
-                adj[i][j] = 0;
-            }
+    private Graph mapNetworkToGraph(List<User> users) {
+        LongHashMap<Integer> vertexes = new LongHashMap<>(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            vertexes.put(users.get(i).getID(), i);
         }
-    }
-
-    /**
-     * Initialize a boolean vector with false.
-     * @param vector - Boolean vector
-     * @param size - Number of elements in the vector
-     */
-    private void initBooleanWithFalse(boolean[] vector, int size) {
-        for (int i = 0; i < size; i++) {
-            vector[i] = false;
-        }
-    }
-
-    /**
-     * Maps the Network to an undirected graph, so that the number of communities in the
-     * Network is equal to the number of connected components in the graph and then
-     * computes that number.
-     * @return the adjacency matrix of the graph.
-     */
-    private int[][] mapNetworkToGraph() {
-        int vertexCount = usersRepo.size();
-        int[][] adj = new int[vertexCount][vertexCount];
-        initAdjacencyMatrix(adj,vertexCount);
-        List<User> users = usersRepo.getAll();
-        for (int i = 0; i < vertexCount; i++) {
-            for (int j = 0; j < vertexCount; j++) {
-                try {
-                    if (i != j) {
-                        Set<User> friendshipID = new HashSet<>();
-                        friendshipID.add(users.get(i));
-                        friendshipID.add(users.get(j));
-                        friendshipsRepo.find(friendshipID);
-                        // If find is successful, update the adjacency matrix with 1.
-                        adj[i][j] = 1;
-                        adj[j][i] = 1;
-                    }
-                } catch (RepositoryException ignored) {}
+        int capacity = Math.max(friendshipsRepo.size(), 16);
+        int[] from = new int[capacity];
+        int[] to = new int[capacity];
+        int edgeCount = 0;
+        try (Stream<Friendship> friendships = friendshipsRepo.stream()) {
+            Iterator<Friendship> iterator = friendships.iterator();
+            while (iterator.hasNext()) {
+                Friendship friendship = iterator.next();
+                Integer u1 = vertexes.get(friendship.getU1().getID());
+                Integer u2 = vertexes.get(friendship.getU2().getID());
+                if (u1 == null || u2 == null || u1.equals(u2)) {
+                    continue;
+                }
+                if (edgeCount == from.length) {
+                    from = Arrays.copyOf(from, edgeCount * 2);
+                    to = Arrays.copyOf(to, edgeCount * 2);
+                }
+                from[edgeCount] = u1;
+                to[edgeCount] = u2;
+                edgeCount++;
             }
         }
-        return adj;
+        return new Graph(users.size(), from, to, edgeCount);
     }
 
     /**
@@ -285,76 +281,37 @@ public class NetworkService implements Observable {
      * @return the number of communities.
      */
     public int getNumberOfCommunities() {
-        int vertexCount = usersRepo.size();
-
-        int[][] adj = mapNetworkToGraph();
-        boolean[] visited = new boolean[vertexCount];
-        initBooleanWithFalse(visited, vertexCount);
-
-        // Find number of connected components.
-        int communitiesCount = 0;
-        for (int i = 0; i < vertexCount; i++) {
-            if (!visited[i]) {
-                Graph.dfs(adj, visited, vertexCount, i);
-                communitiesCount++;
-            }
-        }
-        return communitiesCount;
+        return mapNetworkToGraph(usersRepo.getAll()).getComponents().count();
     }
 
     /**
      * Gets the most sociable community in the Network
-     * (connected component with the longest path)
+     * (connected component with the longest path between two of its Users, as found by Graph.getDiameters:
+     * exactly for communities without cycles or of at most Constants.GRAPH_EXACT_DIAMETER_MAXIMUM_SIZE Users,
+     * and as a lower bound for larger ones with cycles, so a large community may lose to a smaller one)
      * @return a User list containing the Users that make up
      * the most sociable community
      */
     public List<User> mostSociableCommunity() {
         List<User> users = usersRepo.getAll();
-        int vertexCount = usersRepo.size();
+        Graph graph = mapNetworkToGraph(users);
+        Graph.Components components = graph.getComponents();
+        int[] diameters = graph.getDiameters(components);
 
-        int[][] adj = mapNetworkToGraph();
-        boolean[] visited = new boolean[vertexCount];
-        initBooleanWithFalse(visited, vertexCount);
-
-        boolean[] startedBFSFrom = new boolean[vertexCount];
-        initBooleanWithFalse(startedBFSFrom, vertexCount);
+        // The first community with the longest path wins; communities of a single User have none.
+        int mostSociable = -1;
+        int maxLength = 0;
+        for (int component = 0; component < components.count(); component++) {
+            if (diameters[component] > maxLength) {
+                maxLength = diameters[component];
+                mostSociable = component;
+            }
+        }
 
         List<User> result = new ArrayList<>();
-        int maxLength = 0;
-        for (int i = 0; i < vertexCount; i++) {
-            if (!visited[i]) {
-                // Find each connected component.
-                Graph.dfs(adj, visited, vertexCount, i);
-
-                // For each connected component, do a BFS from each
-                // of the vertexes to find the longest path between
-                // two vertexes.
-                for (int j = 0; j < vertexCount; j++) {
-                    if (visited[j] && !startedBFSFrom[j]) {
-                        // Mark vertexes which already were the starting
-                        // points for BFS.
-                        startedBFSFrom[j] = true;
-
-                        boolean[] visitedDuringBFS = new boolean[vertexCount];
-                        initBooleanWithFalse(visitedDuringBFS, vertexCount);
-
-                        int localLength = Graph.bfs(adj, visitedDuringBFS, vertexCount, j);
-
-                        if (localLength > maxLength) { // New longest path has been found.
-                            maxLength = localLength;
-
-                            // Store in the result the users that make up
-                            // the connected component with the current
-                            // longest path.
-                            result.clear();
-                            for (int k = 0; k < vertexCount; k++) {
-                                if (visitedDuringBFS[k]) {
-                                    result.add(users.get(k));
-                                }
-                            }
-                        }
-                    }
-                }
+        for (int i = 0; i < users.size(); i++) {
+            if (components.labels()[i] == mostSociable) {
+                result.add(users.get(i));
             }
         }
         return result;
@@ -382,14 +339,9 @@ public class NetworkService implements Observable {
      */
     public List<User> getFriends(User user) {
         List<User> friends = new ArrayList<>();
-        for (Friendship friendship : friendshipsRepo.getAll()) {
-            if (friendship.getStatus().equals(FriendshipStatus.accepted)) { // Ignore the pending requests.
-                if (friendship.getU1().equals(user)) {
-                    friends.add(friendship.getU2());
-                } else if (friendship.getU2().equals(user)) {
-                    friends.add(friendship.getU1());
-                }
-            }
+        // Only the accepted friendships; the pending requests are ignored.
+        for (Friendship friendship : friendshipsRepo.getFriendshipsOf(user)) {
+            friends.add(friendship.getU1().equals(user) ? friendship.getU2() : friendship.getU1());
         }
         return friends;
     }
@@ -401,20 +353,14 @@ public class NetworkService implements Observable {
      */
     public List<FriendshipDto> getFriendships(User user) {
         List<FriendshipDto> friendships = new ArrayList<>();
-
-        for (Friendship friendship : friendshipsRepo.getAll()) {
-            if (friendship.getStatus().equals(FriendshipStatus.accepted)) {
-                if (friendship.getU1().equals(user)) {
-                    friendships.add(new FriendshipDto(friendship.getU2().getUsername(), friendship.getFriendsFrom(), friendship.getStatus()));
-                } else if (friendship.getU2().equals(user)) {
-                    friendships.add(new FriendshipDto(friendship.getU1().getUsername(), friendship.getFriendsFrom(), friendship.getStatus()));
-                }
-            } else if (friendship.getStatus().equals(FriendshipStatus.sent) &&
-            friendship.getU1().equals(user)) { // If the user has sent a friend request to someone.
-                friendships.add(new FriendshipDto(friendship.getU2().getUsername(), friendship.getFriendsFrom(), friendship.getStatus()));
-            }
+        for (Friendship friendship : friendshipsRepo.getFriendshipsOf(user)) {
+            User friend = friendship.getU1().equals(user) ? friendship.getU2() : friendship.getU1();
+            friendships.add(new FriendshipDto(friend.getUsername(), friendship.getFriendsFrom(), friendship.getStatus()));
+        }
+        // The friend requests the user has sent to someone.
+        for (Friendship friendship : friendshipsRepo.getRequestsSentBy(user)) {
+            friendships.add(new FriendshipDto(friendship.getU2().getUsername(), friendship.getFriendsFrom(), friendship.getStatus()));
         }
-
         return friendships;
     }
 
@@ -424,15 +370,9 @@ public class NetworkService implements Observable {
      * @return a list of the user's friend requests.
      */
     public List<FriendshipDto> getFriendRequests(User user) {
-        List<FriendshipDto> friendRequests = new ArrayList<>();
-        for (Friendship friendship : friendshipsRepo.getAll()) {
-            if (friendship.getStatus().equals(FriendshipStatus.sent)) {
-                 if(friendship.getU2().equals(user)) {
-                     friendRequests.add(new FriendshipDto(friendship.getU1().getUsername(), friendship.getFriendsFrom(), FriendshipStatus.received));
-                }
-            }
-        }
-        return friendRequests;
+        return friendshipsRepo.getRequestsTo(user).stream()
+                .map(friendship -> new FriendshipDto(friendship.getU1().getUsername(), friendship.getFriendsFrom(), FriendshipStatus.received))
+                .collect(Collectors.toList());
     }
 
     /**
@@ -444,11 +384,8 @@ public class NetworkService implements Observable {
     public void addFriend(User user, String friendUsername) throws RepositoryException {
         User friend = usersRepo.find(getUserIDFromUsername(friendUsername));
 
-        for (Friendship friendship : friendshipsRepo.getAll()) {
-            if (friendship.getU1().equals(user) && friendship.getU2().equals(friend) ||
-            friendship.getU1().equals(friend) && friendship.getU2().equals(user)) {
-                throw new RepositoryException("Already friends or a friend request has already been sent!");
-            }
+        if (friendshipsRepo.exists(user, friend)) {
+            throw new RepositoryException("Already friends or a friend request has already been sent!");
         }
 
         friendshipsRepo.add(new Friendship(user, friend, LocalDateTime.now(), FriendshipStatus.sent));
@@ -500,6 +437,26 @@ public class NetworkService implements Observable {
     }
 
     public List<Message> getAllMessagesForSomeone(String username) {
-        return messageRepo.getAll().stream().filter(m -> m.getReceiver().equals(username)).sorted(Comparator.comparing(Message::getSentAt)).collect(Collectors.toList());
+        try {
+            return messageRepo.getAllForSomeone(username);
+        } catch (RepositoryException exception) {
+            exception.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Gets a page of the inbox of a user, the most recent messages first.
+     * @param username - The username of the receiver
+     * @param after - The last message of the previous page, or null for the first page
+     * @return at most Constants.INBOX_PAGE_SIZE messages.
+     */
+    public List<Message> getInboxPage(String username, Message after) {
+        try {
+            return messageRepo.getInboxPage(username, after, Constants.INBOX_PAGE_SIZE);
+        } catch (RepositoryException exception) {
+            exception.printStackTrace();
+            return new ArrayList<>();
+        }
     }
 }
\ No newline at end of file
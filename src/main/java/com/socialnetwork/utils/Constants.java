@@ -11,5 +11,25 @@ public class Constants {
 
     public static final int SALT_SIZE = 8;
 
+    public static final int DATABASE_FETCH_SIZE = 500;
+
+    public static final int DATABASE_POOL_SIZE = 10;
+
+    public static final long DATABASE_POOL_TIMEOUT_MILLIS = 5000;
+
+    public static final int DATABASE_STATEMENT_CACHE_SIZE = 32;
+
+    public static final long DATABASE_REPLICA_STICKINESS_MILLIS = 5000;
+
+    public static final int CHANGE_FEED_POLL_MILLIS = 500;
+
+    public static final long CHANGE_FEED_RECONNECT_MILLIS = 5000;
+
+    public static final int CHANGE_FEED_MAXIMUM_CHANGES = 100;
+
+    public static final int INBOX_PAGE_SIZE = 20;
+
+    public static final int GRAPH_EXACT_DIAMETER_MAXIMUM_SIZE = 2000;
+
     public static final String ALPHA_NUMERIC_STRINGS = "QWERTYUIOPASDFGHJKLZXCVBNMqwertyuiopasdfghjklzxcvbnm1234567890";
 }
@@ -1,57 +1,190 @@
 package com.socialnetwork.utils;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Arrays;
 
+/**
+ * Undirected graph over the vertexes 0..vertexCount-1, stored in compressed sparse row form:
+ * the neighbours of vertex v are neighbours[offsets[v]] .. neighbours[offsets[v + 1] - 1].
+ * It takes O(V + E) memory, and each traversal below takes O(V + E) time; they are iterative,
+ * so long chains of vertexes do not overflow the stack.
+ */
 public class Graph {
     /**
-     * DFS in an undirected graph.
-     * @param adj         - Adjacency matrix
-     * @param visited     - Boolean vector
+     * The connected components of a graph.
+     * @param count - The number of components
+     * @param labels - For every vertex, its component, numbered in the order of their lowest vertex
+     */
+    public record Components(int count, int[] labels) {}
+
+    private final int vertexCount;
+    private final int[] offsets;
+    private final int[] neighbours;
+
+    /**
+     * Builds a graph from its edges, in two passes over them: one to count the degrees and one to place the neighbours.
      * @param vertexCount - Number of vertexes in the graph
-     * @param start       - The starting vertex
+     * @param from - One end of every edge
+     * @param to - The other end of every edge
+     * @param edgeCount - The number of edges, i.e. of used entries in from and to
+     */
+    public Graph(int vertexCount, int[] from, int[] to, int edgeCount) {
+        this.vertexCount = vertexCount;
+        this.offsets = new int[vertexCount + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            offsets[from[i] + 1]++;
+            offsets[to[i] + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        this.neighbours = new int[offsets[vertexCount]];
+        int[] next = new int[vertexCount];
+        System.arraycopy(offsets, 0, next, 0, vertexCount);
+        for (int i = 0; i < edgeCount; i++) {
+            neighbours[next[from[i]]++] = to[i];
+            neighbours[next[to[i]]++] = from[i];
+        }
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getDegree(int vertex) {
+        return offsets[vertex + 1] - offsets[vertex];
+    }
+
+    /**
+     * Finds the connected components of the graph.
+     * @return the components.
      */
-    public static void dfs(int[][] adj, boolean[] visited, int vertexCount, int start) {
-        visited[start] = true;
-        for (int i = 0; i < vertexCount; i++) {
-            if (adj[start][i] > 0 && !visited[i]) {
-                dfs(adj, visited, vertexCount, i);
+    public Components getComponents() {
+        int[] labels = new int[vertexCount];
+        Arrays.fill(labels, -1);
+        int[] queue = new int[vertexCount];
+        int count = 0;
+        for (int start = 0; start < vertexCount; start++) {
+            if (labels[start] < 0) {
+                labels[start] = count;
+                int head = 0;
+                int tail = 0;
+                queue[tail++] = start;
+                while (head < tail) {
+                    int current = queue[head++];
+                    for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                        if (labels[neighbours[i]] < 0) {
+                            labels[neighbours[i]] = count;
+                            queue[tail++] = neighbours[i];
+                        }
+                    }
+                }
+                count++;
             }
         }
+        return new Components(count, labels);
     }
 
     /**
-     * BFS in an undirected graph; finds the number of levels from the starting point.
-     * @param adj - Adjacency matrix
-     * @param visited - Boolean vector
-     * @param vertexCount - Number of vertexes in the graph
-     * @param start - The starting vertex
-     * @return the number of levels from the starting point.
+     * Finds the diameter (the longest shortest path) of every component, exactly for the components
+     * of at most Constants.GRAPH_EXACT_DIAMETER_MAXIMUM_SIZE vertexes.
+     * @param components - The components of the graph
+     * @return for every component, the length of the path found.
      */
-    public static int bfs(int[][] adj, boolean[] visited, int vertexCount, int start) {
-        Queue<Integer> queue = new LinkedList<>();
-        visited[start] = true;
-        queue.add(start);
-        int length = 0;
-
-        while (!queue.isEmpty()) {
-            int current = queue.poll();
-            visited[current] = true;
-
-            boolean found = false;
-            for (int i = 0; i < vertexCount; i++) {
-                if (adj[current][i] > 0 && !visited[i]) {
-                    found = true;
-                    queue.add(i);
+    public int[] getDiameters(Components components) {
+        return getDiameters(components, Constants.GRAPH_EXACT_DIAMETER_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Finds the diameter (the longest shortest path) of every component. A component without cycles, such as
+     * a tree or a path, and any component of at most maximumExactSize vertexes gets its exact diameter: the first
+     * with a double sweep (a BFS from any vertex, then a BFS from the vertex it reached last), in O(V + E),
+     * the second with a BFS from every vertex, in O(V * (V + E)). A larger component with cycles gets the double
+     * sweep, which is only a lower bound there, as low as half of the diameter.
+     * @param components - The components of the graph
+     * @param maximumExactSize - The number of vertexes up to which a component with cycles is measured exactly
+     * @return for every component, the length of the path found.
+     */
+    public int[] getDiameters(Components components, int maximumExactSize) {
+        int[] sizes = new int[components.count()];
+        long[] degrees = new long[components.count()];
+        for (int v = 0; v < vertexCount; v++) {
+            sizes[components.labels()[v]]++;
+            degrees[components.labels()[v]] += getDegree(v);
+        }
+        int[] diameters = new int[components.count()];
+        int[] distances = new int[vertexCount];
+        Arrays.fill(distances, -1);
+        int[] queue = new int[vertexCount];
+        boolean[] swept = new boolean[components.count()];
+        for (int start = 0; start < vertexCount; start++) {
+            int component = components.labels()[start];
+            if (swept[component]) {
+                continue;
+            }
+            swept[component] = true;
+            int farthest = sweep(start, distances, queue);
+            // A connected component is a tree exactly when it has one edge less than it has vertexes.
+            boolean acyclic = degrees[component] / 2 == sizes[component] - 1;
+            if (acyclic || sizes[component] > maximumExactSize) {
+                int other = sweep(farthest, distances, queue);
+                diameters[component] = distances[other];
+                clear(distances, queue, other);
+            } else {
+                // The first sweep left the vertexes of the component in the queue.
+                int[] members = Arrays.copyOf(queue, sizes[component]);
+                int last = start;
+                for (int member : members) {
+                    last = sweep(member, distances, queue);
+                    diameters[component] = Math.max(diameters[component], distances[last]);
                 }
+                clear(distances, queue, last);
             }
+        }
+        return diameters;
+    }
 
-            // Increment the level size.
-            if (found) {
-                length++;
+    /**
+     * BFS from a vertex, leaving in distances the distance of every vertex of its component.
+     * Only the distances the previous sweep left in the component are cleared first, so that
+     * sweeping every component costs O(V + E) in total.
+     * @return the vertex reached last, which is one of the farthest from the start.
+     */
+    private int sweep(int start, int[] distances, int[] queue) {
+        if (distances[start] >= 0) {
+            clear(distances, queue, start);
+        }
+        int head = 0;
+        int tail = 0;
+        distances[start] = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int current = queue[head++];
+            for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                if (distances[neighbours[i]] < 0) {
+                    distances[neighbours[i]] = distances[current] + 1;
+                    queue[tail++] = neighbours[i];
+                }
             }
         }
+        return queue[tail - 1];
+    }
 
-        return length;
+    /**
+     * Resets the distances of the component of a vertex.
+     */
+    private void clear(int[] distances, int[] queue, int vertex) {
+        int head = 0;
+        int tail = 0;
+        distances[vertex] = -1;
+        queue[tail++] = vertex;
+        while (head < tail) {
+            int current = queue[head++];
+            for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                if (distances[neighbours[i]] >= 0) {
+                    distances[neighbours[i]] = -1;
+                    queue[tail++] = neighbours[i];
+                }
+            }
+        }
     }
 }
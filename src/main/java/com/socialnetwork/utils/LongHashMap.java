@@ -0,0 +1,251 @@
+package com.socialnetwork.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Open-addressing hash map from primitive long keys to objects, which keeps the insertion order.
+ * The entries are stored unboxed, in insertion order, in dense key and value arrays; the hash table
+ * only holds indexes into them, and collisions are resolved by linear probing, so lookups do no
+ * allocation and no equals() calls. Null values are not allowed.
+ * @param <V> - The type of the values
+ */
+public class LongHashMap<V> {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    // For every slot, the index of its entry plus one, or 0 if the slot is free.
+    private int[] table;
+    private int mask;
+    private int resizeThreshold;
+    // The entries, in insertion order. A removed entry leaves a null value behind until the arrays are compacted.
+    private long[] entryKeys;
+    private Object[] entryValues;
+    private int entryCount;
+    private int size;
+
+    public LongHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a map able to hold the given number of entries without resizing.
+     * @param expectedSize - The expected number of entries
+     */
+    public LongHashMap(int expectedSize) {
+        allocateTable(tableSizeFor((int) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR)));
+        int capacity = Math.max(expectedSize, 2);
+        entryKeys = new long[capacity];
+        entryValues = new Object[capacity];
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        return Math.max(size, 2);
+    }
+
+    private void allocateTable(int tableSize) {
+        table = new int[tableSize];
+        mask = tableSize - 1;
+        resizeThreshold = (int) (tableSize * LOAD_FACTOR);
+    }
+
+    /**
+     * Spreads the bits of the key (Stafford's mix of the 64-bit finalizer).
+     * Package-private so that tests can build colliding keys.
+     */
+    int slotFor(long key) {
+        long hash = key;
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        hash = hash ^ (hash >>> 31);
+        return (int) hash & mask;
+    }
+
+    /**
+     * Gets the slot holding the key.
+     * @return the slot, or -1 if the key is not in the map.
+     */
+    private int indexOf(long key) {
+        int slot = slotFor(key);
+        while (table[slot] != 0) {
+            if (entryKeys[table[slot] - 1] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Gets the value mapped to a key.
+     * @param key - The key
+     * @return the value, or null if the key is not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = indexOf(key);
+        return slot < 0 ? null : (V) entryValues[table[slot] - 1];
+    }
+
+    /**
+     * Maps a key to a value. A key that is already in the map keeps its place in the insertion order.
+     * @param key - The key
+     * @param value - The value, can't be null
+     * @return the previous value of the key, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("LongHashMap does not allow null values");
+        }
+        int slot = indexOf(key);
+        if (slot >= 0) {
+            int entry = table[slot] - 1;
+            V old = (V) entryValues[entry];
+            entryValues[entry] = value;
+            return old;
+        }
+        if (entryCount == entryKeys.length) {
+            makeRoomForEntry();
+        }
+        slot = slotFor(key);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        entryKeys[entryCount] = key;
+        entryValues[entryCount] = value;
+        table[slot] = ++entryCount;
+        if (++size > resizeThreshold) {
+            rehash(table.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Makes room at the end of the entry arrays: drops the removed entries if they take
+     * at least half of the arrays, and doubles the arrays otherwise.
+     */
+    private void makeRoomForEntry() {
+        if (size <= entryCount / 2) {
+            int live = 0;
+            for (int i = 0; i < entryCount; i++) {
+                if (entryValues[i] != null) {
+                    entryKeys[live] = entryKeys[i];
+                    entryValues[live] = entryValues[i];
+                    live++;
+                }
+            }
+            Arrays.fill(entryValues, live, entryCount, null);
+            entryCount = live;
+            rehash(table.length);
+        } else {
+            entryKeys = Arrays.copyOf(entryKeys, entryKeys.length * 2);
+            entryValues = Arrays.copyOf(entryValues, entryValues.length * 2);
+        }
+    }
+
+    /**
+     * Removes a key from the map.
+     * @param key - The key
+     * @return the removed value, or null if the key was not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = indexOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        int entry = table[slot] - 1;
+        V old = (V) entryValues[entry];
+        entryValues[entry] = null;
+        size--;
+
+        // Backward-shift deletion: move up the following entries of the probe chain,
+        // so that no tombstones are needed.
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (table[next] != 0) {
+            int home = slotFor(entryKeys[table[next] - 1]);
+            // Move the entry if its home slot is not cyclically in (free, next].
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                table[free] = table[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[free] = 0;
+        return old;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(entryValues, 0, entryCount, null);
+        entryCount = 0;
+        size = 0;
+    }
+
+    /**
+     * Performs an action for each value in the map, in insertion order.
+     * @param action - The action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (int i = 0; i < entryCount; i++) {
+            if (entryValues[i] != null) {
+                action.accept((V) entryValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Gets all the values, in insertion order.
+     * @return a new List of the values.
+     */
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        forEachValue(result::add);
+        return result;
+    }
+
+    /**
+     * Streams the values in place, in insertion order. The map must not be modified while streaming.
+     * @return a stream of the values.
+     */
+    @SuppressWarnings("unchecked")
+    public Stream<V> stream() {
+        return Arrays.stream(entryValues, 0, entryCount).filter(Objects::nonNull).map(value -> (V) value);
+    }
+
+    /**
+     * Rebuilds the hash table from the entries, with the given number of slots.
+     */
+    private void rehash(int tableSize) {
+        allocateTable(tableSize);
+        for (int i = 0; i < entryCount; i++) {
+            if (entryValues[i] != null) {
+                int slot = slotFor(entryKeys[i]);
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = i + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.socialnetwork.utils.observer;
+
+import java.util.Set;
+
+/**
+ * A change of the data, so that observers refresh only what it concerns.
+ * @param kind - What changed
+ * @param userIDs - The IDs of the Users the change concerns: the changed User, or the two Users of a friendship
+ * @param receiver - The username of the receiver of a changed message, or null
+ */
+public record Change(ChangeKind kind, Set<Long> userIDs, String receiver) {
+    private static final Change ALL = new Change(ChangeKind.all, Set.of(), null);
+
+    public static Change ofUser(long id) {
+        return new Change(ChangeKind.users, Set.of(id), null);
+    }
+
+    public static Change ofFriendship(long id1, long id2) {
+        return new Change(ChangeKind.friendships, id1 == id2 ? Set.of(id1) : Set.of(id1, id2), null);
+    }
+
+    public static Change ofMessage(String receiver) {
+        return new Change(ChangeKind.messages, Set.of(), receiver);
+    }
+
+    public static Change ofAll() {
+        return ALL;
+    }
+
+    /**
+     * Checks whether the change may concern the friendships of a User.
+     * @param userID - The ID of the User
+     * @return true if the friendships of the User may have changed.
+     */
+    public boolean concernsFriendshipsOf(long userID) {
+        return kind == ChangeKind.all || kind == ChangeKind.friendships && userIDs.contains(userID);
+    }
+
+    /**
+     * Checks whether the change may concern the messages received by a User.
+     * @param username - The username of the User
+     * @return true if the messages of the User may have changed.
+     */
+    public boolean concernsMessagesOf(String username) {
+        return kind == ChangeKind.all || kind == ChangeKind.messages && username.equals(receiver);
+    }
+
+    /**
+     * Checks whether the change may concern the list of Users.
+     * @return true if a User may have been added, removed or changed.
+     */
+    public boolean concernsUsers() {
+        return kind == ChangeKind.all || kind == ChangeKind.users;
+    }
+}
@@ -0,0 +1,9 @@
+package com.socialnetwork.utils.observer;
+
+public enum ChangeKind {
+    users,
+    friendships,
+    messages,
+    // Anything may have changed, e.g. while changes could not be received.
+    all
+}
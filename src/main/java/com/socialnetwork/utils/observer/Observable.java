@@ -4,4 +4,5 @@ public interface Observable {
     void addObserver(Observer observer);
     void removeObserver(Observer observer);
     void notifyAllObservers();
+    void notifyObservers(Change change);
 }
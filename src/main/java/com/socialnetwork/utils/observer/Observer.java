@@ -2,4 +2,13 @@ package com.socialnetwork.utils.observer;
 
 public interface Observer {
     void update();
+
+    /**
+     * Called for a change that is known precisely, possibly made by another client and from another thread
+     * than the one of the observer. By default, the observer refreshes everything.
+     * @param change - The change
+     */
+    default void update(Change change) {
+        update();
+    }
 }
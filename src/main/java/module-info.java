@@ -2,6 +2,7 @@ module com.socialnetwork {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.sql;
+    requires org.postgresql.jdbc;
 
 
     opens com.socialnetwork to javafx.fxml;
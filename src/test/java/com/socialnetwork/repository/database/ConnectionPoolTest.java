@@ -0,0 +1,129 @@
+package com.socialnetwork.repository.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+    private final FakeDatabase database = new FakeDatabase();
+
+    private ConnectionPool pool(int maximumSize, long validationIdleMillis) {
+        return new ConnectionPool(database.url, "user", "password", maximumSize, 100, validationIdleMillis);
+    }
+
+    @Test
+    void handsOutAtMostMaximumSizeConnections() throws SQLException {
+        ConnectionPool pool = pool(2, 60_000);
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        assertThrows(SQLTimeoutException.class, pool::getConnection);
+        assertEquals(1, pool.getMetrics().timeouts());
+        assertEquals(2, pool.getMetrics().active());
+
+        first.close();
+        try (Connection third = pool.getConnection()) {
+            assertNotSame(first, third);
+            assertTrue(first.isClosed());
+            assertThrows(SQLException.class, () -> first.prepareStatement("SELECT 1"));
+        }
+        second.close();
+
+        ConnectionPool.Metrics metrics = pool.getMetrics();
+        assertEquals(0, metrics.active());
+        assertEquals(2, metrics.idle());
+        assertEquals(3, metrics.acquired());
+        assertEquals(2, metrics.created());
+        assertEquals(2, database.opened.get());
+    }
+
+    @Test
+    void closingAConnectionTwiceReturnsItOnce() throws SQLException {
+        ConnectionPool pool = pool(1, 60_000);
+        Connection connection = pool.getConnection();
+        connection.close();
+        connection.close();
+
+        Connection again = pool.getConnection();
+        assertThrows(SQLTimeoutException.class, pool::getConnection);
+        again.close();
+        assertEquals(1, database.opened.get());
+    }
+
+    @Test
+    void failedConnectGivesThePermitBack() throws SQLException {
+        ConnectionPool pool = pool(1, 60_000);
+        database.unreachable = true;
+        assertThrows(SQLException.class, pool::getConnection);
+        database.unreachable = false;
+        try (Connection connection = pool.getConnection()) {
+            assertFalse(connection.isClosed());
+        }
+        assertEquals(0, pool.getMetrics().timeouts());
+    }
+
+    @Test
+    void returnedConnectionsAreRolledBackAndReset() throws SQLException {
+        ConnectionPool pool = pool(1, 60_000);
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+        }
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.getAutoCommit());
+        }
+        assertEquals(1, database.rollbacks.get());
+        assertEquals(1, database.opened.get());
+    }
+
+    @Test
+    void recentlyUsedConnectionsAreNotValidated() throws SQLException {
+        ConnectionPool pool = pool(1, 60_000);
+        database.valid = false;
+        pool.getConnection().close();
+        pool.getConnection().close();
+        assertEquals(0, database.validations.get());
+        assertEquals(1, database.opened.get());
+    }
+
+    @Test
+    void idleConnectionsAreValidatedAndBrokenOnesReplaced() throws SQLException {
+        ConnectionPool pool = pool(1, 0);
+        pool.getConnection().close();
+        pool.getConnection().close();
+        assertEquals(1, database.validations.get());
+        assertEquals(1, database.opened.get());
+
+        database.valid = false;
+        pool.getConnection().close();
+        assertEquals(2, database.validations.get());
+        assertEquals(2, database.opened.get());
+        assertEquals(1, database.closedConnections.get());
+        assertEquals(1, pool.getMetrics().discarded());
+    }
+
+    @Test
+    void closingThePoolClosesIdleConnectionsNowAndActiveOnesOnReturn() throws SQLException {
+        ConnectionPool pool = pool(2, 60_000);
+        Connection active = pool.getConnection();
+        pool.getConnection().close();
+        pool.close();
+        assertEquals(1, database.closedConnections.get());
+        active.close();
+        assertEquals(2, database.closedConnections.get());
+        assertEquals(0, pool.getMetrics().idle());
+    }
+
+    @Test
+    void closedPoolHandsOutNoConnections() throws SQLException {
+        ConnectionPool pool = pool(2, 60_000);
+        pool.getConnection().close();
+        pool.close();
+        SQLException exception = assertThrows(SQLException.class, pool::getConnection);
+        assertEquals("Connection pool is closed", exception.getMessage());
+        assertEquals(1, database.opened.get());
+        assertEquals(0, pool.getMetrics().active());
+    }
+}
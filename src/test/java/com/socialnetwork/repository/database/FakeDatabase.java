@@ -0,0 +1,170 @@
+package com.socialnetwork.repository.database;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC driver for the tests, which connects to no database and counts what is done with its connections
+ * and statements. Every fake database has its own URL.
+ */
+class FakeDatabase {
+    private static final String PREFIX = "jdbc:fake:";
+    private static final Map<String, FakeDatabase> databases = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextDatabase = new AtomicInteger();
+
+    static {
+        try {
+            DriverManager.registerDriver(new FakeDriver());
+        } catch (SQLException exception) {
+            throw new ExceptionInInitializerError(exception);
+        }
+    }
+
+    final String url = PREFIX + nextDatabase.incrementAndGet();
+    final AtomicInteger opened = new AtomicInteger();
+    final AtomicInteger closedConnections = new AtomicInteger();
+    final AtomicInteger validations = new AtomicInteger();
+    final AtomicInteger rollbacks = new AtomicInteger();
+    final AtomicInteger prepared = new AtomicInteger();
+    final AtomicInteger closedStatements = new AtomicInteger();
+    final AtomicInteger clearedParameters = new AtomicInteger();
+    final AtomicInteger closedResultSets = new AtomicInteger();
+    // What isValid() answers, and whether connecting fails.
+    volatile boolean valid = true;
+    volatile boolean unreachable = false;
+
+    FakeDatabase() {
+        databases.put(url, this);
+    }
+
+    private static class FakeDriver implements Driver {
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            FakeDatabase database = databases.get(url);
+            if (database == null) {
+                return null;
+            }
+            if (database.unreachable) {
+                throw new SQLException("Database unreachable");
+            }
+            return database.connect();
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(PREFIX);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+
+    /**
+     * Opens a connection, which only keeps its auto-commit mode.
+     */
+    Connection connect() {
+        opened.incrementAndGet();
+        boolean[] autoCommit = {true};
+        boolean[] closed = {false};
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, arguments) -> switch (method.getName()) {
+                    case "prepareStatement" -> statement();
+                    case "getAutoCommit" -> autoCommit[0];
+                    case "setAutoCommit" -> {
+                        autoCommit[0] = (Boolean) arguments[0];
+                        yield null;
+                    }
+                    case "rollback" -> {
+                        rollbacks.incrementAndGet();
+                        yield null;
+                    }
+                    case "isValid" -> {
+                        validations.incrementAndGet();
+                        yield valid;
+                    }
+                    case "close" -> {
+                        if (!closed[0]) {
+                            closed[0] = true;
+                            closedConnections.incrementAndGet();
+                        }
+                        yield null;
+                    }
+                    case "isClosed" -> closed[0];
+                    case "equals" -> proxy == arguments[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> null;
+                });
+    }
+
+    private PreparedStatement statement() {
+        prepared.incrementAndGet();
+        boolean[] closed = {false};
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                (proxy, method, arguments) -> switch (method.getName()) {
+                    case "executeQuery" -> resultSet();
+                    case "clearParameters" -> {
+                        clearedParameters.incrementAndGet();
+                        yield null;
+                    }
+                    case "close" -> {
+                        if (!closed[0]) {
+                            closed[0] = true;
+                            closedStatements.incrementAndGet();
+                        }
+                        yield null;
+                    }
+                    case "isClosed" -> closed[0];
+                    case "equals" -> proxy == arguments[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "executeUpdate" -> 0;
+                    default -> null;
+                });
+    }
+
+    private ResultSet resultSet() {
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, arguments) -> switch (method.getName()) {
+                    case "next" -> false;
+                    case "close" -> {
+                        closedResultSets.incrementAndGet();
+                        yield null;
+                    }
+                    case "equals" -> proxy == arguments[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> null;
+                });
+    }
+}
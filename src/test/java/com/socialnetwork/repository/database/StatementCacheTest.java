@@ -0,0 +1,102 @@
+package com.socialnetwork.repository.database;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementCacheTest {
+    private final FakeDatabase database = new FakeDatabase();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private Connection connection;
+
+    @BeforeEach
+    void connect() {
+        connection = database.connect();
+    }
+
+    private void use(StatementCache cache, String sql) throws SQLException {
+        try (PreparedStatement statement = cache.prepare(sql, connection)) {
+            statement.setLong(1, 42);
+        }
+    }
+
+    @Test
+    void closedStatementsAreReusedAndCleared() throws SQLException {
+        StatementCache cache = new StatementCache(connection, 4, hits, misses);
+        for (int i = 0; i < 10; i++) {
+            use(cache, "SELECT * FROM users WHERE id = ?");
+        }
+        assertEquals(1, database.prepared.get());
+        assertEquals(0, database.closedStatements.get());
+        assertEquals(10, database.clearedParameters.get());
+        assertEquals(9, hits.get());
+        assertEquals(1, misses.get());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedStatement() throws SQLException {
+        StatementCache cache = new StatementCache(connection, 2, hits, misses);
+        use(cache, "A");
+        use(cache, "B");
+        use(cache, "A");
+        // B is the least recently used, so C takes its place.
+        use(cache, "C");
+        assertEquals(3, database.prepared.get());
+        assertEquals(1, database.closedStatements.get());
+
+        use(cache, "A");
+        assertEquals(3, database.prepared.get());
+        use(cache, "B");
+        assertEquals(4, database.prepared.get());
+        assertEquals(2, database.closedStatements.get());
+    }
+
+    @Test
+    void closingAStatementClosesItsResultSetAndReturnsItOnce() throws SQLException {
+        StatementCache cache = new StatementCache(connection, 2, hits, misses);
+        PreparedStatement statement = cache.prepare("A", connection);
+        assertSame(connection, statement.getConnection());
+        statement.executeQuery();
+        statement.close();
+        statement.close();
+        assertTrue(statement.isClosed());
+        assertThrows(SQLException.class, statement::executeQuery);
+        assertEquals(1, database.closedResultSets.get());
+        assertEquals(1, database.clearedParameters.get());
+        assertEquals(0, database.closedStatements.get());
+    }
+
+    @Test
+    void statementInUseIsNotHandedOutTwice() throws SQLException {
+        StatementCache cache = new StatementCache(connection, 2, hits, misses);
+        try (PreparedStatement outer = cache.prepare("A", connection);
+             PreparedStatement inner = cache.prepare("A", connection)) {
+            assertNotSame(outer, inner);
+            assertEquals(2, database.prepared.get());
+        }
+        // The uncached copy is really closed; the cached one is kept.
+        assertEquals(1, database.closedStatements.get());
+        use(cache, "A");
+        assertEquals(2, database.prepared.get());
+    }
+
+    @Test
+    void statementEvictedWhileInUseIsClosedWhenReturned() throws SQLException {
+        StatementCache cache = new StatementCache(connection, 1, hits, misses);
+        PreparedStatement inUse = cache.prepare("A", connection);
+        use(cache, "B");
+        assertEquals(0, database.closedStatements.get());
+        inUse.close();
+        assertEquals(1, database.closedStatements.get());
+
+        cache.close();
+        assertEquals(2, database.closedStatements.get());
+    }
+}
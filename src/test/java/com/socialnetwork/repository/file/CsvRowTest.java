@@ -0,0 +1,105 @@
+package com.socialnetwork.repository.file;
+
+import com.socialnetwork.domain.FriendshipStatus;
+import com.socialnetwork.exceptions.CorruptedDataException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvRowTest {
+    private final CsvRow row = new CsvRow();
+
+    @Test
+    void splitsFieldsIncludingEmptyOnes() throws CorruptedDataException {
+        row.reset("1,alice,,x@y.com,");
+        assertEquals(5, row.size());
+        assertEquals("1", row.getString(0));
+        assertEquals("alice", row.getString(1));
+        assertEquals("", row.getString(2));
+        assertEquals("x@y.com", row.getString(3));
+        assertEquals("", row.getString(4));
+        assertEquals(1, row.reset("").size());
+    }
+
+    @Test
+    void readsFieldsOfAPartOfABuffer() throws CorruptedDataException {
+        // A journal record: the entity starts after the operation.
+        String line = "U,42,bob,-7";
+        row.reset(line, 2, line.length());
+        assertEquals(3, row.size());
+        assertEquals(42L, row.getLong(0));
+        assertEquals("bob", row.getString(1));
+        assertEquals(-7, row.getInt(2));
+        assertEquals("42,bob,-7", row.toString());
+
+        // Only the given part is tokenized, whatever surrounds it.
+        row.reset("xx,1,2,yy", 3, 6);
+        assertEquals(2, row.size());
+        assertEquals(1L, row.getLong(0));
+        assertEquals(2L, row.getLong(1));
+        assertEquals("2", row.getSequence(1).toString());
+    }
+
+    @Test
+    void rowIsReusedBetweenLines() throws CorruptedDataException {
+        StringBuilder wide = new StringBuilder("0");
+        for (int i = 1; i < 40; i++) {
+            wide.append(',').append(i);
+        }
+        row.reset(wide);
+        assertEquals(40, row.size());
+        assertEquals(39, row.getInt(39));
+
+        row.reset("a,b");
+        assertEquals(2, row.size());
+        assertThrows(CorruptedDataException.class, () -> row.getString(2));
+        assertThrows(CorruptedDataException.class, () -> row.getString(-1));
+    }
+
+    @Test
+    void parsesTheLimitsOfLong() throws CorruptedDataException {
+        row.reset("9223372036854775807,-9223372036854775808,0,-0,007");
+        assertEquals(Long.MAX_VALUE, row.getLong(0));
+        assertEquals(Long.MIN_VALUE, row.getLong(1));
+        assertEquals(0L, row.getLong(2));
+        assertEquals(0L, row.getLong(3));
+        assertEquals(7L, row.getLong(4));
+    }
+
+    @Test
+    void rejectsLongOverflow() {
+        row.reset("9223372036854775808,-9223372036854775809,99999999999999999999,-18446744073709551616");
+        for (int i = 0; i < row.size(); i++) {
+            int index = i;
+            assertThrows(CorruptedDataException.class, () -> row.getLong(index));
+        }
+    }
+
+    @Test
+    void rejectsFieldsThatAreNotNumbers() {
+        row.reset(",-,1a,+1, 1,1.5");
+        for (int i = 0; i < row.size(); i++) {
+            int index = i;
+            assertThrows(CorruptedDataException.class, () -> row.getLong(index));
+        }
+    }
+
+    @Test
+    void intMustFitInAnInt() throws CorruptedDataException {
+        row.reset("2147483647,-2147483648,2147483648,-2147483649");
+        assertEquals(Integer.MAX_VALUE, row.getInt(0));
+        assertEquals(Integer.MIN_VALUE, row.getInt(1));
+        assertThrows(CorruptedDataException.class, () -> row.getInt(2));
+        assertThrows(CorruptedDataException.class, () -> row.getInt(3));
+    }
+
+    @Test
+    void comparesFieldsAndEnumsInPlace() throws CorruptedDataException {
+        row.reset("accepted,sent,unknown");
+        assertTrue(row.fieldEquals(0, "accepted"));
+        assertFalse(row.fieldEquals(0, "accepte"));
+        assertEquals(FriendshipStatus.accepted, row.getEnum(0, FriendshipStatus.values()));
+        assertEquals(FriendshipStatus.sent, row.getEnum(1, FriendshipStatus.values()));
+        assertThrows(CorruptedDataException.class, () -> row.getEnum(2, FriendshipStatus.values()));
+    }
+}
@@ -0,0 +1,108 @@
+package com.socialnetwork.repository.file;
+
+import com.socialnetwork.domain.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupCommitWriterTest {
+    @TempDir
+    Path directory;
+
+    private static FileRepositoryOptions options(DurabilityMode durability) {
+        FileRepositoryOptions options = new FileRepositoryOptions();
+        options.setGroupCommit(true);
+        options.setDurability(durability);
+        options.setGroupCommitBatchSize(16);
+        return options;
+    }
+
+    /**
+     * Appends lines one by one without waiting, then checks that each future completes only once its line
+     * and every line appended before it are in the file, in order, and that the batch hook ran first.
+     */
+    private void checkOrdering(DurabilityMode durability) throws IOException {
+        Path file = directory.resolve(durability + ".csv");
+        AtomicInteger batches = new AtomicInteger();
+        try (GroupCommitWriter writer = new GroupCommitWriter(file, options(durability), batches::incrementAndGet)) {
+            List<String> expected = new ArrayList<>();
+            List<CompletableFuture<Void>> written = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                expected.add("line " + i);
+                written.add(writer.append(List.of("line " + i)));
+            }
+            for (int i = 0; i < written.size(); i++) {
+                written.get(i).join();
+                List<String> lines = Files.readAllLines(file);
+                assertTrue(lines.size() > i, durability + ": line " + i + " completed before it was written");
+                assertEquals(expected.subList(0, lines.size()), lines);
+            }
+            assertTrue(batches.get() >= 1);
+            assertTrue(batches.get() <= 200);
+        }
+    }
+
+    @Test
+    void batchDurabilityKeepsTheOrderOfAppends() throws IOException {
+        checkOrdering(DurabilityMode.batch);
+    }
+
+    @Test
+    void operationDurabilityKeepsTheOrderOfAppends() throws IOException {
+        checkOrdering(DurabilityMode.operation);
+    }
+
+    @Test
+    void closeWritesPendingAppendsAndRejectsLaterOnes() throws IOException {
+        Path file = directory.resolve("closed.csv");
+        GroupCommitWriter writer = new GroupCommitWriter(file, options(DurabilityMode.batch), () -> {});
+        List<CompletableFuture<Void>> written = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            written.add(writer.append(List.of("a" + i, "b" + i)));
+        }
+        writer.close();
+
+        written.forEach(future -> assertTrue(future.isDone() && !future.isCompletedExceptionally()));
+        assertEquals(200, Files.readAllLines(file).size());
+        CompletionException exception = assertThrows(CompletionException.class, () -> writer.append(List.of("late")).join());
+        assertTrue(exception.getCause() instanceof ClosedChannelException);
+        assertEquals(200, Files.readAllLines(file).size());
+        writer.close();
+    }
+
+    @Test
+    void closedRepositoryKeepsWorkingAndPersists() throws Exception {
+        String fileName = Files.createFile(directory.resolve("users.csv")).toString();
+        FileRepositoryOptions options = options(DurabilityMode.batch);
+        options.setJournaled(true);
+        options.setCompactionThreshold(10);
+
+        UserFileRepository repository = new UserFileRepository(fileName, options);
+        for (long id = 1; id <= 50; id++) {
+            User user = new User("user" + id, 1234, "salt", "user" + id + "@mail.com");
+            user.setID(id);
+            repository.add(user);
+        }
+        repository.close();
+        User late = new User("late", 1234, "salt", "late@mail.com");
+        late.setID(51L);
+        repository.add(late);
+        repository.close();
+
+        UserFileRepository reloaded = new UserFileRepository(fileName, options);
+        assertEquals(51, reloaded.size());
+        assertEquals("late", reloaded.find(51L).getUsername());
+        reloaded.close();
+    }
+}
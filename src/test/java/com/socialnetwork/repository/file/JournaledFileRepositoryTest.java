@@ -0,0 +1,153 @@
+package com.socialnetwork.repository.file;
+
+import com.socialnetwork.domain.User;
+import com.socialnetwork.exceptions.RepositoryException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournaledFileRepositoryTest {
+    @TempDir
+    Path directory;
+
+    private static User user(long id, String username) {
+        User user = new User(username, 1234, "salt", username + "@mail.com");
+        user.setID(id);
+        return user;
+    }
+
+    private static User user(long id, String username, String email) {
+        User user = new User(username, 1234, "salt", email);
+        user.setID(id);
+        return user;
+    }
+
+    private static FileRepositoryOptions journaled() {
+        FileRepositoryOptions options = new FileRepositoryOptions();
+        options.setJournaled(true);
+        // Compactions only run when the tests ask for them.
+        options.setCompactionThreshold(Integer.MAX_VALUE);
+        return options;
+    }
+
+    private String dataFile() throws IOException {
+        return Files.createFile(directory.resolve("users.csv")).toString();
+    }
+
+    private Path journal(String fileName) {
+        return Path.of(fileName + ".journal");
+    }
+
+    @Test
+    void changesGoToTheJournalAndAreReplayed() throws IOException, RepositoryException {
+        String fileName = dataFile();
+        UserFileRepository repository = new UserFileRepository(fileName, journaled());
+        repository.add(user(1, "ana"));
+        repository.add(user(2, "bob"));
+        repository.update(user(1, "anna"));
+        repository.remove(user(2, "bob"));
+        repository.add(user(3, "carl"));
+
+        assertEquals(List.of(), Files.readAllLines(Path.of(fileName)));
+        assertEquals(List.of("A,1,ana,1234,salt,ana@mail.com", "A,2,bob,1234,salt,bob@mail.com",
+                "U,1,anna,1234,salt,anna@mail.com", "R,2,bob,1234,salt,bob@mail.com",
+                "A,3,carl,1234,salt,carl@mail.com"), Files.readAllLines(journal(fileName)));
+
+        UserFileRepository reloaded = new UserFileRepository(fileName, journaled());
+        assertEquals(2, reloaded.size());
+        assertEquals("anna", reloaded.find(1L).getUsername());
+        assertEquals("carl", reloaded.find(3L).getUsername());
+        assertThrows(RepositoryException.class, () -> reloaded.find(2L));
+    }
+
+    @Test
+    void compactionFoldsTheJournalIntoTheData() throws IOException, RepositoryException {
+        String fileName = dataFile();
+        UserFileRepository repository = new UserFileRepository(fileName, journaled());
+        for (long id = 1; id <= 5; id++) {
+            repository.add(user(id, "user" + id));
+        }
+        repository.remove(user(4, "user4"));
+        repository.compact();
+
+        assertEquals(4, Files.readAllLines(Path.of(fileName)).size());
+        assertEquals(List.of(), Files.readAllLines(journal(fileName)));
+        assertEquals(4, new UserFileRepository(fileName, journaled()).size());
+    }
+
+    @Test
+    void replayingAnOldJournalOverANewSnapshotChangesNothing() throws IOException, RepositoryException {
+        String fileName = dataFile();
+        FileRepositoryOptions options = journaled();
+        // Every call rereads the files, with the unique indexes in place.
+        options.setReloadPolicy(ReloadPolicy.always);
+        UserFileRepository repository = new UserFileRepository(fileName, options);
+        repository.add(user(1, "ana"));
+        repository.add(user(2, "bob"));
+        repository.remove(user(2, "bob"));
+        repository.update(user(1, "anna"));
+        repository.add(user(3, "carl", "ana@mail.com"));
+        List<String> oldJournal = Files.readAllLines(journal(fileName));
+        repository.compact();
+        // As if the process had died between writing the snapshot and emptying the journal.
+        Files.write(journal(fileName), oldJournal);
+
+        // The first record gives ana@mail.com back to ana, until the last one hands it to carl again.
+        UserFileRepository reloaded = new UserFileRepository(fileName, options);
+        assertEquals(2, reloaded.size());
+        assertEquals("anna", reloaded.find(1L).getUsername());
+        assertEquals("carl", reloaded.findByEmail("ana@mail.com").getUsername());
+        assertEquals("anna", reloaded.findByEmail("anna@mail.com").getUsername());
+    }
+
+    @Test
+    void compactionKeepsTheRecordsJournaledWhileItWritesTheSnapshot() throws Exception {
+        String fileName = dataFile();
+        CountDownLatch writingSnapshot = new CountDownLatch(1);
+        CountDownLatch journaled = new CountDownLatch(1);
+        Thread[] compactor = new Thread[1];
+        UserFileRepository repository = new UserFileRepository(fileName, journaled()) {
+            @Override
+            public String entityToStringFormat(User user) {
+                if (Thread.currentThread() == compactor[0] && writingSnapshot.getCount() > 0) {
+                    // The snapshot is written without the repository lock; hold it there while others write.
+                    writingSnapshot.countDown();
+                    try {
+                        journaled.await();
+                    } catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.entityToStringFormat(user);
+            }
+        };
+        repository.add(user(1, "ana"));
+        repository.add(user(2, "bob"));
+
+        compactor[0] = new Thread(repository::compact);
+        compactor[0].start();
+        writingSnapshot.await();
+        repository.add(user(3, "carl"));
+        repository.update(user(1, "anna"));
+        journaled.countDown();
+        compactor[0].join();
+
+        // The snapshot holds the users as they were when it was taken; the records written since stay journaled.
+        assertEquals(List.of("1,ana,1234,salt,ana@mail.com", "2,bob,1234,salt,bob@mail.com"),
+                Files.readAllLines(Path.of(fileName)));
+        assertEquals(List.of("A,3,carl,1234,salt,carl@mail.com", "U,1,anna,1234,salt,anna@mail.com"),
+                Files.readAllLines(journal(fileName)));
+
+        UserFileRepository reloaded = new UserFileRepository(fileName, journaled());
+        assertEquals(3, reloaded.size());
+        assertEquals("anna", reloaded.find(1L).getUsername());
+        assertEquals("carl", reloaded.find(3L).getUsername());
+    }
+}
@@ -0,0 +1,181 @@
+package com.socialnetwork.repository.file;
+
+import com.socialnetwork.domain.Message;
+import com.socialnetwork.exceptions.RepositoryException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageFileRepositoryTest {
+    private static final LocalDateTime NOON = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @TempDir
+    Path directory;
+
+    private static Message message(String receiver, LocalDateTime sentAt, String text) {
+        return new Message(sentAt, "subject", text, "ana", receiver);
+    }
+
+    private MessageFileRepository open() {
+        return new MessageFileRepository(directory.toString());
+    }
+
+    private Path segment(String receiver) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : receiver.getBytes(StandardCharsets.UTF_8)) {
+            name.append(String.format("%02x", b));
+        }
+        return directory.resolve(name + ".segment");
+    }
+
+    private Path index() {
+        return directory.resolve("index");
+    }
+
+    /**
+     * Cuts bytes off the end of a file, as a crash in the middle of writing them would.
+     */
+    private static void cut(Path path, long bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - bytes);
+        }
+    }
+
+    /**
+     * The size of the index record of a message of a receiver: ID, offset and the receiver in writeUTF form.
+     */
+    private static long indexRecord(String receiver) {
+        return 8 + 8 + 2 + receiver.length();
+    }
+
+    @Test
+    void tornSegmentRecordIsDropped() throws IOException, RepositoryException {
+        MessageFileRepository repository = open();
+        repository.add(message("bob", NOON, "first"));
+        long complete = Files.size(segment("bob"));
+        repository.add(message("bob", NOON.plusMinutes(1), "second"));
+        // The second add died halfway through its segment record, before its index record.
+        cut(index(), indexRecord("bob"));
+        cut(segment("bob"), 5);
+
+        MessageFileRepository reopened = open();
+        assertEquals(1, reopened.size());
+        assertEquals(complete, Files.size(segment("bob")));
+        assertThrows(RepositoryException.class, () -> reopened.find(2L));
+        reopened.add(message("bob", NOON.plusMinutes(2), "third"));
+        assertEquals(List.of("first", "third"), reopened.getAllForSomeone("bob").stream().map(Message::getText).toList());
+        assertEquals("third", open().find(2L).getText());
+    }
+
+    @Test
+    void addMissingFromTheIndexIsRecovered() throws IOException, RepositoryException {
+        MessageFileRepository repository = open();
+        repository.add(message("bob", NOON, "first"));
+        repository.add(message("carl", NOON, "second"));
+        cut(index(), indexRecord("carl"));
+
+        MessageFileRepository reopened = open();
+        assertEquals(2, reopened.size());
+        assertEquals("second", reopened.find(2L).getText());
+        // The recovered add was indexed, so the next message does not reuse its ID.
+        Message next = message("bob", NOON, "third");
+        reopened.add(next);
+        assertEquals(3L, next.getID());
+    }
+
+    @Test
+    void tornIndexRecordIsDroppedAndRecoveredFromTheSegment() throws IOException, RepositoryException {
+        MessageFileRepository repository = open();
+        repository.add(message("bob", NOON, "first"));
+        repository.add(message("bob", NOON.plusMinutes(1), "second"));
+        long withoutLast = Files.size(index()) - indexRecord("bob");
+        cut(index(), 3);
+
+        MessageFileRepository reopened = open();
+        assertEquals(2, reopened.size());
+        assertEquals("second", reopened.find(2L).getText());
+        // The torn record was cut away, and the recovered one appended in its place.
+        assertEquals(withoutLast + indexRecord("bob"), Files.size(index()));
+        assertEquals(2, open().size());
+    }
+
+    @Test
+    void updateMovesTheMessageToItsNewReceiver() throws RepositoryException {
+        MessageFileRepository repository = open();
+        Message message = message("bob", NOON, "hello");
+        repository.add(message);
+        repository.getInboxPage("bob", null, 10);
+        message.setReceiver("carl");
+        repository.update(message);
+
+        assertEquals(List.of(), repository.getAllForSomeone("bob"));
+        assertEquals(List.of(), repository.getInboxPage("bob", null, 10));
+        assertEquals(1, repository.getInboxPage("carl", null, 10).size());
+        assertEquals("carl", repository.find(1L).getReceiver());
+
+        MessageFileRepository reopened = open();
+        assertEquals(1, reopened.size());
+        assertEquals("carl", reopened.find(1L).getReceiver());
+        assertEquals(List.of(), reopened.getAllForSomeone("bob"));
+    }
+
+    @Test
+    void moveCutShortBeforeItsIndexRecordIsCompleted() throws IOException, RepositoryException {
+        MessageFileRepository repository = open();
+        Message message = message("bob", NOON, "hello");
+        repository.add(message);
+        message.setReceiver("carl");
+        repository.update(message);
+        // The update died after writing the new record to carl's segment, before the removal from bob's.
+        cut(index(), indexRecord("carl"));
+        cut(segment("bob"), 1 + 8);
+
+        MessageFileRepository reopened = open();
+        assertEquals(1, reopened.size());
+        assertEquals("carl", reopened.find(1L).getReceiver());
+        assertEquals(List.of(), reopened.getAllForSomeone("bob"));
+        assertEquals(1, reopened.getAllForSomeone("carl").size());
+        assertEquals("carl", open().find(1L).getReceiver());
+    }
+
+    @Test
+    void inboxPagesCoverMessagesSentAtTheSameTime() throws RepositoryException {
+        MessageFileRepository repository = open();
+        repository.add(message("bob", NOON.minusMinutes(1), "1"));
+        repository.add(message("bob", NOON, "2"));
+        repository.add(message("bob", NOON, "3"));
+        repository.add(message("bob", NOON, "4"));
+        repository.add(message("bob", NOON.plusMinutes(1), "5"));
+        repository.add(message("carl", NOON, "other"));
+
+        List<String> texts = new ArrayList<>();
+        Message after = null;
+        List<Message> page;
+        int pages = 0;
+        while (!(page = repository.getInboxPage("bob", after, 2)).isEmpty()) {
+            assertTrue(page.size() <= 2);
+            page.forEach(message -> texts.add(message.getText()));
+            after = page.get(page.size() - 1);
+            pages++;
+        }
+        // Newest first; messages sent at the same time come by descending ID, each exactly once.
+        assertEquals(List.of("5", "4", "3", "2", "1"), texts);
+        assertEquals(3, pages);
+
+        repository.remove(repository.find(3L));
+        Message fourth = repository.find(4L);
+        assertEquals(List.of("2", "1"),
+                repository.getInboxPage("bob", fourth, 10).stream().map(Message::getText).toList());
+    }
+}
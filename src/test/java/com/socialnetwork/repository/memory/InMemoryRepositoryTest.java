@@ -0,0 +1,32 @@
+package com.socialnetwork.repository.memory;
+
+import com.socialnetwork.domain.User;
+import com.socialnetwork.exceptions.RepositoryException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryRepositoryTest {
+    private static User user(long id, String username, String email) {
+        User user = new User(username, 1234, "salt", email);
+        user.setID(id);
+        return user;
+    }
+
+    @Test
+    void uniqueIndexAddedOverDuplicateKeysIsRejected() throws RepositoryException {
+        InMemoryRepository<User, Long> repository = new InMemoryRepository<>();
+        repository.add(user(1, "ana", "same@mail.com"));
+        repository.add(user(2, "bob", "same@mail.com"));
+        assertThrows(RepositoryException.class, () -> repository.addUniqueIndex("Email", User::getEmail));
+    }
+
+    @Test
+    void uniqueIndexCoversTheEntitiesAlreadyStored() throws RepositoryException {
+        InMemoryRepository<User, Long> repository = new InMemoryRepository<>();
+        repository.add(user(1, "ana", "ana@mail.com"));
+        UniqueIndex<User, Long, String> emailIndex = repository.addUniqueIndex("Email", User::getEmail);
+        assertEquals(1L, repository.findByIndex(emailIndex, "ana@mail.com").getID());
+        assertThrows(RepositoryException.class, () -> repository.add(user(2, "bob", "ana@mail.com")));
+    }
+}
@@ -0,0 +1,269 @@
+package com.socialnetwork.repository.writebehind;
+
+import com.socialnetwork.domain.Message;
+import com.socialnetwork.domain.User;
+import com.socialnetwork.exceptions.RepositoryException;
+import com.socialnetwork.repository.memory.InMemoryRepository;
+import com.socialnetwork.repository.memory.MessageInMemoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindRepositoryTest {
+    private final List<WriteBehindRepository<?, ?>> opened = new ArrayList<>();
+
+    /**
+     * An in-memory backend that counts its bulk calls and can hold the flusher inside them.
+     */
+    private static class Backend extends InMemoryRepository<User, Long> {
+        final AtomicInteger bulkCalls = new AtomicInteger();
+        final CountDownLatch entered = new CountDownLatch(1);
+        volatile CountDownLatch gate;
+
+        private void pass() {
+            entered.countDown();
+            CountDownLatch latch = gate;
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public synchronized void add(User entity) throws RepositoryException {
+            super.add(entity);
+        }
+
+        @Override
+        public void addAll(Collection<User> entities) throws RepositoryException {
+            pass();
+            bulkCalls.incrementAndGet();
+            synchronized (this) {
+                super.addAll(entities);
+            }
+        }
+
+        @Override
+        public synchronized void updateAll(Collection<User> entities) throws RepositoryException {
+            bulkCalls.incrementAndGet();
+            super.updateAll(entities);
+        }
+
+        @Override
+        public synchronized void removeAll(Collection<User> entities) throws RepositoryException {
+            bulkCalls.incrementAndGet();
+            super.removeAll(entities);
+        }
+
+        @Override
+        public synchronized List<User> getAll() {
+            return super.getAll();
+        }
+
+        @Override
+        public synchronized User find(Long id) throws RepositoryException {
+            return super.find(id);
+        }
+    }
+
+    /**
+     * A backend whose bulk adds write the entities one at a time and stop at the first failure.
+     * Only the calls with several entities are counted.
+     */
+    private static class PartialBackend extends Backend {
+        @Override
+        public void addAll(Collection<User> entities) throws RepositoryException {
+            if (entities.size() > 1) {
+                bulkCalls.incrementAndGet();
+            }
+            for (User entity : entities) {
+                add(entity);
+            }
+        }
+
+        @Override
+        public boolean hasAtomicBulkWrites() {
+            return false;
+        }
+    }
+
+    private static User user(long id, String username) {
+        User user = new User(username, 1234, "salt", username + "@mail.com");
+        user.setID(id);
+        return user;
+    }
+
+    private static WriteBehindOptions options() {
+        WriteBehindOptions options = new WriteBehindOptions();
+        options.setDrainOnShutdown(false);
+        return options;
+    }
+
+    private <R extends WriteBehindRepository<?, ?>> R open(R repository) {
+        opened.add(repository);
+        return repository;
+    }
+
+    @AfterEach
+    void closeRepositories() {
+        for (WriteBehindRepository<?, ?> repository : opened) {
+            try {
+                repository.close();
+            } catch (RepositoryException exception) {
+                // Reported by the tests that expect it.
+            }
+        }
+    }
+
+    @Test
+    void writesOfTheSameKeyAreAppliedInOrderAcrossRuns() throws RepositoryException, InterruptedException {
+        Backend backend = new Backend();
+        backend.gate = new CountDownLatch(1);
+        WriteBehindRepository<User, Long> repository = open(new WriteBehindRepository<>(backend, options()));
+        repository.add(user(1, "ana"));
+        backend.entered.await();
+        // Queued while the flusher is held, so they are applied as one batch of alternating runs.
+        repository.update(user(1, "anna"));
+        repository.add(user(2, "bob"));
+        repository.remove(user(1, "anna"));
+        repository.add(user(1, "ana"));
+        repository.update(user(2, "bobby"));
+        assertEquals("ana", repository.find(1L).getUsername());
+        assertEquals("bobby", repository.find(2L).getUsername());
+        backend.gate.countDown();
+        repository.flush();
+
+        assertEquals("ana", backend.find(1L).getUsername());
+        assertEquals("bobby", backend.find(2L).getUsername());
+        assertEquals(0, repository.getPendingWrites());
+        assertEquals(0, repository.getFailedWrites());
+    }
+
+    @Test
+    void rejectedBulkCallIsRetriedOneWriteAtATime() throws RepositoryException, InterruptedException {
+        Backend backend = new Backend();
+        backend.add(user(2, "bob"));
+        backend.gate = new CountDownLatch(1);
+        WriteBehindRepository<User, Long> repository = open(new WriteBehindRepository<>(backend, options()));
+        repository.add(user(9, "first"));
+        backend.entered.await();
+        repository.addAll(List.of(user(1, "ana"), user(2, "bob"), user(3, "carl")));
+        backend.gate.countDown();
+
+        RepositoryException failure = assertThrows(RepositoryException.class, repository::flush);
+        assertEquals("1 queued add failed: Entity already exists!\n", failure.getMessage());
+        assertEquals(1, repository.getFailedWrites());
+        assertEquals(4, backend.size());
+        // The failure is reported once.
+        repository.flush();
+    }
+
+    @Test
+    void bulkCallsAreNotUsedWhenTheyAreNotAtomic() throws RepositoryException, InterruptedException {
+        PartialBackend backend = new PartialBackend();
+        backend.add(user(2, "bob"));
+        WriteBehindRepository<User, Long> repository = open(new WriteBehindRepository<>(backend, options()));
+        repository.addAll(List.of(user(1, "ana"), user(2, "bob"), user(3, "carl")));
+
+        // A retry after the partly applied bulk call would report ana as a duplicate too.
+        RepositoryException failure = assertThrows(RepositoryException.class, repository::flush);
+        assertEquals("1 queued add failed: Entity already exists!\n", failure.getMessage());
+        assertEquals(0, backend.bulkCalls.get());
+        assertEquals(3, backend.size());
+    }
+
+    @Test
+    void readsSeeEveryWriteThatReturnedBeforeThem() throws Exception {
+        Backend backend = new Backend();
+        WriteBehindOptions options = options();
+        options.setBatchSize(7);
+        WriteBehindRepository<User, Long> repository = open(new WriteBehindRepository<>(backend, options));
+        int count = 3000;
+        AtomicLong lastAdded = new AtomicLong();
+        AtomicReference<String> missed = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (lastAdded.get() < count && missed.get() == null) {
+                long before = lastAdded.get();
+                Set<Long> ids = new HashSet<>();
+                repository.getAll().forEach(user -> ids.add(user.getID()));
+                for (long id = 1; id <= before; id++) {
+                    if (!ids.contains(id)) {
+                        missed.set("getAll missed user " + id);
+                    }
+                }
+                try {
+                    if (before > 0) {
+                        repository.find(before);
+                    }
+                } catch (RepositoryException exception) {
+                    missed.set("find missed user " + before);
+                }
+            }
+        });
+        reader.start();
+        for (long id = 1; id <= count; id++) {
+            repository.add(user(id, "user" + id));
+            lastAdded.set(id);
+        }
+        reader.join();
+        repository.flush();
+
+        assertNull(missed.get());
+        assertEquals(count, backend.size());
+        assertEquals(count, repository.size());
+    }
+
+    @Test
+    void closeAppliesThePendingWritesAndReportsTheirFailures() throws RepositoryException, InterruptedException {
+        Backend backend = new Backend();
+        backend.add(user(2, "bob"));
+        backend.gate = new CountDownLatch(1);
+        WriteBehindRepository<User, Long> repository = new WriteBehindRepository<>(backend, options());
+        repository.add(user(1, "ana"));
+        backend.entered.await();
+        repository.add(user(2, "bob"));
+        repository.add(user(3, "carl"));
+        new Thread(() -> backend.gate.countDown()).start();
+
+        // The shutdown hook drains the queue through close(), and prints what it throws.
+        RepositoryException failure = assertThrows(RepositoryException.class, repository::close);
+        assertEquals("1 queued add failed: Entity already exists!\n", failure.getMessage());
+        assertEquals(3, backend.size());
+        assertEquals(0, repository.getPendingWrites());
+        assertThrows(RepositoryException.class, () -> repository.add(user(4, "dan")));
+        // Closing again has nothing left to report.
+        repository.close();
+    }
+
+    @Test
+    void newMessagesAreToldApartByIdentityUntilTheyGetTheirIDs() throws RepositoryException {
+        MessageWriteBehindRepository repository = open(new MessageWriteBehindRepository(
+                new MessageInMemoryRepository(), options()));
+        LocalDateTime sentAt = LocalDateTime.of(2024, 1, 1, 12, 0);
+        // Equal messages, both without an ID.
+        repository.add(new Message(sentAt, "hi", "hello", "ana", "bob"));
+        repository.add(new Message(sentAt, "hi", "hello", "ana", "bob"));
+        assertEquals(2, repository.getAllForSomeone("bob").size());
+        repository.flush();
+
+        List<Message> messages = repository.getAllForSomeone("bob");
+        assertEquals(2, messages.size());
+        assertNotEquals(messages.get(0).getID(), messages.get(1).getID());
+        assertEquals(2, repository.size());
+    }
+}
@@ -0,0 +1,220 @@
+package com.socialnetwork.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphTest {
+    private static Graph graph(int vertexCount, int[]... edges) {
+        int[] from = new int[edges.length];
+        int[] to = new int[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            from[i] = edges[i][0];
+            to[i] = edges[i][1];
+        }
+        return new Graph(vertexCount, from, to, edges.length);
+    }
+
+    private static Graph path(int vertexCount) {
+        int[] from = new int[vertexCount - 1];
+        int[] to = new int[vertexCount - 1];
+        for (int i = 0; i + 1 < vertexCount; i++) {
+            from[i] = i;
+            to[i] = i + 1;
+        }
+        return new Graph(vertexCount, from, to, vertexCount - 1);
+    }
+
+    private static int[][] matrix(int vertexCount, int[][] edges) {
+        int[][] adj = new int[vertexCount][vertexCount];
+        for (int[] edge : edges) {
+            adj[edge[0]][edge[1]] = 1;
+            adj[edge[1]][edge[0]] = 1;
+        }
+        return adj;
+    }
+
+    /**
+     * The number of components, counted as the adjacency matrix DFS did before the graph was stored in CSR form.
+     */
+    private static int matrixComponentCount(int[][] adj) {
+        boolean[] visited = new boolean[adj.length];
+        int count = 0;
+        for (int i = 0; i < adj.length; i++) {
+            if (!visited[i]) {
+                count++;
+                matrixDfs(adj, visited, i);
+            }
+        }
+        return count;
+    }
+
+    private static void matrixDfs(int[][] adj, boolean[] visited, int start) {
+        visited[start] = true;
+        for (int i = 0; i < adj.length; i++) {
+            if (adj[start][i] > 0 && !visited[i]) {
+                matrixDfs(adj, visited, i);
+            }
+        }
+    }
+
+    /**
+     * The exact diameter of the component of a vertex: the longest of the shortest paths from each of its vertexes.
+     */
+    private static int exactDiameter(int[][] adj, int vertex) {
+        int diameter = 0;
+        for (int start : component(adj, vertex)) {
+            for (int distance : distances(adj, start)) {
+                diameter = Math.max(diameter, distance);
+            }
+        }
+        return diameter;
+    }
+
+    private static int[] component(int[][] adj, int vertex) {
+        int[] distances = distances(adj, vertex);
+        return IntStream.range(0, adj.length).filter(v -> distances[v] >= 0).toArray();
+    }
+
+    private static int[] distances(int[][] adj, int start) {
+        int[] distances = new int[adj.length];
+        Arrays.fill(distances, -1);
+        distances[start] = 0;
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            for (int i = 0; i < adj.length; i++) {
+                if (adj[current][i] > 0 && distances[i] < 0) {
+                    distances[i] = distances[current] + 1;
+                    queue.add(i);
+                }
+            }
+        }
+        return distances;
+    }
+
+    @Test
+    void isolatedVertexesAreComponentsOfTheirOwn() {
+        Graph graph = graph(3);
+        Graph.Components components = graph.getComponents();
+        assertEquals(3, components.count());
+        assertArrayEquals(new int[]{0, 1, 2}, components.labels());
+        assertArrayEquals(new int[]{0, 0, 0}, graph.getDiameters(components));
+        assertEquals(0, graph.getDegree(1));
+    }
+
+    @Test
+    void componentsAreNumberedByTheirLowestVertex() {
+        // {0, 3}, {1, 4, 5}, {2}
+        Graph graph = graph(6, new int[]{3, 0}, new int[]{5, 4}, new int[]{1, 5});
+        Graph.Components components = graph.getComponents();
+        assertEquals(3, components.count());
+        assertArrayEquals(new int[]{0, 1, 2, 0, 1, 1}, components.labels());
+        assertArrayEquals(new int[]{1, 2, 0}, graph.getDiameters(components));
+        assertEquals(2, graph.getDegree(5));
+    }
+
+    @Test
+    void diameterOfATreeIsExact() {
+        //        0
+        //      / | \
+        //     1  2  3
+        //    /      |
+        //   4       5
+        //           |
+        //           6
+        int[][] edges = {{0, 1}, {0, 2}, {0, 3}, {1, 4}, {3, 5}, {5, 6}};
+        Graph graph = graph(7, edges);
+        Graph.Components components = graph.getComponents();
+        assertEquals(1, components.count());
+        assertArrayEquals(new int[]{5}, graph.getDiameters(components));
+        assertEquals(exactDiameter(matrix(7, edges), 0), graph.getDiameters(components)[0]);
+    }
+
+    @Test
+    void diameterOfASmallComponentWithCyclesIsExact() {
+        // A triangle 0-1-2 with a tail 2-3-4 and a chord-free loop 0-5-6-7-1.
+        int[][] edges = {{0, 1}, {1, 2}, {2, 0}, {2, 3}, {3, 4}, {0, 5}, {5, 6}, {6, 7}, {7, 1}};
+        Graph graph = graph(8, edges);
+        Graph.Components components = graph.getComponents();
+        int exact = exactDiameter(matrix(8, edges), 0);
+        assertArrayEquals(new int[]{exact}, graph.getDiameters(components));
+        assertTrue(graph.getDiameters(components, 0)[0] <= exact);
+    }
+
+    @Test
+    void doubleSweepUnderestimatesLargeComponentsWithCycles() {
+        // The first sweep, from 0, ends at 2, whose farthest vertexes are 2 away; 4 and 5 are 3 apart.
+        int[][] edges = {{1, 4}, {0, 4}, {5, 3}, {3, 0}, {3, 2}, {1, 2}, {1, 3}};
+        Graph graph = graph(6, edges);
+        Graph.Components components = graph.getComponents();
+        assertEquals(3, exactDiameter(matrix(6, edges), 0));
+        assertArrayEquals(new int[]{3}, graph.getDiameters(components));
+        // As if the component were too large to be measured exactly.
+        assertArrayEquals(new int[]{2}, graph.getDiameters(components, 5));
+    }
+
+    @Test
+    void longChainDoesNotOverflowTheStack() {
+        int vertexCount = 200_000;
+        Graph graph = path(vertexCount);
+        Graph.Components components = graph.getComponents();
+        assertEquals(1, components.count());
+        assertArrayEquals(new int[]{vertexCount - 1}, graph.getDiameters(components));
+    }
+
+    @Test
+    void matchesTheMatrixResultsOnSmallGraphs() {
+        Random random = new Random(25);
+        for (int round = 0; round < 500; round++) {
+            int vertexCount = 1 + random.nextInt(12);
+            boolean forest = round % 2 == 0;
+            int[][] edges = forest ? randomForest(random, vertexCount) : randomGraph(random, vertexCount);
+            int[][] adj = matrix(vertexCount, edges);
+            Graph graph = graph(vertexCount, edges);
+            Graph.Components components = graph.getComponents();
+            assertEquals(matrixComponentCount(adj), components.count());
+
+            int[] diameters = graph.getDiameters(components);
+            // Without the exact search, components with cycles only get the double sweep.
+            int[] estimates = graph.getDiameters(components, 0);
+            for (int v = 0; v < vertexCount; v++) {
+                for (int u : component(adj, v)) {
+                    assertEquals(components.labels()[v], components.labels()[u]);
+                }
+                int exact = exactDiameter(adj, v);
+                int estimate = estimates[components.labels()[v]];
+                assertEquals(exact, diameters[components.labels()[v]]);
+                if (forest) {
+                    assertEquals(exact, estimate);
+                } else {
+                    assertTrue(estimate <= exact);
+                    assertTrue(2 * estimate >= exact);
+                }
+            }
+        }
+    }
+
+    private static int[][] randomForest(Random random, int vertexCount) {
+        return IntStream.range(1, vertexCount)
+                .filter(v -> random.nextInt(4) > 0)
+                .mapToObj(v -> new int[]{v, random.nextInt(v)})
+                .toArray(int[][]::new);
+    }
+
+    private static int[][] randomGraph(Random random, int vertexCount) {
+        int edgeCount = random.nextInt(vertexCount * 2 + 1);
+        int[][] edges = new int[edgeCount][];
+        for (int i = 0; i < edgeCount; i++) {
+            edges[i] = new int[]{random.nextInt(vertexCount), random.nextInt(vertexCount)};
+        }
+        return edges;
+    }
+}
@@ -0,0 +1,123 @@
+package com.socialnetwork.utils;
+
+import com.socialnetwork.domain.User;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+
+/**
+ * Compares the footprint and the lookup time of LongHashMap with those of the HashMap of boxed IDs
+ * it replaced in UserInMemoryRepository. Not a test: run it on its own, e.g. with -Xmx2g, from the test classpath.
+ * The footprint is the heap the map retains beyond the Users it holds, measured after garbage collection,
+ * so it is approximate; the lookup time is the mean of several timed passes after warm-up passes.
+ */
+public class LongHashMapBenchmark {
+    private static final int[] SIZES = {10_000, 100_000, 1_000_000};
+    private static final int WARM_UP_PASSES = 5;
+    private static final int TIMED_PASSES = 10;
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Measures the heap retained by a map built over the Users.
+     */
+    private static long footprint(IntFunction<Object> build, int size) {
+        long before = usedMemory();
+        Object map = build.apply(size);
+        long after = usedMemory();
+        // Keeps the map reachable until it has been measured.
+        if (map.hashCode() == 42) {
+            System.out.print("");
+        }
+        return after - before;
+    }
+
+    /**
+     * Times lookups of every ID, in random order.
+     * @return the mean time of a lookup, in nanoseconds.
+     */
+    private static double lookupNanos(LongFunction<User> lookup, long[] ids) {
+        long found = 0;
+        long elapsed = 0;
+        for (int pass = 0; pass < WARM_UP_PASSES + TIMED_PASSES; pass++) {
+            long start = System.nanoTime();
+            for (long id : ids) {
+                if (lookup.apply(id) != null) {
+                    found++;
+                }
+            }
+            if (pass >= WARM_UP_PASSES) {
+                elapsed += System.nanoTime() - start;
+            }
+        }
+        if (found != (long) ids.length * (WARM_UP_PASSES + TIMED_PASSES)) {
+            throw new IllegalStateException("Lookups missed some IDs");
+        }
+        return (double) elapsed / ((long) ids.length * TIMED_PASSES);
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(4);
+        System.out.printf("%10s %22s %22s %16s %16s%n", "users", "LongHashMap bytes/user", "HashMap bytes/user",
+                "LongHashMap ns", "HashMap ns");
+        for (int size : SIZES) {
+            User[] users = new User[size];
+            long[] ids = new long[size];
+            for (int i = 0; i < size; i++) {
+                // Sparse IDs, as the database and the file repositories hand them out after removals.
+                ids[i] = i * 3L + random.nextInt(3) + 1;
+                users[i] = new User("user" + i, 1234, "salt", "user" + i + "@mail.com");
+                users[i].setID(ids[i]);
+            }
+
+            long longHashMapBytes = footprint(n -> {
+                LongHashMap<User> map = new LongHashMap<>();
+                for (User user : users) {
+                    map.put(user.getID(), user);
+                }
+                return map;
+            }, size);
+            long hashMapBytes = footprint(n -> {
+                Map<Long, User> map = new HashMap<>();
+                for (User user : users) {
+                    map.put(user.getID(), user);
+                }
+                return map;
+            }, size);
+
+            LongHashMap<User> longHashMap = new LongHashMap<>();
+            Map<Long, User> hashMap = new HashMap<>();
+            for (User user : users) {
+                longHashMap.put(user.getID(), user);
+                hashMap.put(user.getID(), user);
+            }
+            long[] order = ids.clone();
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            double longHashMapNanos = lookupNanos(longHashMap::get, order);
+            // The IDs are boxed on every lookup, as they are when a primitive ID is looked up in the HashMap.
+            double hashMapNanos = lookupNanos(hashMap::get, order);
+
+            System.out.printf("%10d %22.1f %22.1f %16.1f %16.1f%n", size, (double) longHashMapBytes / size,
+                    (double) hashMapBytes / size, longHashMapNanos, hashMapNanos);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.socialnetwork.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashMapTest {
+    /**
+     * Finds keys whose home slot in the map is the given slot, so that they collide.
+     */
+    private static long[] keysWithSlot(LongHashMap<?> map, int slot, int count) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (long key = 1; found < count; key++) {
+            if (map.slotFor(key) == slot) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    void putGetAndReplace() {
+        LongHashMap<String> map = new LongHashMap<>();
+        assertNull(map.put(1L, "a"));
+        assertNull(map.put(-5L, "b"));
+        assertNull(map.put(Long.MAX_VALUE, "c"));
+        assertEquals("a", map.put(1L, "d"));
+
+        assertEquals(3, map.size());
+        assertEquals("d", map.get(1L));
+        assertEquals("b", map.get(-5L));
+        assertEquals("c", map.get(Long.MAX_VALUE));
+        assertNull(map.get(2L));
+        assertFalse(map.containsKey(2L));
+        assertThrows(NullPointerException.class, () -> map.put(3L, null));
+    }
+
+    @Test
+    void keepsInsertionOrder() {
+        LongHashMap<Long> map = new LongHashMap<>();
+        for (long key = 100; key > 0; key--) {
+            map.put(key, key);
+        }
+        map.put(50L, 50L);
+        map.remove(70L);
+        map.put(70L, 70L);
+
+        List<Long> expected = new ArrayList<>();
+        for (long key = 100; key > 0; key--) {
+            if (key != 70) {
+                expected.add(key);
+            }
+        }
+        expected.add(70L);
+        assertEquals(expected, map.values());
+        assertEquals(expected, map.stream().toList());
+    }
+
+    @Test
+    void probesAcrossTheEndOfTheTable() {
+        LongHashMap<String> map = new LongHashMap<>(4);
+        long[] keys = keysWithSlot(map, 7, 3);
+        for (long key : keys) {
+            map.put(key, "v" + key);
+        }
+        for (long key : keys) {
+            assertEquals("v" + key, map.get(key));
+        }
+
+        assertEquals("v" + keys[1], map.remove(keys[1]));
+        assertNull(map.get(keys[1]));
+        assertEquals("v" + keys[0], map.get(keys[0]));
+        assertEquals("v" + keys[2], map.get(keys[2]));
+
+        assertEquals("v" + keys[0], map.remove(keys[0]));
+        assertEquals("v" + keys[2], map.get(keys[2]));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void removesInsideACluster() {
+        LongHashMap<String> map = new LongHashMap<>(4);
+        long[] colliding = keysWithSlot(map, 2, 2);
+        long[] next = keysWithSlot(map, 3, 1);
+        // Slots 2, 3 and 4 hold colliding[0], colliding[1] and next[0].
+        map.put(colliding[0], "a");
+        map.put(colliding[1], "b");
+        map.put(next[0], "c");
+
+        assertEquals("a", map.remove(colliding[0]));
+        assertEquals("b", map.get(colliding[1]));
+        assertEquals("c", map.get(next[0]));
+        assertNull(map.remove(colliding[0]));
+
+        map.put(colliding[0], "d");
+        assertEquals("d", map.get(colliding[0]));
+        assertEquals(List.of("b", "c", "d"), map.values());
+    }
+
+    @Test
+    void resizesAndCompacts() {
+        LongHashMap<Integer> map = new LongHashMap<>(2);
+        for (int i = 0; i < 10_000; i++) {
+            map.put(i * 31L, i);
+        }
+        assertEquals(10_000, map.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, map.get(i * 31L));
+        }
+
+        // Removing and adding the same number of keys reuses the entry arrays, keeping the order.
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 10_000; i += 2) {
+                map.remove(i * 31L);
+                map.put(i * 31L, i);
+            }
+        }
+        assertEquals(10_000, map.size());
+        List<Integer> values = map.values();
+        for (int i = 0; i < 5_000; i++) {
+            assertEquals(2 * i + 1, values.get(i));
+            assertEquals(2 * i, values.get(5_000 + i));
+        }
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(31L));
+        assertEquals(List.of(), map.values());
+    }
+
+    @Test
+    void agreesWithLinkedHashMap() {
+        Random random = new Random(42);
+        LongHashMap<Long> map = new LongHashMap<>();
+        Map<Long, Long> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                long value = random.nextLong();
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (long key = 0; key < 2_000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        assertEquals(new ArrayList<>(expected.values()), map.values());
+    }
+}